@@ -0,0 +1,74 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import physics.Physics;
+
+/**
+ * Benchmark comparing the sort-and-sweep ball-ball broad phase used by Board
+ * with testing every ordered pair of balls.
+ * 
+ * Command line usage:
+ *   BallCollisionBenchmark [--quick] [--filter TEXT]
+ *   
+ * See Microbenchmark for the arguments. Times one broad phase for boards of 10 to 10,000 balls.
+ * The all-pairs version is skipped for the largest boards, where it takes minutes.
+ */
+public class BallCollisionBenchmark {
+    
+    private static final int[] BALL_COUNTS = {10, 100, 1000, 10000};
+    private static final int ALL_PAIRS_LIMIT = 1000;
+    private static final double WINDOW = 0.002;
+    private static final long SEED = 6031;
+    
+    /**
+     * Runs the benchmark.
+     * @param args command-line arguments as described above
+     */
+    public static void main(String[] args) {
+        final Microbenchmark harness = new Microbenchmark(args);
+        for (int count : BALL_COUNTS) {
+            final List<Ball> balls = makeBalls(count);
+            final BallSweep sweep = new BallSweep();
+            System.out.println(count + " balls: " + sweep.findCollisions(balls, WINDOW).size() + " colliding pairs");
+            harness.run("BallSweep.findCollisions balls=" + count, () -> sweep.findCollisions(balls, WINDOW));
+            if (count <= ALL_PAIRS_LIMIT) {
+                harness.run("all pairs balls=" + count, () -> allPairs(balls));
+            }
+        }
+        System.out.println("sink " + harness.getSink());
+    }
+    
+    /*
+     * Balls scattered uniformly over the board with random velocities.
+     */
+    private static List<Ball> makeBalls(final int count) {
+        final Random random = new Random(SEED);
+        final List<Ball> balls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            balls.add(new Ball("Ball" + i, 0.25 + random.nextDouble()*19.5, 0.25 + random.nextDouble()*19.5,
+                               random.nextDouble()*40 - 20, random.nextDouble()*40 - 20));
+        }
+        return balls;
+    }
+    
+    /*
+     * The broad phase Board used before sort-and-sweep: every ordered pair is tested exactly.
+     */
+    private static int allPairs(final List<Ball> balls) {
+        int colliding = 0;
+        for (Ball ball1 : balls) {
+            for (Ball ball2 : balls) {
+                if (ball1 == ball2) continue;
+                if (Physics.timeUntilBallBallCollision(ball1.getCircle(), ball1.getVelocity(), 
+                                                       ball2.getCircle(), ball2.getVelocity()) < WINDOW) {
+                    colliding++;
+                }
+            }
+        }
+        return colliding;
+    }
+    
+}
@@ -0,0 +1,143 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small harness for timing code that runs in microseconds or less, in the style of JMH:
+ * each benchmark is warmed up, then measured over several timed iterations, and every
+ * result it computes is consumed so the JIT cannot remove the work as dead code.
+ *
+ * Benchmarks are run one at a time on the calling thread, and their results are printed
+ * as they finish, one line per benchmark with the mean and standard deviation in ns/op.
+ */
+public class Microbenchmark {
+
+    /**
+     * Code to be timed.
+     */
+    public interface Body {
+        /**
+         * Runs one operation of the benchmark.
+         * @return any value computed by the operation, which is consumed so it is not optimized away
+         */
+        public Object run();
+    }
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final String filter;
+    private final List<String> lines = new ArrayList<>();
+    private int sink = 0;
+
+    /*
+     * Abstraction function:
+     *     AF(warmupIterations, measurementIterations, iterationNanos, filter, lines, sink):
+     *         a harness that runs only the benchmarks whose names contain ``filter``,
+     *         each for ``warmupIterations`` untimed and then ``measurementIterations`` timed iterations
+     *         of about ``iterationNanos`` nanoseconds each. ``lines`` are the reports printed so far,
+     *         and ``sink`` combines the results of every operation run.
+     *
+     * Rep Invariant:
+     *   - warmupIterations >= 0, measurementIterations >= 2, iterationNanos > 0
+     *
+     * Safety from rep exposure:
+     *   - all fields are private; ``lines`` is copied before it is returned
+     *
+     * Thread Safety Argument:
+     *   - Microbenchmark is not threadsafe; it is confined to the thread running the benchmarks
+     */
+
+    /**
+     * Creates a harness configured by command-line arguments:
+     *   [--quick] [--filter TEXT]
+     * where --quick runs fewer and shorter iterations, for checking that the benchmarks work,
+     * and TEXT selects the benchmarks whose names contain it.
+     * @param args command-line arguments as described above
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    public Microbenchmark(final String[] args) {
+        boolean quick = false;
+        String filter = "";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--quick")) quick = true;
+            else if (args[i].equals("--filter") && i + 1 < args.length) filter = args[++i];
+            else throw new IllegalArgumentException("usage: [--quick] [--filter TEXT]");
+        }
+        this.warmupIterations = quick ? 1 : 5;
+        this.measurementIterations = quick ? 2 : 10;
+        this.iterationNanos = (quick ? 20 : 200) * NANOS_PER_MILLI;
+        this.filter = filter;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert warmupIterations >= 0;
+        assert measurementIterations >= 2;
+        assert iterationNanos > 0;
+        assert filter != null;
+    }
+
+    /**
+     * Times a benchmark and prints its report, unless it is excluded by the filter.
+     * @param name name of the benchmark, including its parameters
+     * @param body operation to time
+     */
+    public void run(final String name, final Body body) {
+        if (!name.contains(filter)) return;
+        // find a batch size that takes about one iteration, so the clock is read rarely
+        long batch = 1;
+        while (timeBatch(body, batch) < iterationNanos / 10 && batch < Long.MAX_VALUE / 20) {
+            batch *= 2;
+        }
+        batch *= 10;
+        for (int i = 0; i < warmupIterations; i++) {
+            timeBatch(body, batch);
+        }
+        final double[] nanosPerOp = new double[measurementIterations];
+        double sum = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            nanosPerOp[i] = (double) timeBatch(body, batch) / batch;
+            sum += nanosPerOp[i];
+        }
+        final double mean = sum / measurementIterations;
+        double squares = 0;
+        for (double sample : nanosPerOp) {
+            squares += (sample - mean) * (sample - mean);
+        }
+        final double deviation = Math.sqrt(squares / (measurementIterations - 1));
+        final String line = String.format("%-60s %14.1f ns/op  +- %10.1f", name, mean, deviation);
+        lines.add(line);
+        System.out.println(line);
+    }
+
+    /*
+     * Runs a batch of operations and returns the time they took in nanoseconds.
+     */
+    private long timeBatch(final Body body, final long batch) {
+        final long start = System.nanoTime();
+        for (long i = 0; i < batch; i++) {
+            final Object result = body.run();
+            sink += result == null ? 0 : result.hashCode();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /** @return the reports printed so far, one per benchmark */
+    public List<String> getReports() {
+        return new ArrayList<>(lines);
+    }
+
+    /**
+     * @return a value combining the results of every operation run, which callers
+     *         should print so that the results cannot be optimized away
+     */
+    public int getSink() {
+        return sink;
+    }
+
+}
@@ -0,0 +1,258 @@
+package flingball;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Vect;
+
+/**
+ * Benchmarks of the physics hot paths of Flingball: collision resolution for the board walls,
+ * ball pairs and every kind of gadget, ball and flipper motion, whole steps of boards with
+ * different numbers of balls and gadgets, every gadget of the default board, and parsing the shipped boards.
+ *
+ * Command line usage:
+ *   PhysicsBenchmark [--quick] [--filter TEXT]
+ *
+ * See Microbenchmark for the arguments. Each line of output is one benchmark with its parameters.
+ * Collision benchmarks come in two forms: "miss", where the ball is near the gadget but
+ * not about to hit it, which is by far the most common case, and "hit", where the ball is
+ * put back on course for a collision before every operation.
+ */
+public class PhysicsBenchmark {
+
+    private static final int[] BALL_COUNTS = {1, 10, 100, 1000};
+    private static final int[] GADGET_COUNTS = {10, 50, 150};
+    private static final int[] SWEEP_BALL_COUNTS = {10, 100, 1000};
+    private static final int[] COLLISION_THREADS = {2, 4};
+    private static final int LAYOUT_BALLS = 100;
+    private static final long SEED = 6031;
+
+    /**
+     * Runs the benchmarks.
+     * @param args command-line arguments as described above
+     * @throws IOException if the shipped boards cannot be read
+     * @throws UnableToParseException if a shipped board cannot be parsed
+     */
+    public static void main(String[] args) throws IOException, UnableToParseException {
+        System.setProperty("java.awt.headless", "true");
+        final Microbenchmark harness = new Microbenchmark(args);
+
+        benchmarkWalls(harness);
+        benchmarkGadgets(harness);
+        benchmarkLayout(harness);
+        benchmarkMotion(harness);
+        for (int count : SWEEP_BALL_COUNTS) {
+            final Board board = makeBoard(count, 0);
+            harness.run("Board.resolveBallCollisions balls=" + count, () -> {
+                board.resolveBallCollisions();
+                return board;
+            });
+        }
+        for (int gadgets : GADGET_COUNTS) {
+            for (int balls : BALL_COUNTS) {
+                final Board board = makeBoard(balls, gadgets);
+                harness.run("Board.step balls=" + balls + " gadgets=" + gadgets, () -> {
+                    board.step(1);
+                    return board;
+                });
+            }
+        }
+        for (int gadgets : GADGET_COUNTS) {
+            final Board board = makeBoard(1000, gadgets);
+            board.setClearanceCaching(false);
+            harness.run("Board.step balls=1000 gadgets=" + gadgets + " clearanceCaching=false", () -> {
+                board.step(1);
+                return board;
+            });
+        }
+        for (int threads : COLLISION_THREADS) {
+            final Board board = makeBoard(1000, 150);
+            board.setCollisionThreads(threads);
+            harness.run("Board.step balls=1000 gadgets=150 collisionThreads=" + threads, () -> {
+                board.step(1);
+                return board;
+            });
+        }
+        benchmarkParser(harness);
+        System.out.println("sink " + harness.getSink());
+    }
+
+    /*
+     * Board.resolveCollision for a ball in the middle of the board and a ball about to hit a wall.
+     */
+    private static void benchmarkWalls(final Microbenchmark harness) throws IOException {
+        final Board board = new Board("Walls", 0, 0, 0);
+        final Ball far = new Ball("Far", 10, 10, 5, 5);
+        harness.run("Board.resolveCollision miss", () -> board.resolveCollision(far));
+        final Ball near = new Ball("Near", 19.74, 10, 10, 0);
+        final Vect towardWall = new Vect(10, 0);
+        harness.run("Board.resolveCollision hit", () -> {
+            near.setVelocity(towardWall);
+            return board.resolveCollision(near);
+        });
+    }
+
+    /*
+     * Gadget.resolveCollision and Gadget.timeUntilCollision for every kind of gadget, each at (10, 10) with balls
+     * approaching from the left, and the same predictions for the static gadgets compiled into a StaticGeometry.
+     */
+    private static void benchmarkGadgets(final Microbenchmark harness) throws IOException {
+        final Board board = new Board("Gadgets", 0, 0, 0);
+        final Portal target = new Portal("Target", 2, 2, board, "Portal");
+        board.addGadget(target);
+        final List<Gadget> gadgets = Arrays.asList(new SquareBumper("SquareBumper", 10, 10),
+                                                   new CircleBumper("CircleBumper", 10, 10),
+                                                   new TriangleBumper("TriangleBumper", 10, 10),
+                                                   new Absorber("Absorber", 10, 10, 1, 1),
+                                                   new Flipper("Flipper", 10, 10, 0, "left"),
+                                                   new Portal("Portal", 10, 10, board, "Target"));
+        final Vect towardGadget = new Vect(10, 0);
+        final StaticGeometry geometry = new StaticGeometry(Collections.emptyList(), gadgets);
+        for (Gadget gadget : gadgets) {
+            final Ball far = new Ball("Far", 8, 10.5, -5, 0);
+            harness.run(gadget.getName() + ".resolveCollision miss", () -> gadget.resolveCollision(far));
+            harness.run(gadget.getName() + ".timeUntilCollision", () -> gadget.timeUntilCollision(far));
+            final int owner = geometry.owner(gadget);
+            if (owner >= 0) {
+                harness.run("StaticGeometry.timeUntilCollision " + gadget.getName(),
+                            () -> geometry.timeUntilCollision(owner, far));
+            }
+            // absorbers and portals keep the balls they catch, so only misses are repeatable
+            if (gadget instanceof Absorber || gadget instanceof Portal) continue;
+            final Ball near = new Ball("Near", 9.74, 10.5, 10, 0);
+            harness.run(gadget.getName() + ".resolveCollision hit", () -> {
+                near.setVelocity(towardGadget);
+                return gadget.resolveCollision(near);
+            });
+        }
+    }
+
+    /*
+     * Gadget.resolveCollision for every gadget of boards/default.fb and each of LAYOUT_BALLS balls spread over
+     * the board, none of them about to collide, as a board that did not cull gadgets by their position would
+     * test them. Most balls are far from most gadgets, so this is dominated by mayCollide() early-outs.
+     */
+    private static void benchmarkLayout(final Microbenchmark harness) {
+        final Random random = new Random(SEED);
+        final Board board = parse("boards/default.fb");
+        final List<Gadget> gadgets = new ArrayList<>();
+        for (String name : new TreeSet<>(board.getGadgetsNames())) gadgets.add(board.getGadgetByName(name));
+        final List<Ball> balls = new ArrayList<>();
+        while (balls.size() < LAYOUT_BALLS) {
+            final Ball ball = new Ball("Ball" + balls.size(), 0.25 + random.nextDouble()*19.5,
+                                       0.25 + random.nextDouble()*19.5,
+                                       random.nextDouble()*40 - 20, random.nextDouble()*40 - 20);
+            if (gadgets.stream().allMatch(gadget -> isClear(ball, gadget))) balls.add(ball);
+        }
+        harness.run("Gadget.resolveCollision default.fb gadgets=" + gadgets.size() + " balls=" + balls.size(), () -> {
+            int collisions = 0;
+            for (Ball ball : balls) {
+                for (Gadget gadget : gadgets) {
+                    if (gadget.resolveCollision(ball)) collisions++;
+                }
+            }
+            return collisions;
+        });
+    }
+
+    /*
+     * Returns true if a ball is outside a gadget's bounding box and will not collide with it within
+     * Gadget.COLLISION_WINDOW, so resolving a collision with it changes nothing.
+     */
+    private static boolean isClear(final Ball ball, final Gadget gadget) {
+        final Vect position = gadget.getPosition();
+        final boolean inside = ball.getX() >= position.x() && ball.getX() <= position.x() + gadget.getWidth()
+                               && ball.getY() >= position.y() && ball.getY() <= position.y() + gadget.getHeight();
+        return !inside && gadget.timeUntilCollision(ball) >= Gadget.COLLISION_WINDOW;
+    }
+
+    /*
+     * Ball.move and Flipper.move.
+     */
+    private static void benchmarkMotion(final Microbenchmark harness) throws IOException {
+        final Board board = new Board("Motion");
+        final Ball ball = new Ball("Ball", 10, 10, 3, -4);
+        harness.run("Ball.move", () -> {
+            ball.move(1, board);
+            return ball;
+        });
+        final Flipper flipper = new Flipper("Flipper", 10, 10, 0, "left");
+        harness.run("Flipper.move", () -> {
+            flipper.respondToTrigger(); // keep the flipper swinging back and forth
+            flipper.move(1, board);
+            return flipper;
+        });
+    }
+
+    /*
+     * BoardParser.parse for the default board and for every shipped board that parses.
+     */
+    private static void benchmarkParser(final Microbenchmark harness) throws IOException, UnableToParseException {
+        final List<String> files = new ArrayList<>();
+        final File[] boardFiles = new File("boards").listFiles((dir, name) -> name.endsWith(".fb"));
+        if (boardFiles != null) {
+            Arrays.sort(boardFiles);
+            for (File file : boardFiles) {
+                try {
+                    BoardParser.parse(file.getPath());
+                    files.add(file.getPath());
+                } catch (UnableToParseException | RuntimeException e) {
+                    // boards the parser rejects are not benchmarked
+                }
+            }
+        }
+        harness.run("BoardParser.parse default.fb", () -> parse("boards/default.fb"));
+        harness.run("BoardParser.parse boards=" + files.size(), () -> {
+            Board last = null;
+            for (String file : files) last = parse(file);
+            return last;
+        });
+    }
+
+    /*
+     * Parses a board file that is known to be valid.
+     */
+    private static Board parse(final String file) {
+        try {
+            return BoardParser.parse(file);
+        } catch (UnableToParseException | IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /*
+     * A board without gravity or friction, so it keeps moving however long it is stepped, with
+     * square, circle and triangle bumpers in the odd rows and balls moving between them.
+     */
+    private static Board makeBoard(final int ballCount, final int gadgetCount) throws IOException {
+        final Random random = new Random(SEED);
+        final Board board = new Board("Bench", 0, 0, 0);
+        final List<Integer> cells = new ArrayList<>();
+        for (int cell = 0; cell < 200; cell++) cells.add(cell);
+        Collections.shuffle(cells, random);
+        for (int i = 0; i < gadgetCount; i++) {
+            final int col = cells.get(i) % 20;
+            final int row = 2 * (cells.get(i) / 20) + 1;
+            final String name = "Gadget" + i;
+            switch (i % 3) {
+            case 0: board.addGadget(new SquareBumper(name, col, row)); break;
+            case 1: board.addGadget(new CircleBumper(name, col, row)); break;
+            default: board.addGadget(new TriangleBumper(name, col, row)); break;
+            }
+        }
+        for (int i = 0; i < ballCount; i++) {
+            final double y = 2 * random.nextInt(10) + 0.5;
+            board.addBall(new Ball("Ball" + i, 0.25 + random.nextDouble()*19.5, y,
+                                   random.nextDouble()*40 - 20, random.nextDouble()*40 - 20));
+        }
+        return board;
+    }
+
+}
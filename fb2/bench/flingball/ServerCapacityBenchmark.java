@@ -0,0 +1,160 @@
+package flingball;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Capacity test of FlingballServer: connects more and more idle boards to a server running in this
+ * process, and reports the heap and threads used per connected board and the most boards it held at once,
+ * for each way the server can serve boards.
+ *
+ * Command line usage:
+ *   ServerCapacityBenchmark [--threads (selector|platform|virtual)] [--boards COUNT] [--step COUNT]
+ *
+ * --threads tests only that mode; by default every mode is tested, skipping virtual threads on runtimes
+ * that lack them. --boards is the most boards to connect (default 5000) and --step how many to connect
+ * between measurements (default 500). A mode stops early when a board fails to connect, typically when
+ * the process runs out of file descriptors or the server cannot start another thread.
+ *
+ * Boards are plain sockets that send a name and no portals, then wait for one routed reply, so each
+ * measurement includes the client end of every connection; that cost is the same for every mode.
+ */
+public class ServerCapacityBenchmark {
+
+    private static final List<String> MODES = Arrays.asList("selector", "platform", "virtual");
+    private static final int DEFAULT_BOARDS = 5000;
+    private static final int DEFAULT_STEP = 500;
+
+    /**
+     * Runs the capacity test.
+     * @param args command-line arguments as described above
+     * @throws IOException if a server cannot be started
+     * @throws InterruptedException if interrupted while waiting for a server to stop
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> modes = MODES;
+        int boards = DEFAULT_BOARDS;
+        int step = DEFAULT_STEP;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + args[i]);
+            switch (args[i]) {
+            case "--threads":
+                if (!MODES.contains(args[i + 1])) throw new IllegalArgumentException("unknown mode: " + args[i + 1]);
+                modes = Arrays.asList(args[i + 1]);
+                break;
+            case "--boards":
+                boards = Integer.parseInt(args[i + 1]);
+                break;
+            case "--step":
+                step = Integer.parseInt(args[i + 1]);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown argument: " + args[i]);
+            }
+        }
+        if (boards <= 0 || step <= 0) throw new IllegalArgumentException("counts must be positive");
+
+        for (String mode : modes) {
+            final Optional<ThreadFactory> handlers;
+            try {
+                handlers = mode.equals("selector") ? Optional.empty() : Optional.of(FlingballServer.threadFactory(mode));
+            } catch (IllegalArgumentException e) {
+                System.out.println(mode + ": skipped, " + e.getMessage());
+                continue;
+            }
+            measure(mode, handlers, boards, step);
+        }
+    }
+
+    /*
+     * Connects up to the specified number of boards to a new server, printing one line per step and a summary.
+     */
+    private static void measure(final String mode, final Optional<ThreadFactory> handlers,
+                                final int maxBoards, final int step) throws IOException, InterruptedException {
+        final FlingballServer server = new FlingballServer(0);
+        final Thread serveThread = new Thread(() -> {
+            try {
+                if (handlers.isPresent()) {
+                    server.serve(handlers.get());
+                } else {
+                    server.serve();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serveThread.start();
+
+        final List<Socket> sockets = new ArrayList<>();
+        final long baseHeap = usedHeap();
+        final int baseThreads = Thread.activeCount();
+        Optional<String> failure = Optional.empty();
+        try {
+            while (sockets.size() < maxBoards && !failure.isPresent()) {
+                final int target = Math.min(maxBoards, sockets.size() + step);
+                try {
+                    while (sockets.size() < target) {
+                        sockets.add(connect(server.getPort(), mode + "_" + sockets.size()));
+                    }
+                } catch (IOException | OutOfMemoryError e) {
+                    failure = Optional.of(e.toString());
+                }
+                report(mode, sockets.size(), usedHeap() - baseHeap, Thread.activeCount() - baseThreads);
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            server.close();
+            serveThread.join();
+        }
+        System.out.println(mode + ": max concurrent boards " + sockets.size()
+                           + (failure.isPresent() ? " (stopped by " + failure.get() + ")" : " (limit reached)"));
+    }
+
+    /*
+     * Connects one idle board and waits until the server has registered it.
+     */
+    private static Socket connect(final int port, final String name) throws IOException {
+        final Socket socket = new Socket("localhost", port);
+        try {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+            out.println(name);
+            out.println("noPortals");
+            // a request to a board that does not exist is answered once the board is registered
+            out.println("ballThroughWall newBoardName=Nowhere wallOrientation=Left name=Probe x=0 y=0 xVelocity=0 yVelocity=0");
+            if (in.readLine() == null) throw new IOException("server closed the connection");
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static void report(final String mode, final int boards, final long heapBytes, final int threads) {
+        System.out.println(String.format("%s boards=%d heap=%.1fMB heapPerBoard=%.1fKB threads=%d threadsPerBoard=%.3f",
+                                         mode, boards, heapBytes / 1e6, boards == 0 ? 0 : heapBytes / 1e3 / boards,
+                                         threads, boards == 0 ? 0 : (double) threads / boards));
+    }
+
+    /*
+     * Heap in use after a garbage collection. Virtual threads keep their stacks on the heap,
+     * so this counts them; platform thread stacks live outside the heap and show up as threads instead.
+     */
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+}
@@ -82,6 +82,7 @@ public class Absorber implements Gadget {
     
     // checkRep
     private void checkRep() {
+        if (!RepChecks.enabled()) return;
         assert name != null;
         
         assert position != null;
@@ -93,6 +94,19 @@ public class Absorber implements Gadget {
         assert width > 0 && height > 0;
         assert xPos + width <= 20 && yPos + height <= 20;
         
+        assert lines != null && circles != null;
+        assert sidesMatchPosition(); // builds the expected sides only when assertions are enabled
+        
+        assert triggering != null;
+        assert balls != null;
+    }
+    
+    /*
+     * Returns true if the sides and corners of the absorber are the ones its position and size give it.
+     */
+    private boolean sidesMatchPosition() {
+        final double xPos = position.x();
+        final double yPos = position.y();
         final int numSides = 4;
         final Vect upperLeft = new Vect(xPos, yPos);
         final Vect upperRight = new Vect(xPos+width, yPos);
@@ -107,16 +121,8 @@ public class Absorber implements Gadget {
                                                                         new Circle(upperRight, 0),
                                                                         new Circle(lowerLeft, 0),
                                                                         new Circle(lowerRight, 0)));
-        assert lines != null;
-        assert lines.size() == numSides;
-        assert expectedSides.equals(new HashSet<>(lines));
-        
-        assert circles != null;
-        assert circles.size() == numSides;
-        assert expectedCircles.equals(new HashSet<>(circles));
-        
-        assert triggering != null;
-        assert balls != null;
+        return lines.size() == numSides && expectedSides.equals(new HashSet<>(lines))
+               && circles.size() == numSides && expectedCircles.equals(new HashSet<>(circles));
     }
     
     /** @return set of the name of balls that this absorber currently holds */
@@ -171,15 +177,8 @@ public class Absorber implements Gadget {
     public boolean resolveCollision(final Ball ball) {
         // If the ball has not yet left this absorber,
         // do not count as another collision
-        if (ball.getExitingAbsorber() && balls.contains(ball)) {
-            assert balls.get(0).equals(ball);
-            if (ball.getPosition().y() <= getPosition().y() 
-                || ball.getPosition().y() >= getPosition().y() + height ) {
-                balls.remove(0);
-                ball.setExitingAbsorber(false);
-            }
-            return false;
-        }
+        if (passThrough(ball)) return false;
+        if (!mayCollide(ball, COLLISION_WINDOW)) return false;
         // Otherwise:
         /* Call the appropriate timeUntilCollision() methods to calculate 
          * the times at which the ball will collide with each of lines/circles. 
@@ -197,19 +196,69 @@ public class Absorber implements Gadget {
         }
         
         if (mintimeLine <= 1 || mintimeCircle <= 1) {
-            ball.setAbsorbed(true);
-            final double posOffset = 0.25;
-            final Vect newPosition = position.plus(new Vect(width - posOffset, height - posOffset));
-            ball.setPosition(newPosition);
-            final Vect newVelocity = new Vect(0, 0); // capture ball
-            ball.setVelocity(newVelocity); // updates the ball's velocity
-            balls.add(ball);
-            trigger(); // trigger upon collision
+            capture(ball);
             return true;
         }
         return false; // no collision
     }
     
+    /**
+     * Lets a ball that is leaving this absorber pass through its sides,
+     * and forgets the ball once it is clear of the absorber.
+     * @param ball ball of the Flingball game
+     * @return true if the ball has not yet left this absorber, so it does not collide with it
+     */
+    boolean passThrough(final Ball ball) {
+        if (!isLeaving(ball)) return false;
+        assert balls.get(0).equals(ball);
+        if (ball.getPosition().y() <= getPosition().y() 
+            || ball.getPosition().y() >= getPosition().y() + height ) {
+            balls.remove(0);
+            ball.setExitingAbsorber(false);
+        }
+        return true;
+    }
+    
+    /**
+     * @param ball ball of the Flingball game
+     * @return true if the ball was released by this absorber and has not yet left it
+     */
+    boolean isLeaving(final Ball ball) {
+        return ball.getExitingAbsorber() && balls.contains(ball);
+    }
+    
+    /**
+     * Captures a ball that collided with this absorber, holding it in the lower right corner,
+     * and triggers the gadgets this absorber triggers.
+     * @param ball ball that collided with this absorber
+     */
+    void capture(final Ball ball) {
+        ball.setAbsorbed(true);
+        final double posOffset = 0.25;
+        final Vect newPosition = position.plus(new Vect(width - posOffset, height - posOffset));
+        ball.setPosition(newPosition);
+        final Vect newVelocity = new Vect(0, 0); // capture ball
+        ball.setVelocity(newVelocity); // updates the ball's velocity
+        balls.add(ball);
+        trigger(); // trigger upon collision
+    }
+    
+    @Override
+    public double timeUntilCollision(final Ball ball) {
+        // a held ball, or a ball that has not yet left this absorber, cannot be captured
+        if (ball.getAbsorbed() || isLeaving(ball)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mintime = Double.POSITIVE_INFINITY;
+        for (LineSegment line : lines) {
+            mintime = Math.min(mintime, Physics.timeUntilWallCollision(line, ball.getCircle(), ball.getVelocity()));
+        }
+        for (Circle corner : circles) {
+            mintime = Math.min(mintime, Physics.timeUntilCircleCollision(corner, ball.getCircle(), ball.getVelocity()));
+        }
+        return mintime;
+    }
+    
     @Override
     public List<LineSegment> getLineSegments() {
         checkRep();
@@ -13,34 +13,59 @@ import physics.Vect;
  */
 public class Ball {
     private static final double RADIUS = 0.25;
-    private static final double POS_LOWER_BOUND = 0.25;
-    private static final double POS_UPPER_BOUND = 19.75;
+    static final double POS_LOWER_BOUND = 0.25;
+    static final double POS_UPPER_BOUND = 19.75;
     
     private final String name;
-    private Vect pos;
-    private Vect velocity;
-    private boolean absorbed;
-    private boolean exitingAbsorber;
-    private boolean exitingPortal;
+    // the store of the board that holds this ball's state and the ball's slot in it, both kept up to date
+    // by BallStore; null and -1 while the ball is on no board
+    BallStore store = null;
+    int index = -1;
+    // the ball's state while it is on no board
+    private double x;
+    private double y;
+    private double vx;
+    private double vy;
+    private long version = 0;
+    private boolean absorbed = false;
+    private boolean exitingAbsorber = false;
+    private boolean exitingPortal = false;
+    private Vect positionView = null;
+    private Vect velocityView = null;
+    private Circle circleView = null;
     
     /* 
      * Abstraction function:
-     *     AF(name, pos, velocity, absorbed, exitingAbsorber,exitingPortal): 
-     *         a Flingball ball, whose name is ``name``.
-     *         The ball's center is at the location represented by the vector ``pos``,
-     *         and the ball has velocity represented by the vector ``velocity``.
-     *         If ``absorbed`` is true, then the ball is currently captured by an absorber;
+     *     AF(name, store, index, x, y, vx, vy, version, absorbed, exitingAbsorber, exitingPortal,
+     *        positionView, velocityView, circleView): 
+     *         a Flingball ball, whose name is ``name``. While the ball is on a board, its state is slot
+     *         ``index`` of ``store``, as described below; while it is on no board, store is null and its state
+     *         is in the fields of the same names: x for store.x[index], absorbed for store.absorbed.get(index),
+     *         version for store.versions[index], and so on.
+     *         The ball's center is at (store.x[index], store.y[index]), 
+     *         and the ball has velocity (store.vx[index], store.vy[index]).
+     *         ``positionView``, ``velocityView`` and ``circleView`` cache the Vect and Circle objects 
+     *         last handed out for the position, velocity and shape of the ball, so that they are 
+     *         only created again after the ball has moved or changed velocity.
+     *         If store.absorbed.get(index) is true, then the ball is currently captured by an absorber;
      *         otherwise, the ball is free to move.
-     *         If ``exitingAbsorder`` is true, then the ball is currently exiting an absorber
-     *         and cannot be absorbed again until ``exitingAbsorder`` becomes false.
-     *         If ``exitingPortal`` is true, then the ball is currently exiting a portal
-     *         and cannot be teleported again until ``exitingAbsorder`` becomes false.
+     *         If store.exitingAbsorber.get(index) is true, then the ball is currently exiting an absorber
+     *         and cannot be absorbed again until that flag becomes false.
+     *         If store.exitingPortal.get(index) is true, then the ball is currently exiting a portal
+     *         and cannot be teleported again until that flag becomes false.
+     *         store.versions[index] counts the changes made to the ball's state, so that predictions made
+     *         about the ball can tell whether they are out of date.
      * Rep Invariant:
-     *   - 0.25 <= position.x() <= 19.75 and 0.25 <= position.y() <= 19.75
+     *   - store == null and index == -1, or store.handles[index] == this
+     *   - the ball's center is within 0.25 <= x, y <= 19.75
+     *   - a view is only returned while it matches the ball's current state; 
+     *     otherwise it is replaced first
      *     
      * Safety from rep exposure:
      *   - ``name`` is private, immutable, and final
-     *   - ``pos``, ``velocity``, ``absorbed``, and ``exitingAbsorber`` ``exitingPortal``are private and immutable,
+     *   - ``store`` and ``index`` are package-private so that BallStore can move the ball between slots,
+     *     and they are never returned to clients; the fields of a ball on no board are private primitives
+     *   - ``positionView``, ``velocityView`` and ``circleView`` are private and immutable,
      *     so returning their references to clients will not result in clients' inadvertently 
      *     mutating the rep of the board. However, clients are allowed to reassign the above 
      *     variable's values with the appropriate setter methods.
@@ -57,22 +82,56 @@ public class Ball {
      */
     public Ball(final String name, final double posX, final double posY, final double xVelocity, final double yVelocity) {
         this.name = name;
-        this.pos = new Vect(posX, posY);
-        this.velocity = new Vect(xVelocity, yVelocity);
-        this.absorbed = false;
-        this.exitingAbsorber = false;
+        this.x = posX;
+        this.y = posY;
+        this.vx = xVelocity;
+        this.vy = yVelocity;
         checkRep();
     }
     
     // checkRep
     private void checkRep() {
+        if (!RepChecks.enabled()) return;
         assert name != null;
-        assert pos != null;
-        final double xPos = pos.x();
-        final double yPos = pos.y();
-        assert POS_LOWER_BOUND <= xPos && xPos <= POS_UPPER_BOUND;
-        assert POS_LOWER_BOUND <= yPos && yPos <= POS_UPPER_BOUND;
-        assert velocity != null;
+        assert store == null ? index == -1 : store.handles[index] == this;
+        assert POS_LOWER_BOUND <= getX() && getX() <= POS_UPPER_BOUND;
+        assert POS_LOWER_BOUND <= getY() && getY() <= POS_UPPER_BOUND;
+    }
+    
+    /**
+     * Moves this ball's state into a new slot of a store, and frees its slot in the store that held it, if any.
+     * @param target store to move the ball into, requires target != store
+     */
+    void moveTo(final BallStore target) {
+        if (store == null) {
+            index = target.allocate(this);
+        } else {
+            final BallStore source = store;
+            final int from = index;
+            index = target.allocate(this, source, from);
+            source.release(from);
+        }
+        store = target;
+        checkRep();
+    }
+    
+    /**
+     * Moves this ball's state out of its store into the ball's own fields, and frees its slot.
+     * Like moving to another store, this changes the ball's version. Requires store != null.
+     */
+    void detach() {
+        x = store.x[index];
+        y = store.y[index];
+        vx = store.vx[index];
+        vy = store.vy[index];
+        version = store.versions[index] + 1;
+        absorbed = store.absorbed.get(index);
+        exitingAbsorber = store.exitingAbsorber.get(index);
+        exitingPortal = store.exitingPortal.get(index);
+        store.release(index);
+        store = null;
+        index = -1;
+        checkRep();
     }
     
     /**
@@ -81,16 +140,42 @@ public class Ball {
      *          Modifies this graphics by drawing the state of the ball on it.
      */
     public void render(final Graphics2D g) {
+        render(g, 0);
+    }
+    
+    /**
+     * Displays this ball on the window where it will be after moving at its current velocity
+     * for the specified period of time. The ball itself is not moved.
+     * @param g graphics for the drawing buffer for the window. 
+     *          Modifies this graphics by drawing the state of the ball on it.
+     * @param extrapolation length of time in seconds to look ahead, requires extrapolation >= 0
+     */
+    public void render(final Graphics2D g, final double extrapolation) {
         checkRep();
-        if (!absorbed) { // only display ball if not absorbed
-            final double diameter = (RADIUS + RADIUS) * Flingball.PIXELS_PER_L;
-            g.setColor(Color.RED);
-            g.fill(new Ellipse2D.Double((pos.x() - RADIUS) * Flingball.PIXELS_PER_L, 
-                                         (pos.y() - RADIUS) * Flingball.PIXELS_PER_L, 
-                                         diameter, diameter));
+        if (!getAbsorbed()) { // only display ball if not absorbed
+            final double drawX = Math.min(Math.max(getX() + getVelocityX()*extrapolation, POS_LOWER_BOUND), 
+                                          POS_UPPER_BOUND);
+            final double drawY = Math.min(Math.max(getY() + getVelocityY()*extrapolation, POS_LOWER_BOUND), 
+                                          POS_UPPER_BOUND);
+            renderAt(g, drawX, drawY);
         }
     }
     
+    /**
+     * Displays a ball centered at the specified position on the window.
+     * @param g graphics for the drawing buffer for the window. 
+     *          Modifies this graphics by drawing a ball on it.
+     * @param x x coordinate of the ball's center
+     * @param y y coordinate of the ball's center
+     */
+    static void renderAt(final Graphics2D g, final double x, final double y) {
+        final double diameter = (RADIUS + RADIUS) * Flingball.PIXELS_PER_L;
+        g.setColor(Color.RED);
+        g.fill(new Ellipse2D.Double((x - RADIUS) * Flingball.PIXELS_PER_L, 
+                                     (y - RADIUS) * Flingball.PIXELS_PER_L, 
+                                     diameter, diameter));
+    }
+    
     /**
      * Updates this ball's position to reflect its movement during the specified period of time,
      * according to the rules of Flingball physics.
@@ -98,17 +183,42 @@ public class Ball {
      * @param board board context on which the ball is moving
      */
     public void move(final long elapsedTime, final Board board) {
-        if (!absorbed) {
-            final double timeInSeconds = (double) elapsedTime / 1000;
-            Vect newPos = pos.plus(velocity.times(timeInSeconds));
-            // Cap newPos to prevent ball from going out of bounds
-            newPos = new Vect(Math.min(Math.max(newPos.x(), POS_LOWER_BOUND), POS_UPPER_BOUND), 
-                              Math.min(Math.max(newPos.y(), POS_LOWER_BOUND), POS_UPPER_BOUND));
-            setPosition(newPos);
-            Vect newVelocity = velocity.plus(new Vect(0, board.getGravity()).times(timeInSeconds)); // plus b/c positive direction points down
-            newVelocity = newVelocity.times(1 - board.getFriction1()*timeInSeconds 
-                                              - board.getFriction2()*velocity.length()*timeInSeconds);
-            setVelocity(newVelocity);
+        final double timeInSeconds = (double) elapsedTime / 1000;
+        advance(timeInSeconds);
+        applyForces(timeInSeconds, board);
+    }
+    
+    /**
+     * Moves this ball in a straight line at its current velocity for the specified period of time,
+     * without applying gravity or friction. Does nothing if the ball is absorbed.
+     * Does not change the ball's version, because the ball stays on the path that
+     * predictions about its motion already assume.
+     * @param seconds length of time in seconds, requires seconds >= 0
+     */
+    public void advance(final double seconds) {
+        if (store != null) {
+            store.advance(index, seconds);
+        } else if (!absorbed) {
+            x = BallStore.advanced(x, vx, seconds);
+            y = BallStore.advanced(y, vy, seconds);
+        }
+        checkRep();
+    }
+    
+    /**
+     * Updates this ball's velocity to reflect gravity and friction acting on it 
+     * during the specified period of time. Does nothing if the ball is absorbed.
+     * @param seconds length of time in seconds, requires seconds >= 0
+     * @param board board context on which the ball is moving
+     */
+    public void applyForces(final double seconds, final Board board) {
+        if (store != null) {
+            store.applyForces(index, seconds, board.getGravity(), board.getFriction1(), board.getFriction2());
+        } else if (!absorbed) {
+            final double scale = BallStore.frictionScale(vx, vy, seconds, board.getFriction1(), board.getFriction2());
+            vx = vx * scale;
+            vy = (vy + board.getGravity()*seconds) * scale;
+            version++;
         }
         checkRep();
     }
@@ -118,7 +228,16 @@ public class Ball {
      * @param newPos ball's new position
      */
     public void setPosition(final Vect newPos) {
-        pos = newPos;
+        if (store != null) {
+            store.x[index] = newPos.x();
+            store.y[index] = newPos.y();
+            store.versions[index]++;
+        } else {
+            x = newPos.x();
+            y = newPos.y();
+            version++;
+        }
+        positionView = newPos;
         checkRep();
     }
     
@@ -127,7 +246,16 @@ public class Ball {
      * @param newVelocity ball's new velocity
      */
     public void setVelocity(final Vect newVelocity) {
-        velocity = newVelocity;
+        if (store != null) {
+            store.vx[index] = newVelocity.x();
+            store.vy[index] = newVelocity.y();
+            store.versions[index]++;
+        } else {
+            vx = newVelocity.x();
+            vy = newVelocity.y();
+            version++;
+        }
+        velocityView = newVelocity;
         checkRep();
     }
     
@@ -156,7 +284,13 @@ public class Ball {
      * @param newAbsorbed ball's new absorbedState
      */
     public void setAbsorbed(final boolean newAbsorbed) {
-        absorbed = newAbsorbed;
+        if (store != null) {
+            store.absorbed.set(index, newAbsorbed);
+            store.versions[index]++;
+        } else {
+            absorbed = newAbsorbed;
+            version++;
+        }
         checkRep();
     }
     
@@ -165,7 +299,13 @@ public class Ball {
      * @param newExitingAbsorber true if ball is exiting absorber, false otherwise
      */
     public void setExitingAbsorber(final boolean newExitingAbsorber) {
-        exitingAbsorber = newExitingAbsorber;
+        if (store != null) {
+            store.exitingAbsorber.set(index, newExitingAbsorber);
+            store.versions[index]++;
+        } else {
+            exitingAbsorber = newExitingAbsorber;
+            version++;
+        }
         checkRep();
     }
     /**
@@ -173,7 +313,13 @@ public class Ball {
      * @param newExitingPortal true if ball is exiting absorber, false otherwise
      */
     public void setExitingPortal(final boolean newExitingPortal) {
-        exitingPortal = newExitingPortal;
+        if (store != null) {
+            store.exitingPortal.set(index, newExitingPortal);
+            store.versions[index]++;
+        } else {
+            exitingPortal = newExitingPortal;
+            version++;
+        }
         checkRep();
     }
     /** @return ball's name */
@@ -185,20 +331,65 @@ public class Ball {
     /** @return ball's circle */
     public Circle getCircle() {
         checkRep();
-        return new Circle(pos, RADIUS);
+        final Vect position = getPosition();
+        if (circleView == null || circleView.getCenter() != position) circleView = new Circle(position, RADIUS);
+        return circleView;
+    }
+    
+    /** 
+     * @return number of times this ball's position, velocity or state has been set;
+     *         it changes whenever a prediction about the ball's motion may have become stale 
+     */
+    public long getVersion() {
+        return store != null ? store.versions[index] : version;
+    }
+    
+    /** @return ball's radius */
+    public double getRadius() {
+        return RADIUS;
+    }
+    
+    /** @return x coordinate of the ball's center */
+    public double getX() {
+        return store != null ? store.x[index] : x;
+    }
+    
+    /** @return y coordinate of the ball's center */
+    public double getY() {
+        return store != null ? store.y[index] : y;
+    }
+    
+    /** @return horizontal component of the ball's velocity */
+    public double getVelocityX() {
+        return store != null ? store.vx[index] : vx;
+    }
+    
+    /** @return vertical component of the ball's velocity */
+    public double getVelocityY() {
+        return store != null ? store.vy[index] : vy;
     }
     
     /** @return ball's velocity */
     public Vect getVelocity() {
         checkRep();
-        return velocity;
+        final double vx = getVelocityX();
+        final double vy = getVelocityY();
+        if (velocityView == null || velocityView.x() != vx || velocityView.y() != vy) {
+            velocityView = new Vect(vx, vy);
+        }
+        return velocityView;
     }
     
     
     /** @return ball's current position */
     public Vect getPosition() {
         checkRep();
-        return pos;
+        final double x = getX();
+        final double y = getY();
+        if (positionView == null || positionView.x() != x || positionView.y() != y) {
+            positionView = new Vect(x, y);
+        }
+        return positionView;
     }
     
     /** 
@@ -207,7 +398,7 @@ public class Ball {
      */
     public boolean getAbsorbed() {
         checkRep();
-        return absorbed;
+        return store != null ? store.absorbed.get(index) : absorbed;
     }
     
     /** 
@@ -216,7 +407,7 @@ public class Ball {
      */
     public boolean getExitingAbsorber() {
         checkRep();
-        return exitingAbsorber;
+        return store != null ? store.exitingAbsorber.get(index) : exitingAbsorber;
     }
     /** 
      * @return true if this ball is exiting an portal, 
@@ -224,7 +415,7 @@ public class Ball {
      */
     public boolean getExitingPortal() {
         checkRep();
-        return exitingPortal;
+        return store != null ? store.exitingPortal.get(index) : exitingPortal;
     }
     
     /**
@@ -238,10 +429,10 @@ public class Ball {
         if (!(that instanceof Ball)) return false;
         final Ball other = (Ball) that;
         return this.name.equals(other.name)
-               && this.pos.equals(other.pos)
-               && this.velocity.equals(other.velocity)
-               && this.absorbed == other.absorbed
-               && this.exitingAbsorber == other.exitingAbsorber;
+               && this.getX() == other.getX() && this.getY() == other.getY()
+               && this.getVelocityX() == other.getVelocityX() && this.getVelocityY() == other.getVelocityY()
+               && this.getAbsorbed() == other.getAbsorbed()
+               && this.getExitingAbsorber() == other.getExitingAbsorber();
     }
     
     @Override 
@@ -250,7 +441,7 @@ public class Ball {
         final StringBuilder string = new StringBuilder();
         final Formatter formatter = new Formatter(string);
         formatter.format("Ball <%s> at position %s with velocity %s (absorbed=%B, exitingAbsorber=%B)\n", 
-                         name, pos, velocity, absorbed, exitingAbsorber);
+                         name, getPosition(), getVelocity(), getAbsorbed(), getExitingAbsorber());
         return string.toString();
     }
 
@@ -0,0 +1,337 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A mutable structure-of-arrays store for the state of Flingball balls.
+ * The position, velocity and flags of every ball live in parallel arrays indexed by slot,
+ * so passes over all the balls, such as moving them, are linear scans over primitive arrays.
+ * Each board has one; a Ball on a board is a handle to one slot of its board's store, and a Ball on no
+ * board keeps its state in fields of its own until a board adds it.
+ */
+class BallStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    static final double UNKNOWN_CLEARANCE = -1;
+
+    // read and written directly by Ball and BallSweep, which are the only users of the slots
+    double[] x;
+    double[] y;
+    double[] vx;
+    double[] vy;
+    long[] versions;
+    Ball[] handles;
+    // read and written directly by Board, which caches how far each ball is from the static geometry
+    double[] clearX;
+    double[] clearY;
+    double[] clearance;
+    final BitSet absorbed = new BitSet();
+    final BitSet exitingAbsorber = new BitSet();
+    final BitSet exitingPortal = new BitSet();
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int size = 0;
+
+    /*
+     * Abstraction function:
+     *     AF(x, y, vx, vy, versions, handles, clearX, clearY, clearance, absorbed, exitingAbsorber,
+     *        exitingPortal, slots, size):
+     *         the state of the balls handles[0..size-1], where the ball in slot i has its center at
+     *         (x[i], y[i]), velocity (vx[i], vy[i]) and version versions[i], is held by an absorber
+     *         if absorbed.get(i), is exiting an absorber if exitingAbsorber.get(i), and is exiting
+     *         a portal if exitingPortal.get(i). ``slots`` maps the name of each ball to its slot.
+     *         If clearance[i] >= 0, no wall or static gadget of the board came within clearance[i] of the
+     *         ball's surface when its center was at (clearX[i], clearY[i]); if it is negative, that is not known.
+     *
+     * Rep Invariant:
+     *   - x, y, vx, vy, versions, handles, clearX, clearY and clearance all have the same length, which is >= size
+     *   - for 0 <= i < size, handles[i].index == i and handles[i].store == this,
+     *     slots.get(handles[i].getName()) == i, and 0.25 <= x[i], y[i] <= 19.75
+     *   - slots has size ``size``, handles[size..] are null, and no flag is set at or beyond ``size``
+     *
+     * Safety from rep exposure:
+     *   - the arrays and bitsets are package-private and only used by Ball and BallSweep,
+     *     which keep the rep invariant; no references to them are returned
+     *   - balls are shared with clients on purpose, since they are handles to the store
+     *
+     * Thread Safety Argument:
+     *   - BallStore is not threadsafe; it is confined to the thread that simulates its board
+     */
+
+    /**
+     * Creates a new, empty store.
+     */
+    BallStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty store with room for the specified number of balls before it grows.
+     * @param capacity initial number of slots, requires capacity > 0
+     */
+    BallStore(final int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        versions = new long[capacity];
+        handles = new Ball[capacity];
+        clearX = new double[capacity];
+        clearY = new double[capacity];
+        clearance = new double[capacity];
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert x.length == y.length && y.length == vx.length && vx.length == vy.length
+               && vy.length == versions.length && versions.length == handles.length
+               && handles.length == clearX.length && clearX.length == clearY.length
+               && clearY.length == clearance.length;
+        assert 0 <= size && size <= handles.length;
+        assert slots.size() == size;
+        assert absorbed.length() <= size && exitingAbsorber.length() <= size && exitingPortal.length() <= size;
+    }
+
+    /**
+     * Adds a ball to this store, moving its state out of the store that held it.
+     * A ball already in this store with the same name is removed first.
+     * @param ball ball to add
+     */
+    void add(final Ball ball) {
+        if (ball.store == this) return;
+        final Ball replaced = get(ball.getName());
+        if (replaced != null) remove(replaced.getName());
+        ball.moveTo(this);
+        checkRep();
+    }
+
+    /**
+     * Removes the ball with the specified name from this store. The removed ball keeps its
+     * state in its own fields, so it can still be used or added to another store.
+     * @param name name of the ball to remove
+     * @return the removed ball, or null if there is no ball with that name in this store
+     */
+    Ball remove(final String name) {
+        final Ball ball = get(name);
+        if (ball != null) ball.detach();
+        checkRep();
+        return ball;
+    }
+
+    /**
+     * Copies the state of a slot of another store into a new slot at the end of this store.
+     * @param ball handle of the ball being copied
+     * @param source store that holds the ball's state
+     * @param from slot of the ball in source
+     * @return the new slot
+     */
+    int allocate(final Ball ball, final BallStore source, final int from) {
+        if (size == handles.length) grow();
+        final int slot = size++;
+        x[slot] = source.x[from];
+        y[slot] = source.y[from];
+        vx[slot] = source.vx[from];
+        vy[slot] = source.vy[from];
+        versions[slot] = source.versions[from] + 1;
+        handles[slot] = ball;
+        clearance[slot] = UNKNOWN_CLEARANCE; // measured on another board, if at all
+        absorbed.set(slot, source.absorbed.get(from));
+        exitingAbsorber.set(slot, source.exitingAbsorber.get(from));
+        exitingPortal.set(slot, source.exitingPortal.get(from));
+        slots.put(ball.getName(), slot);
+        return slot;
+    }
+
+    /**
+     * Copies the state of a ball that is on no board into a new slot at the end of this store.
+     * @param ball ball whose state is in its own fields
+     * @return the new slot
+     */
+    int allocate(final Ball ball) {
+        if (size == handles.length) grow();
+        final int slot = size++;
+        x[slot] = ball.getX();
+        y[slot] = ball.getY();
+        vx[slot] = ball.getVelocityX();
+        vy[slot] = ball.getVelocityY();
+        versions[slot] = ball.getVersion() + 1;
+        handles[slot] = ball;
+        clearance[slot] = UNKNOWN_CLEARANCE;
+        absorbed.set(slot, ball.getAbsorbed());
+        exitingAbsorber.set(slot, ball.getExitingAbsorber());
+        exitingPortal.set(slot, ball.getExitingPortal());
+        slots.put(ball.getName(), slot);
+        return slot;
+    }
+
+    /**
+     * Frees a slot by moving the ball in the last slot into it.
+     * @param slot slot to free, requires 0 <= slot < size()
+     */
+    void release(final int slot) {
+        slots.remove(handles[slot].getName());
+        final int last = --size;
+        if (slot != last) {
+            x[slot] = x[last];
+            y[slot] = y[last];
+            vx[slot] = vx[last];
+            vy[slot] = vy[last];
+            versions[slot] = versions[last];
+            handles[slot] = handles[last];
+            clearX[slot] = clearX[last];
+            clearY[slot] = clearY[last];
+            clearance[slot] = clearance[last];
+            absorbed.set(slot, absorbed.get(last));
+            exitingAbsorber.set(slot, exitingAbsorber.get(last));
+            exitingPortal.set(slot, exitingPortal.get(last));
+            handles[slot].index = slot;
+            slots.put(handles[slot].getName(), slot);
+        }
+        handles[last] = null;
+        absorbed.clear(last);
+        exitingAbsorber.clear(last);
+        exitingPortal.clear(last);
+    }
+
+    /*
+     * Doubles the number of slots.
+     */
+    private void grow() {
+        final int capacity = 2 * handles.length;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        handles = Arrays.copyOf(handles, capacity);
+        clearX = Arrays.copyOf(clearX, capacity);
+        clearY = Arrays.copyOf(clearY, capacity);
+        clearance = Arrays.copyOf(clearance, capacity);
+    }
+    
+    /**
+     * Forgets how far every ball is from the static geometry, for example because the geometry changed.
+     */
+    void forgetClearances() {
+        Arrays.fill(clearance, 0, size, UNKNOWN_CLEARANCE);
+    }
+
+    /** @return number of balls in this store */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param slot slot of the ball, requires 0 <= slot < size()
+     * @return the ball in that slot
+     */
+    Ball getBall(final int slot) {
+        return handles[slot];
+    }
+
+    /**
+     * @param name name of the ball
+     * @return the ball with that name, or null if there is no such ball in this store
+     */
+    Ball get(final String name) {
+        final Integer slot = slots.get(name);
+        return slot == null ? null : handles[slot];
+    }
+
+    /** @return names of the balls in this store, as a view that changes with the store */
+    Set<String> getNames() {
+        return slots.keySet();
+    }
+
+    /** @return a new list of the balls in this store, in order of their slots */
+    List<Ball> getBalls() {
+        return new ArrayList<>(Arrays.asList(handles).subList(0, size));
+    }
+
+    /**
+     * Moves every ball that is not absorbed in a straight line at its current velocity
+     * for the specified period of time, as Ball.advance() does for one ball.
+     * @param seconds length of time in seconds, requires seconds >= 0
+     */
+    void advance(final double seconds) {
+        for (int i = 0; i < size; i++) {
+            advance(i, seconds);
+        }
+    }
+
+    /**
+     * Moves the ball in a slot in a straight line at its current velocity for the specified
+     * period of time, unless it is absorbed. Does not change the ball's version.
+     * @param slot slot of the ball, requires 0 <= slot < size()
+     * @param seconds length of time in seconds, requires seconds >= 0
+     */
+    void advance(final int slot, final double seconds) {
+        if (absorbed.get(slot)) return;
+        x[slot] = advanced(x[slot], vx[slot], seconds);
+        y[slot] = advanced(y[slot], vy[slot], seconds);
+    }
+
+    /**
+     * @param position coordinate of a ball's center
+     * @param velocity the ball's velocity along the same axis
+     * @param seconds length of time in seconds, requires seconds >= 0
+     * @return the coordinate after moving at that velocity for that time, kept within the board
+     */
+    static double advanced(final double position, final double velocity, final double seconds) {
+        // Cap the new position to prevent ball from going out of bounds
+        return Math.min(Math.max(position + velocity*seconds, Ball.POS_LOWER_BOUND), Ball.POS_UPPER_BOUND);
+    }
+
+    /**
+     * Updates the velocity of every ball that is not absorbed to reflect gravity and friction
+     * acting on it during the specified period of time, as Ball.applyForces() does for one ball.
+     * @param seconds length of time in seconds, requires seconds >= 0
+     * @param gravity board's gravity
+     * @param friction1 board's friction mu
+     * @param friction2 board's friction mu2
+     */
+    void applyForces(final double seconds, final double gravity, final double friction1, final double friction2) {
+        for (int i = 0; i < size; i++) {
+            applyForces(i, seconds, gravity, friction1, friction2);
+        }
+    }
+
+    /**
+     * Updates the velocity of the ball in a slot to reflect gravity and friction acting on it
+     * during the specified period of time, unless it is absorbed.
+     * @param slot slot of the ball, requires 0 <= slot < size()
+     * @param seconds length of time in seconds, requires seconds >= 0
+     * @param gravity board's gravity
+     * @param friction1 board's friction mu
+     * @param friction2 board's friction mu2
+     */
+    void applyForces(final int slot, final double seconds, final double gravity,
+                     final double friction1, final double friction2) {
+        if (absorbed.get(slot)) return;
+        final double scale = frictionScale(vx[slot], vy[slot], seconds, friction1, friction2);
+        vx[slot] = vx[slot] * scale;
+        vy[slot] = (vy[slot] + gravity*seconds) * scale; // plus b/c positive direction points down
+        versions[slot]++;
+    }
+
+    /**
+     * @param vx horizontal component of a ball's velocity
+     * @param vy vertical component of the ball's velocity
+     * @param seconds length of time in seconds, requires seconds >= 0
+     * @param friction1 board's friction mu
+     * @param friction2 board's friction mu2
+     * @return factor by which friction scales the ball's velocity, with gravity added, over that time
+     */
+    static double frictionScale(final double vx, final double vy, final double seconds,
+                                final double friction1, final double friction2) {
+        // friction depends on the speed before gravity is applied
+        return 1 - friction1*seconds - friction2*Math.sqrt(vx*vx + vy*vy)*seconds;
+    }
+
+}
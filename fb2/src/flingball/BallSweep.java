@@ -0,0 +1,178 @@
+package flingball;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import physics.Physics;
+
+/**
+ * A mutable sort-and-sweep broad phase for finding colliding pairs of balls.
+ * Only pairs of balls whose swept bounding boxes overlap are tested exactly.
+ */
+public class BallSweep {
+
+    private Ball[] balls = new Ball[0];
+    private double[] minX = new double[0];
+    private double[] maxX = new double[0];
+    private double[] minY = new double[0];
+    private double[] maxY = new double[0];
+    private int[] order = new int[0];
+    private boolean[] paired = new boolean[0];
+    private int size = 0;
+
+    /*
+     * Abstraction function:
+     *     AF(balls, minX, maxX, minY, maxY, order, paired, size):
+     *         scratch space for one sweep over the ``size`` balls balls[0..size-1], where ball i
+     *         sweeps the box [minX[i], maxX[i]] x [minY[i], maxY[i]], order[0..size-1] lists the balls
+     *         by increasing minX, and paired[i] is true if ball i already has a collision this sweep.
+     *         ``order`` is kept between sweeps, so when balls move only a little it is nearly sorted
+     *         at the start of the next sweep.
+     *
+     * Rep Invariant:
+     *   - balls, minX, maxX, minY, maxY, order and paired all have the same length, which is >= size
+     *   - order[0..size-1] is a permutation of 0..size-1
+     *
+     * Safety from rep exposure:
+     *   - all fields are private and their references are never shared with clients
+     *
+     * Thread Safety Argument:
+     *   - BallSweep is not threadsafe; it is confined to the thread that simulates its board
+     */
+
+    /**
+     * Creates a new sweep with no balls.
+     */
+    public BallSweep() {
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert balls.length == minX.length && minX.length == maxX.length && maxX.length == minY.length
+               && minY.length == maxY.length && maxY.length == order.length && order.length == paired.length;
+        assert size <= balls.length;
+    }
+
+    /**
+     * Finds pairs of balls that will collide within the specified period of time
+     * if they keep moving at their current velocities. Each ball appears in at most one pair.
+     * @param collection balls of the Flingball game
+     * @param seconds length of time in seconds, requires seconds > 0
+     * @return map from the first ball of each colliding pair to the second ball of that pair,
+     *         in a deterministic order
+     */
+    public Map<Ball, Ball> findCollisions(final Collection<Ball> collection, final double seconds) {
+        reserve(collection.size());
+        int i = 0;
+        for (Ball ball : collection) {
+            loadBall(i++, ball, ball.getX(), ball.getY(), ball.getVelocityX(), ball.getVelocityY(), seconds);
+        }
+        return sweep(collection.size(), seconds);
+    }
+
+    /**
+     * Finds pairs of balls that will collide within the specified period of time
+     * if they keep moving at their current velocities, reading their state straight
+     * from the arrays of a ball store. Each ball appears in at most one pair.
+     * @param store balls of the Flingball game
+     * @param seconds length of time in seconds, requires seconds > 0
+     * @return map from the first ball of each colliding pair to the second ball of that pair,
+     *         in a deterministic order
+     */
+    Map<Ball, Ball> findCollisions(final BallStore store, final double seconds) {
+        final int count = store.size();
+        reserve(count);
+        for (int i = 0; i < count; i++) {
+            loadBall(i, store.handles[i], store.x[i], store.y[i], store.vx[i], store.vy[i], seconds);
+        }
+        return sweep(count, seconds);
+    }
+
+    /*
+     * Finds the colliding pairs among the first newSize balls loaded into the scratch arrays.
+     */
+    private Map<Ball, Ball> sweep(final int newSize, final double seconds) {
+        if (newSize != size) {
+            // the balls changed, so the previous order says nothing about the new one
+            size = newSize;
+            final Integer[] boxed = new Integer[size];
+            for (int k = 0; k < size; k++) boxed[k] = k;
+            Arrays.sort(boxed, Comparator.comparingDouble((Integer k) -> minX[k]));
+            for (int k = 0; k < size; k++) order[k] = boxed[k];
+        }
+        sortByMinX();
+        final Map<Ball, Ball> collisions = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            final int a = order[i];
+            // every ball whose box starts before this box ends may overlap it
+            for (int j = i + 1; j < size && minX[order[j]] <= maxX[a]; j++) {
+                final int b = order[j];
+                if (paired[a]) break;
+                if (paired[b] || minY[b] > maxY[a] || maxY[b] < minY[a]) continue;
+                final Ball ball1 = balls[a];
+                final Ball ball2 = balls[b];
+                final double collisionTime = Physics.timeUntilBallBallCollision(
+                        ball1.getCircle(), ball1.getVelocity(), ball2.getCircle(), ball2.getVelocity());
+                if (collisionTime < seconds) {
+                    collisions.put(ball1, ball2);
+                    paired[a] = true;
+                    paired[b] = true;
+                }
+            }
+        }
+        Arrays.fill(balls, 0, size, null); // do not hold on to balls between sweeps
+        checkRep();
+        return collisions;
+    }
+
+    /*
+     * Makes room in the scratch arrays for newSize balls.
+     */
+    private void reserve(final int newSize) {
+        if (newSize > balls.length) {
+            final int capacity = Math.max(newSize, 2*balls.length);
+            balls = new Ball[capacity];
+            minX = new double[capacity];
+            maxX = new double[capacity];
+            minY = new double[capacity];
+            maxY = new double[capacity];
+            paired = new boolean[capacity];
+            order = Arrays.copyOf(order, capacity);
+        }
+    }
+
+    /*
+     * Copies a ball into slot i of the scratch arrays together with its swept box.
+     */
+    private void loadBall(final int i, final Ball ball, final double x, final double y,
+                          final double vx, final double vy, final double seconds) {
+        final double reach = ball.getRadius() + Math.sqrt(vx*vx + vy*vy)*seconds;
+        balls[i] = ball;
+        minX[i] = x - reach;
+        maxX[i] = x + reach;
+        minY[i] = y - reach;
+        maxY[i] = y + reach;
+        paired[i] = false;
+    }
+
+    /*
+     * Insertion sort of order by minX, which takes linear time when order is already nearly sorted.
+     */
+    private void sortByMinX() {
+        for (int i = 1; i < size; i++) {
+            final int current = order[i];
+            final double key = minX[current];
+            int j = i - 1;
+            while (j >= 0 && minX[order[j]] > key) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+}
@@ -0,0 +1,265 @@
+package flingball;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * Console interface that simulates every board in a directory without displaying them,
+ * spreading the boards across all cores with a work-stealing pool.
+ * Each board is stepped headless, as in HeadlessFlingball, on a single thread.
+ */
+public class BatchFlingball {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // the board parser shares one compiled grammar, so boards are parsed one at a time
+    private static final Object PARSE_LOCK = new Object();
+
+    /**
+     * An immutable outcome of simulating one board file.
+     */
+    public static class Result {
+        private final String file;
+        private final long ticks;
+        private final long wallNanos;
+        private final long stateHash;
+        private final Optional<String> error;
+
+        /*
+         * Abstraction function:
+         *     AF(file, ticks, wallNanos, stateHash, error):
+         *         the outcome of simulating the board file ``file``. If error.isPresent() is true,
+         *         the board could not be simulated because of error.get(); otherwise it was
+         *         stepped ``ticks`` times in ``wallNanos`` nanoseconds of real time and ended
+         *         in a state whose hash is ``stateHash``.
+         *
+         * Rep Invariant:
+         *   - ticks >= 0, wallNanos >= 0
+         *
+         * Safety from rep exposure:
+         *   - all fields are private, final and immutable
+         *
+         * Thread Safety Argument:
+         *   - Result is immutable, so it is threadsafe
+         */
+
+        private Result(final String file, final long ticks, final long wallNanos,
+                       final long stateHash, final Optional<String> error) {
+            this.file = file;
+            this.ticks = ticks;
+            this.wallNanos = wallNanos;
+            this.stateHash = stateHash;
+            this.error = error;
+            checkRep();
+        }
+
+        // checkRep
+        private void checkRep() {
+            assert file != null;
+            assert ticks >= 0 && wallNanos >= 0;
+            assert error != null;
+        }
+
+        /** @return path of the board file */
+        public String getFile() {
+            return file;
+        }
+
+        /** @return number of steps the board was simulated for */
+        public long getTicks() {
+            return ticks;
+        }
+
+        /** @return real time in nanoseconds spent simulating the board, not counting parsing */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /** @return hash of the final state of the board, as computed by stateHash() */
+        public long getStateHash() {
+            return stateHash;
+        }
+
+        /** @return description of why the board could not be simulated, if it could not */
+        public Optional<String> getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            if (error.isPresent()) {
+                return String.format("%s: FAILED %s", file, error.get());
+            }
+            final double seconds = wallNanos / 1e9;
+            return String.format("%s: %d steps in %.3f s (%.0f ticks/sec) hash=%016x",
+                                 file, ticks, seconds, ticks / seconds, stateHash);
+        }
+    }
+
+    /**
+     * Computes a hash of the balls of a board that is the same on every run and every machine
+     * for boards in the same state. It covers each ball's name, position, velocity and absorbed state.
+     * @param board board to hash
+     * @return 64-bit FNV-1a hash of the board's balls, taken in order of their names
+     */
+    public static long stateHash(final Board board) {
+        final List<String> ballNames = new ArrayList<>(board.getBallsNames());
+        Collections.sort(ballNames);
+        long hash = FNV_OFFSET_BASIS;
+        for (String ballName : ballNames) {
+            final Ball ball = board.getBallByName(ballName);
+            for (int i = 0; i < ballName.length(); i++) {
+                hash = fnv(hash, ballName.charAt(i));
+            }
+            hash = fnv(hash, Double.doubleToLongBits(ball.getPosition().x()));
+            hash = fnv(hash, Double.doubleToLongBits(ball.getPosition().y()));
+            hash = fnv(hash, Double.doubleToLongBits(ball.getVelocity().x()));
+            hash = fnv(hash, Double.doubleToLongBits(ball.getVelocity().y()));
+            hash = fnv(hash, ball.getAbsorbed() ? 1 : 0);
+        }
+        return hash;
+    }
+
+    /*
+     * Mixes the eight bytes of value into an FNV-1a hash.
+     */
+    private static long fnv(long hash, final long value) {
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Parses and simulates one board file headless.
+     * @param file path of the board file
+     * @param duration length of simulated time in milliseconds, requires duration >= 0
+     * @param step length of each step in milliseconds, requires step > 0
+     * @param eventDriven true to step the board with the event-driven collision engine
+     * @return outcome of simulating the board; parse and simulation failures are reported in the result
+     */
+    public static Result runBoard(final String file, final long duration, final long step, final boolean eventDriven) {
+        final Board board;
+        try {
+            synchronized (PARSE_LOCK) {
+                board = BoardParser.parse(file);
+            }
+        } catch (UnableToParseException | IOException e) {
+            return new Result(file, 0, 0, 0, Optional.of(e.toString()));
+        }
+        board.setEventDriven(eventDriven);
+        final long start = System.nanoTime();
+        try {
+            final long ticks = HeadlessFlingball.run(board, duration, step);
+            return new Result(file, ticks, System.nanoTime() - start, stateHash(board), Optional.empty());
+        } catch (RuntimeException | AssertionError e) {
+            return new Result(file, 0, System.nanoTime() - start, 0, Optional.of(e.toString()));
+        }
+    }
+
+    /**
+     * Simulates several board files in parallel.
+     * @param files paths of the board files
+     * @param duration length of simulated time in milliseconds, requires duration >= 0
+     * @param step length of each step in milliseconds, requires step > 0
+     * @param eventDriven true to step the boards with the event-driven collision engine
+     * @param pool pool whose threads simulate the boards
+     * @return outcome of simulating each board, in the same order as files
+     */
+    public static List<Result> runAll(final List<String> files, final long duration, final long step,
+                                      final boolean eventDriven, final ForkJoinPool pool) {
+        final List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+        for (String file : files) {
+            tasks.add(pool.submit(() -> runBoard(file, duration, step, eventDriven)));
+        }
+        final List<Result> results = new ArrayList<>();
+        for (ForkJoinTask<Result> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /**
+     * Simulates every board file in a directory and prints how fast each one ran and a hash of its final state.
+     *
+     * Command line usage:
+     *   BatchFlingball [--seconds SECONDS] [--step STEP] [--threads THREADS] [--event-driven] [DIRECTORY]
+     *
+     *   SECONDS is the length of simulated time to run each board for. The default is 10 seconds.
+     *
+     *   STEP is the length of each simulation step in milliseconds.
+     *   The default is Board.DEFAULT_TIMESTEP.
+     *
+     *   THREADS is the number of boards simulated at the same time.
+     *   The default is the number of available processors.
+     *
+     *   --event-driven steps the boards with the event-driven collision engine.
+     *
+     *   DIRECTORY is the directory whose .fb files are simulated. The default is boards.
+     *
+     * @param args command-line arguments as described above
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    public static void main(String[] args) {
+        // make sure nothing touched by the boards, such as the key codes in KeyEvent, tries to use a display
+        System.setProperty("java.awt.headless", "true");
+
+        double seconds = HeadlessFlingball.DEFAULT_SECONDS;
+        long step = Board.DEFAULT_TIMESTEP;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean eventDriven = false;
+        String directory = "boards";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--seconds")) seconds = Double.parseDouble(args[++i]);
+                else if (args[i].equals("--step")) step = Long.parseLong(args[++i]);
+                else if (args[i].equals("--threads")) threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--event-driven")) eventDriven = true;
+                else directory = args[i];
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(
+                    "usage: BatchFlingball [--seconds SECONDS] [--step STEP] [--threads THREADS] [--event-driven] [DIRECTORY]", e);
+        }
+        if (seconds < 0 || step <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("seconds must be >= 0, and step and threads must be > 0");
+        }
+        final File[] boardFiles = new File(directory).listFiles((dir, name) -> name.endsWith(".fb"));
+        if (boardFiles == null) {
+            throw new IllegalArgumentException("not a directory: " + directory);
+        }
+        Arrays.sort(boardFiles);
+        final List<String> files = new ArrayList<>();
+        for (File boardFile : boardFiles) {
+            files.add(boardFile.getPath());
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final long start = System.nanoTime();
+        final List<Result> results = runAll(files, (long) (seconds * 1000), step, eventDriven, pool);
+        final double wallSeconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        long totalTicks = 0;
+        int failed = 0;
+        for (Result result : results) {
+            System.out.println(result);
+            totalTicks += result.getTicks();
+            if (result.getError().isPresent()) failed++;
+        }
+        System.out.printf("%d boards (%d failed) on %d threads in %.3f s (%.0f ticks/sec overall)%n",
+                          results.size(), failed, threads, wallSeconds, totalTicks / wallSeconds);
+    }
+
+}
@@ -0,0 +1,319 @@
+package flingball;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A mutable binary encoding of WireMessages for one connection, which a board and the server
+ * agree on when the board connects.
+ *
+ * Handshake: the board sends the two bytes MAGIC, VERSION. A server that speaks this version
+ * answers with the same two bytes, and both sides switch to frames; otherwise the board falls back
+ * to TextCodec on a new connection. MAGIC cannot start a text connection, whose first byte is
+ * the first letter of a board name.
+ *
+ * Frames: a 4-byte big-endian length of the rest of the frame, a 1-byte frame type, then the fields
+ * of the message in the order listed in WireMessage.Type. A BATCH is one frame: a 4-byte count, then
+ * each of its messages as a 1-byte type followed by its fields. Names (boards, portals, balls) are sent as
+ * 4-byte IDs: the first time a side sends a name it sends a DEFINE frame first, with the new ID and
+ * the name in modified UTF-8, and uses the ID from then on. Sides are one byte, the index of the side
+ * in WireMessage.SIDES, and numbers are 8-byte IEEE 754 doubles.
+ *
+ * Each direction of a connection has its own IDs, so each end of a connection keeps one codec that
+ * encodes what it sends and decodes what it receives.
+ */
+class BinaryCodec {
+
+    static final byte MAGIC = (byte) 0xFB;
+    static final byte VERSION = 1;
+    static final int LENGTH_BYTES = 4;
+    // longer frames are not valid, which keeps a corrupted length from allocating a huge buffer
+    static final int MAX_FRAME_BYTES = 1 << 20;
+
+    private static final byte DEFINE = 0;
+    private static final WireMessage.Type[] TYPES = WireMessage.Type.values();
+
+    private final Map<String, Integer> sentIds = new HashMap<>();
+    private final List<String> receivedNames = new ArrayList<>();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream frames = new DataOutputStream(bytes);
+    private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+    private final DataOutputStream body = new DataOutputStream(bodyBytes);
+
+    /*
+     * Abstraction function:
+     *     AF(sentIds, receivedNames, bytes, frames, bodyBytes, body):
+     *         the binary encoding of one end of a connection, which has sent the name n with the ID
+     *         sentIds.get(n), and has received the name receivedNames.get(i) with the ID i.
+     *         bytes, frames, bodyBytes and body are scratch space for encode().
+     *
+     * Rep Invariant:
+     *   - the IDs in sentIds are 0, 1, ..., sentIds.size()-1
+     *   - bytes and bodyBytes are empty between calls to encode()
+     *
+     * Safety from rep exposure:
+     *   - all fields are private, and encode() returns a new array
+     *
+     * Thread Safety Argument:
+     *   - encode() is synchronized, so IDs are assigned and defined in the order frames are built.
+     *     Callers must also send the frames in the order encode() returned them, since a message may
+     *     use an ID defined by an earlier frame.
+     *   - decode() and read() must only be called by the one thread that receives from the connection
+     */
+
+    // checkRep
+    private void checkRep() {
+        assert bytes.size() == 0 && bodyBytes.size() == 0;
+    }
+
+    /**
+     * @param message message to send
+     * @return the frames that send the message: DEFINE frames for names this end has not sent before,
+     *         followed by the message's own frame
+     */
+    synchronized byte[] encode(final WireMessage message) {
+        try {
+            writeFields(message);
+            writeFrame((byte) (message.getType().ordinal() + 1));
+            final byte[] result = bytes.toByteArray();
+            bytes.reset();
+            checkRep();
+            return result;
+        } catch (IOException e) {
+            throw new AssertionError("writing to memory cannot fail", e);
+        }
+    }
+
+    /*
+     * Writes the fields of a message to the body, and DEFINE frames for its new names to the frames.
+     */
+    private void writeFields(final WireMessage message) throws IOException {
+        final WireMessage.Type type = message.getType();
+        switch (type) {
+        case REGISTER:
+            writeName(message.getBoard());
+            body.writeInt(message.getPortals().size());
+            for (String portal : message.getPortals()) writeName(portal);
+            break;
+        case BALL_THROUGH_WALL:
+            writeName(message.getBoard());
+            writeSide(message.getSide());
+            writeName(message.getBall());
+            writePosition(message);
+            writeVelocity(message);
+            break;
+        case PORTAL_EXITING:
+            writeName(message.getBoard());
+            writeName(message.getPortal());
+            writeName(message.getBall());
+            writeVelocity(message);
+            break;
+        case ADD_WALL_REQUEST:
+        case REMOVE_WALL:
+            writeName(message.getBoard());
+            writeSide(message.getSide());
+            break;
+        case BALL_ENTERING:
+            writeName(message.getBall());
+            writePosition(message);
+            writeVelocity(message);
+            break;
+        case ENTERING_PORTAL:
+            writeName(message.getPortal());
+            writeName(message.getBall());
+            writeVelocity(message);
+            break;
+        case ADD_WALL:
+            writeSide(message.getSide());
+            break;
+        case REMOVE_BALL:
+            writeName(message.getBall());
+            break;
+        case ERROR:
+            break;
+        case BATCH:
+            // the messages go in one frame, each one its type followed by its fields
+            body.writeInt(message.getMessages().size());
+            for (WireMessage each : message.getMessages()) {
+                body.writeByte(each.getType().ordinal() + 1);
+                writeFields(each);
+            }
+            break;
+        default:
+            throw new AssertionError("unknown message type " + type);
+        }
+    }
+
+    /**
+     * Decodes one frame.
+     * @param frame the frame after its length: its type and fields, from frame.position() to frame.limit()
+     * @return the message the frame sends, or empty if it is a DEFINE frame, which only teaches this codec a name
+     * @throws IOException if the frame is malformed
+     */
+    Optional<WireMessage> decode(final ByteBuffer frame) throws IOException {
+        try {
+            final int type = frame.get();
+            if (type == DEFINE) {
+                final int id = frame.getInt();
+                if (id != receivedNames.size()) throw new IOException("IDs out of order: " + id);
+                final int length = frame.getShort() & 0xFFFF;
+                if (length > frame.remaining()) throw new IOException("name longer than its frame");
+                final byte[] name = new byte[length];
+                frame.get(name);
+                // names are ASCII, where modified UTF-8 and UTF-8 agree
+                final String decoded = new String(name, StandardCharsets.UTF_8);
+                if (!WireMessage.isName(decoded)) throw new IOException("malformed name " + decoded);
+                receivedNames.add(decoded);
+                return Optional.empty();
+            }
+            return Optional.of(readFields(type, frame));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("frame shorter than its fields", e);
+        }
+    }
+
+    /*
+     * Reads the fields of a message of the specified frame type.
+     */
+    private WireMessage readFields(final int type, final ByteBuffer frame) throws IOException {
+        if (type < 1 || type > TYPES.length) throw new IOException("unknown frame type " + type);
+        switch (TYPES[type - 1]) {
+        case REGISTER: {
+            final String board = readName(frame);
+            final List<String> portals = new ArrayList<>();
+            for (int i = readCount(frame); i > 0; i--) portals.add(readName(frame));
+            return WireMessage.register(board, portals);
+        }
+        case BALL_THROUGH_WALL:
+            return WireMessage.ballThroughWall(readName(frame), readSide(frame), readName(frame),
+                                               frame.getDouble(), frame.getDouble(),
+                                               frame.getDouble(), frame.getDouble());
+        case PORTAL_EXITING:
+            return WireMessage.portalExiting(readName(frame), readName(frame), readName(frame),
+                                             frame.getDouble(), frame.getDouble());
+        case ADD_WALL_REQUEST:
+            return WireMessage.addWallRequest(readName(frame), readSide(frame));
+        case BALL_ENTERING:
+            return WireMessage.ballEntering(readName(frame), frame.getDouble(), frame.getDouble(),
+                                            frame.getDouble(), frame.getDouble());
+        case ENTERING_PORTAL:
+            return WireMessage.enteringPortal(readName(frame), readName(frame),
+                                              frame.getDouble(), frame.getDouble());
+        case REMOVE_WALL:
+            return WireMessage.removeWall(readName(frame), readSide(frame));
+        case ADD_WALL:
+            return WireMessage.addWall(readSide(frame));
+        case REMOVE_BALL:
+            return WireMessage.removeBall(readName(frame));
+        case ERROR:
+            return WireMessage.error();
+        case BATCH: {
+            final List<WireMessage> messages = new ArrayList<>();
+            for (int i = readCount(frame); i > 0; i--) {
+                final int each = frame.get();
+                if (each == WireMessage.Type.REGISTER.ordinal() + 1 || each == WireMessage.Type.BATCH.ordinal() + 1) {
+                    throw new IOException("frame type " + each + " inside a batch");
+                }
+                messages.add(readFields(each, frame));
+            }
+            if (messages.isEmpty()) throw new IOException("empty batch");
+            return WireMessage.batch(messages);
+        }
+        default:
+            throw new AssertionError("unknown message type " + TYPES[type - 1]);
+        }
+    }
+
+    /*
+     * Reads a count of items that follow it, each at least one byte long.
+     */
+    private static int readCount(final ByteBuffer frame) throws IOException {
+        final int count = frame.getInt();
+        if (count < 0 || count > frame.remaining()) throw new IOException("bad count " + count);
+        return count;
+    }
+
+    /**
+     * Reads frames from a stream until one sends a message.
+     * @param in stream of frames
+     * @return the next message sent on the stream
+     * @throws IOException if the stream fails, ends, or has a malformed frame
+     */
+    WireMessage read(final DataInputStream in) throws IOException {
+        while (true) {
+            final int length = in.readInt(); // EOFException at the end of the stream
+            if (length <= 0 || length > MAX_FRAME_BYTES) throw new IOException("bad frame length " + length);
+            final byte[] frame = new byte[length];
+            in.readFully(frame);
+            final Optional<WireMessage> message = decode(ByteBuffer.wrap(frame));
+            if (message.isPresent()) return message.get();
+        }
+    }
+
+    /*
+     * Writes the ID of a name to the body, defining it first if it has not been sent before.
+     */
+    private void writeName(final String name) throws IOException {
+        Integer id = sentIds.get(name);
+        if (id == null) {
+            id = sentIds.size();
+            sentIds.put(name, id);
+            // the definition goes out as a frame of its own, ahead of the frame being built
+            final ByteArrayOutputStream define = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(define);
+            out.writeByte(DEFINE);
+            out.writeInt(id);
+            out.writeUTF(name);
+            frames.writeInt(define.size());
+            define.writeTo(frames);
+        }
+        body.writeInt(id);
+    }
+
+    private void writeSide(final String side) throws IOException {
+        body.writeByte(WireMessage.SIDES.indexOf(side));
+    }
+
+    private void writePosition(final WireMessage message) throws IOException {
+        body.writeDouble(message.getX());
+        body.writeDouble(message.getY());
+    }
+
+    private void writeVelocity(final WireMessage message) throws IOException {
+        body.writeDouble(message.getXVelocity());
+        body.writeDouble(message.getYVelocity());
+    }
+
+    /*
+     * Appends the frame built in the body, with the specified type, after any DEFINE frames.
+     */
+    private void writeFrame(final byte type) throws IOException {
+        frames.writeInt(1 + bodyBytes.size());
+        frames.writeByte(type);
+        bodyBytes.writeTo(frames);
+        bodyBytes.reset();
+    }
+
+    private String readName(final ByteBuffer frame) throws IOException {
+        final int id = frame.getInt();
+        if (id < 0 || id >= receivedNames.size()) throw new IOException("undefined ID " + id);
+        return receivedNames.get(id);
+    }
+
+    private static String readSide(final ByteBuffer frame) throws IOException {
+        final int side = frame.get();
+        if (side < 0 || side >= WireMessage.SIDES.size()) throw new IOException("unknown side " + side);
+        return WireMessage.SIDES.get(side);
+    }
+
+}
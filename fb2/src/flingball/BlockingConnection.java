@@ -0,0 +1,229 @@
+package flingball;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A mutable blocking connection between FlingballServer and one board, served by a thread of its own.
+ *
+ * The thread reads the first byte the board sends to choose the encoding, as SelectorConnection does,
+ * registers the board with the server, and then handles the board's requests one at a time until the board
+ * disconnects. Messages sent to the board from any thread go through the connection's one output stream,
+ * under a lock, so they never interleave.
+ */
+class BlockingConnection implements ServerConnection, Runnable {
+
+    private final FlingballServer server;
+    private final Socket socket;
+    private final BufferedInputStream in;
+    private final OutputStream out;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Optional<BinaryCodec> binary = Optional.empty();
+
+    /*
+     * Abstraction function:
+     *     AF(server, socket, in, out, writeLock, binary):
+     *         the connection of ``server`` to the board at the other end of ``socket``, which reads the
+     *         board's messages from ``in`` and writes messages to the board through ``out`` while holding
+     *         ``writeLock``; the board speaks binary frames encoded by binary.get() if binary.isPresent(),
+     *         and text otherwise
+     *
+     * Rep Invariant:
+     *   - in and out wrap the streams of socket
+     *
+     * Safety from rep exposure:
+     *   - all fields are private and never returned
+     *   - server is shared with the server that owns this connection on purpose
+     *
+     * Thread Safety Argument:
+     *   - ``in`` is confined to the connection's own thread, the only caller of run()
+     *   - ``out`` is only used while holding ``writeLock``, so each message is written and flushed whole,
+     *     and binary frames are encoded under the same lock, in the order they are written.
+     *     The lock is a ReentrantLock rather than a synchronized block so that a virtual thread
+     *     blocked on a slow socket does not pin its carrier thread.
+     *   - ``binary`` is volatile, and only set by the connection's thread before the board is registered,
+     *     so before any other thread can find the connection to send to it
+     *   - socket is thread-safe to close from any thread
+     */
+
+    /**
+     * Makes a connection for a socket the server has just accepted.
+     * @param server server the board is connected to
+     * @param socket socket connected to the board
+     * @throws IOException if the socket's streams cannot be opened
+     */
+    BlockingConnection(final FlingballServer server, final Socket socket) throws IOException {
+        this.server = server;
+        this.socket = socket;
+        this.in = new BufferedInputStream(new CountingInputStream(socket.getInputStream(), server.metrics()));
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert server != null && socket != null && in != null && out != null;
+    }
+
+    /**
+     * Serves the board until it disconnects, then unregisters it and closes the connection.
+     */
+    @Override
+    public void run() {
+        try {
+            in.mark(1);
+            if (in.read() == (BinaryCodec.MAGIC & 0xFF)) {
+                serveBinary();
+            } else {
+                in.reset();
+                serveText();
+            }
+        } catch (IOException e) {
+            // the board disconnected without closing the connection, or sent a malformed frame
+        } finally {
+            close();
+        }
+    }
+
+    /*
+     * Serves a board that opened with the binary handshake.
+     */
+    private void serveBinary() throws IOException {
+        if (in.read() != BinaryCodec.VERSION) {
+            // the board falls back to text on a new connection
+            write(new byte[] {BinaryCodec.MAGIC, 0});
+            return;
+        }
+        final BinaryCodec codec = new BinaryCodec();
+        binary = Optional.of(codec);
+        write(new byte[] {BinaryCodec.MAGIC, BinaryCodec.VERSION});
+        final DataInputStream frames = new DataInputStream(in);
+        final WireMessage registration = codec.read(frames);
+        if (registration.getType() != WireMessage.Type.REGISTER) return;
+        server.register(registration, this);
+        try {
+            while (true) {
+                final WireMessage request = codec.read(frames); // EOFException when the board disconnects
+                server.handleRequest(this, request, System.nanoTime());
+            }
+        } finally {
+            server.unregister(registration.getBoard(), this);
+        }
+    }
+
+    /*
+     * Serves a board that sends lines of text.
+     */
+    private void serveText() throws IOException {
+        final BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        final String name = lines.readLine();
+        final String portalNames = lines.readLine();
+        if (name == null || portalNames == null) return;
+        final WireMessage registration;
+        try {
+            registration = TextCodec.decodeRegister(name, portalNames);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        server.register(registration, this);
+        try {
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                final long receivedNanos = System.nanoTime();
+                final WireMessage request;
+                try {
+                    request = TextCodec.decode(line);
+                } catch (IllegalArgumentException e) {
+                    // complain about ill-formatted request
+                    Log.warn("malformedRequest", "board", name, "line", line);
+                    send(WireMessage.error());
+                    continue;
+                }
+                server.handleRequest(this, request, receivedNanos);
+            }
+        } finally {
+            server.unregister(name, this);
+        }
+    }
+
+    @Override
+    public void send(final WireMessage message) {
+        writeLock.lock();
+        try {
+            server.metrics().sent(message);
+            final Optional<BinaryCodec> codec = binary;
+            write(codec.isPresent() ? codec.get().encode(message)
+                                    : (TextCodec.encode(message) + "\n").getBytes(StandardCharsets.UTF_8));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void forward(final WireMessage message, final long receivedNanos) {
+        send(message);
+        server.metrics().forwarded(receivedNanos);
+    }
+
+    /*
+     * Writes and flushes bytes to the board, closing the connection if that fails.
+     */
+    private void write(final byte[] bytes) {
+        writeLock.lock();
+        try {
+            out.write(bytes);
+            out.flush();
+            server.metrics().bytesOut(bytes.length);
+        } catch (IOException e) {
+            close(); // the reading thread sees the closed socket and unregisters the board
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // the connection is gone either way
+        }
+    }
+
+    /*
+     * A stream that counts the bytes read from the board in the server's metrics.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final ServerMetrics metrics;
+
+        private CountingInputStream(final InputStream in, final ServerMetrics metrics) {
+            super(in);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) metrics.bytesIn(1);
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) metrics.bytesIn(read);
+            return read;
+        }
+    }
+
+}
@@ -7,7 +7,6 @@ import java.awt.event.KeyEvent;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Formatter;
 import java.util.HashMap;
@@ -16,6 +15,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 import physics.LineSegment;
 import physics.Physics;
@@ -91,30 +92,67 @@ public class Board {
     
     public static final double DEFAULT_GRAVITY = 25.0;
     public static final double DEFAULT_FRICTION = 0.025;
+    public static final long DEFAULT_TIMESTEP = 1; // milliseconds
     private static final double SIZE = 20;
+    private static final long NANOS_PER_MILLI = 1000000;
+    // collision times are truncated to whole milliseconds and resolved when at most 1,
+    // so a collision is resolved when it is less than 2 ms away
+    private static final double COLLISION_WINDOW = Gadget.COLLISION_WINDOW; // seconds
+    // a ball's clearance from the static geometry is measured out to this distance,
+    // and measured again once the ball has moved CLEARANCE_REFRESH if it was too small to use
+    private static final double CLEARANCE_RANGE = 1; // L
+    private static final double CLEARANCE_REFRESH = 0.1; // L
+    // allowance for rounding in the collision times, far above their error
+    private static final double CLEARANCE_MARGIN = 1e-6; // L
     
     private final String name;
     private final Map<String, Wall> walls;
     private final Map<String, Gadget> gadgets = new HashMap<>();
+    private final GadgetGrid gadgetGrid = new GadgetGrid();
+    private final List<Gadget> candidates = new ArrayList<>();
+    private final List<Gadget> nearby = new ArrayList<>();
+    private final BallSweep ballSweep = new BallSweep();
     private final Set<Flipper> flippers = new HashSet<>();
     private final Map<String, Portal> portals = new HashMap<>();
-    private final Map<String, Ball> balls = new HashMap<>();
+    private final BallStore balls = new BallStore();
     private final Map<String, List<Gadget>> keyPressGadgets = new HashMap<>();
     private final Map<String, List<Gadget>> keyReleaseGadgets = new HashMap<>();
     private final double gravity;
     private final double friction1;
     private final double friction2;
     private final double reflectionCoeff = 1.0; // default
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
     private Optional<BoardClient> client = Optional.empty();
+    private Optional<EventDrivenEngine> eventEngine = Optional.empty();
+    private Optional<ParallelCollisionDetector> collisionDetector = Optional.empty();
+    private Optional<List<Gadget>> fixedGadgets = Optional.empty();
+    private Optional<StaticGeometry> geometry = Optional.empty();
+    private volatile Optional<BoardSnapshot> snapshot = Optional.empty();
+    private boolean clearanceCaching = true;
+    private volatile long timestep = DEFAULT_TIMESTEP;
+    private volatile double interpolationAlpha = 0;
+    private volatile boolean running = false;
     
     /* 
      * Abstraction function:
      *     AF(name, walls, gadgets, balls, gravity, friction1, friction2, reflectionCoeff): 
      *         a Flingball board, whose name is ``name``, containing Flingball gadget(s) in the list ``gadgets``
-     *         and ball(s) in the list ``balls``; its four border walls are the line segments 
+     *         and ball(s) in the store ``balls``; its four border walls are the line segments 
      *         in the list ``walls`` and have reflection coefficient ``reflectionCoeff``.
      *         The board has global gravity ``gravity`` as well as friction values 
      *         mu equal to ``friction1`` and mu2 equal to ``friction2``.
+     *         If eventEngine.isPresent() is true, the board is stepped by eventEngine.get(), 
+     *         which resolves each collision at the moment it happens; otherwise each step 
+     *         resolves the collisions that are about to happen and then moves the balls.
+     *         If collisionDetector.isPresent() is true, the default engine first finds the balls
+     *         that might collide on several threads, and then resolves only those balls.
+     *         ``commands`` are the changes other threads have asked to make to the board, 
+     *         oldest first, which are made at the start of the next step.
+     *         ``snapshot`` is the latest picture of the board published for rendering, if any, and
+     *         ``fixedGadgets``, if present, caches the gadgets other than flippers for snapshots, and
+     *         ``geometry``, if present, is the walls and static gadgets compiled for collision tests.
+     *         If clearanceCaching is true, the default engine skips testing a ball against the walls and static
+     *         gadgets while the clearance cached for it in ``balls`` shows that it cannot reach any of them yet.
      *         
      * Rep Invariant:
      *   - walls has size 4 and contains the four line segments representing the four border walls:
@@ -126,15 +164,26 @@ public class Board {
      *   - friction1 >= 0
      *   - friction2 >= 0
      *   - reflectionCoeff = 1
+     *   - timestep > 0
+     *   - 0 <= interpolationAlpha < 1
+     *   - gadgetGrid indexes exactly the gadgets in ``gadgets``
+     *   - if geometry is present, it compiles exactly the walls and the static gadgets in ``gadgets``
      *     
      * Safety from rep exposure:
      *   - all fields except ``gadgets`` and ``balls`` are private, immutable, and final
      *   - ``gadgets`` and ``balls`` are private and final, and their references are never shared with clients
      *   
      * Thread Safety Argument
-     * 	 - Board is not currently threadsafe because other threads may remove a ball from the board
-     * 		while it is still iterating through the list of balls and checking each ball for collisions
-     * 		TODO figure out a way to fix this issue and make Board threadsafe
+     *   - the state of the board is confined to the thread that steps it, which is the thread
+     *     started by simulate() while a game is running
+     *   - other threads, such as the network listener and the Swing event thread, never change the
+     *     board directly; they pass their changes to submit(), and ``commands`` is a lock-free 
+     *     threadsafe queue that hands each change over to the stepping thread, 
+     *     which runs it at the start of its next step
+     *   - ``timestep``, ``interpolationAlpha`` and ``running`` are volatile, so they can be set 
+     *     and read from any thread
+     *   - render() only reads ``snapshot``, which is volatile and refers to an immutable BoardSnapshot,
+     *     so rendering never reads the state the stepping thread is changing
      *     
      */
     
@@ -177,26 +226,27 @@ public class Board {
     
     // checkRep
     private void checkRep() {
+        if (!RepChecks.enabled()) return;
         assert name != null;
         assert walls != null;
-        final Vect upperLeft = new Vect(0, 0);
-        final Vect upperRight = new Vect(SIZE, 0);
-        final Vect lowerLeft = new Vect(0, SIZE);
-        final Vect lowerRight = new Vect(SIZE, SIZE);
-        final Set<Wall> expectedWalls = new HashSet<>(Arrays.asList(new Wall(new LineSegment(upperLeft, upperRight), "Top"), 
-                                                                new Wall(new LineSegment(upperLeft, lowerLeft), "Left"), 
-                                                                new Wall(new LineSegment(lowerLeft, lowerRight), "Bottom"), 
-                                                                new Wall(new LineSegment(upperRight, lowerRight), "Right")));
-        //assert expectedWalls.equals(new HashSet<>(walls));
+        assert walls.size() == 4;
+        for (Map.Entry<String, Wall> wall : walls.entrySet()) {
+            assert wall.getKey().equals(wall.getValue().getOrientation());
+        }
         assert gadgets != null;
+        assert gadgetGrid.size() == gadgets.size();
         assert balls != null;
         assert gravity >= 0;
         assert friction1 >= 0;
         assert friction2 >= 0;
+        assert timestep > 0;
+        assert 0 <= interpolationAlpha && interpolationAlpha < 1;
     }
     
     /**
-     * Displays this board across the window.
+     * Displays this board across the window, as it was in the latest published snapshot.
+     * Only reads the snapshot, so it may be called from any thread, such as the event dispatch thread.
+     * If no snapshot has been published yet, only the background is drawn.
      * @param g graphics for the drawing buffer for the window. 
      *          Modifies this graphics by drawing the state of the board on it.
      */
@@ -207,79 +257,223 @@ public class Board {
         g2.setColor(Color.black);
         g2.fill(new Rectangle2D.Double(0, 0, Flingball.DRAWING_AREA_SIZE_IN_PIXELS, Flingball.DRAWING_AREA_SIZE_IN_PIXELS));
         
-        for (String wall: walls.keySet()) {
-            if (wall.equals("Top") && walls.get("Top").hasNeighboringBoard()) {
-                final int X_COORD_STRING = 9;
-                final int Y_COORD_STRING = 0;
-                g2.drawString(walls.get("Top").getNeighboringBoard(),X_COORD_STRING*Flingball.PIXELS_PER_L,
-                                                                     Y_COORD_STRING*Flingball.PIXELS_PER_L);
+        // draw the latest snapshot, with the balls where they will be a fraction alpha of the way through the next step
+        final Optional<BoardSnapshot> latest = snapshot;
+        if (latest.isPresent()) latest.get().render(g2, interpolationAlpha * timestep / 1000);
+    }
+    
+    /**
+     * Takes a snapshot of this board as it is now and publishes it for render() to draw.
+     * Must be called by the thread that steps this board.
+     * @return the snapshot published
+     */
+    public BoardSnapshot publishSnapshot() {
+        if (!fixedGadgets.isPresent()) {
+            final List<Gadget> fixed = new ArrayList<>();
+            for (Gadget gadget : gadgets.values()) {
+                if (!(gadget instanceof Flipper)) fixed.add(gadget);
             }
+            fixedGadgets = Optional.of(Collections.unmodifiableList(fixed));
         }
-        for (Gadget gadget : gadgets.values()) {
-            gadget.render(g2);
-        }
-        for (Ball ball : balls.values()) {
-            ball.render(g2);
-        }
+        final Wall top = walls.get("Top");
+        final Optional<String> topNeighbor = top.hasNeighboringBoard() ? Optional.of(top.getNeighboringBoard()) 
+                                                                       : Optional.empty();
+        final BoardSnapshot published = new BoardSnapshot(balls, flippers, fixedGadgets.get(), topNeighbor);
+        snapshot = Optional.of(published);
+        return published;
+    }
+    
+    /** @return the latest snapshot published for rendering, if one has been published */
+    public Optional<BoardSnapshot> getSnapshot() {
+        return snapshot;
     }
     
     /**
      * Starts a Flingball game on this board.
+     * The game advances in fixed steps of getTimestep() milliseconds of simulated time, 
+     * paced against real time, and the simulating thread sleeps between steps.
+     * If the board has a client, the client also starts receiving messages from the server.
      */
     public void simulate() {
-    	Thread listen = new Thread(new Runnable() {
-    		public void run() {
-    			System.out.println("listening");
-    			while (true) {
-    				if (client.isPresent()) {
-    					try {
-							client.get().getReply();
-						} catch (IOException e) {
-							// Auto-generated catch block
-							e.printStackTrace();
-						}
-    				}
-    			}
-    		}
-    	});
-    	listen.start();
+    	// only a board connected to a server needs a thread to receive its messages
+    	if (client.isPresent()) client.get().startListening();
     	
+    	running = true;
+    	publishSnapshot();
         new Thread(() -> {
-            long currentTime = System.currentTimeMillis();
-            while (true) {
-            	//check if any walls have been removed or added to board and if any games are adjacent
-            	                
-                // resolve all collisions
-                for (final Ball ball : new ArrayList<Ball>(balls.values())) {
-                    for (final Gadget gadget : gadgets.values()) {
-                        gadget.resolveCollision(ball);
-                    }
-                    resolveCollision(ball);
+            final long step = timestep;
+            final SimulationClock clock = new SimulationClock(step * NANOS_PER_MILLI, System.nanoTime());
+            while (running) {
+                final int steps = clock.advance(System.nanoTime());
+                for (int i = 0; i < steps; i++) {
+                    step(step);
                 }
-                // update the position of the balls to account for time passing
-                final long newTime = System.currentTimeMillis();
-                final long elapsedTime = newTime - currentTime;
-                currentTime = newTime;
-                for (Flipper flipper: flippers) flipper.move(elapsedTime, this);
-                for (final Ball ball : new ArrayList<Ball>(balls.values())) ball.move(elapsedTime, this); 
-                resolveBallCollisions();
-                
+                if (steps > 0) publishSnapshot();
+                interpolationAlpha = clock.getAlpha();
+                // park until the next step is due instead of spinning
+                LockSupport.parkNanos(clock.nanosUntilNextStep());
             }
         }).start();    
     }
     
-    public void resolveBallCollisions() {
-        Map<Ball, Ball> collisions = new HashMap<>();
-        for (Ball ball1: balls.values()) {
-            for (Ball ball2: balls.values()) {
-                if (ball1.equals(ball2)) continue;
-                final long collisionTime = (long) (Physics.timeUntilBallBallCollision(
-                        ball1.getCircle(), ball1.getVelocity(), ball2.getCircle(), ball2.getVelocity())*1000);
-                if (collisionTime <= 1 && !collisions.keySet().contains(ball2) && !collisions.keySet().contains(ball1)) {
-                        collisions.put(ball1,  ball2);
-                }
+    /**
+     * Stops a Flingball game started by simulate() on this board.
+     * The board can be simulated again afterwards.
+     */
+    public void stopSimulation() {
+        running = false;
+    }
+    
+    /**
+     * Advances the Flingball game on this board by one step,
+     * resolving all collisions and then moving the flippers and balls.
+     * The outcome depends only on the state of the board and the length of the step.
+     * If the board has a client, the requests it made to the server during the step are sent together at the end.
+     * @param elapsedTime length of the step in milliseconds, requires elapsedTime > 0
+     */
+    public void step(final long elapsedTime) {
+        RepChecks.step();
+        runCommands();
+        if (eventEngine.isPresent()) {
+            eventEngine.get().step(elapsedTime, balls.getBalls());
+            for (Flipper flipper: flippers) flipper.move(elapsedTime, this);
+        } else {
+            stepBalls(elapsedTime);
+        }
+        if (client.isPresent()) client.get().flush();
+    }
+    
+    /*
+     * Resolves all collisions and then moves the flippers and balls, without the event engine.
+     */
+    private void stepBalls(final long elapsedTime) {
+        // resolve all collisions, testing each ball only against the gadgets near it
+        if (collisionDetector.isPresent()) {
+            // find the balls that might collide in parallel, then resolve them one at a time in order
+            final ParallelCollisionDetector detector = collisionDetector.get();
+            detector.detect(balls, COLLISION_WINDOW);
+            for (int i = 0; i < balls.size(); i++) {
+                if (detector.isReported(i)) resolveCollisions(i);
+            }
+        } else {
+            for (int i = 0; i < balls.size(); i++) {
+                resolveCollisions(i);
+            }
+        }
+        // update the position of the balls to account for time passing
+        for (Flipper flipper: flippers) flipper.move(elapsedTime, this);
+        final double seconds = (double) elapsedTime / 1000;
+        balls.advance(seconds);
+        balls.applyForces(seconds, gravity, friction1, friction2);
+        resolveBallCollisions();
+    }
+    
+    /**
+     * Asks for a change to be made to this board by the thread that steps it, at the start of
+     * its next step. Changes are made in the order they are submitted. Safe to call from any thread.
+     * @param command change to make to this board
+     */
+    public void submit(final Runnable command) {
+        commands.add(command);
+    }
+    
+    /*
+     * Makes the changes submitted by other threads since the last step.
+     */
+    private void runCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+        }
+    }
+    
+    /*
+     * Resolves the collisions of the ball in a slot with the gadgets near it and with the outer walls.
+     * Tests against the walls and static gadgets are skipped while the ball is clear of them.
+     */
+    private void resolveCollisions(final int slot) {
+        final Ball ball = balls.getBall(slot);
+        final StaticGeometry compiled = compileGeometry();
+        boolean clear = isClear(slot, compiled);
+        // a clear ball can only collide with gadgets that move, and there may be none
+        if (clear && compiled.gadgetCount() == gadgets.size()) return;
+        gadgetGrid.getCandidates(ball, COLLISION_WINDOW, candidates);
+        for (final Gadget gadget : candidates) {
+            final int owner = compiled.owner(gadget);
+            if (owner < 0) {
+                gadget.resolveCollision(ball);
+                // the gadget may have moved the ball or changed its velocity
+                clear = clear && isClear(slot, compiled);
+            } else if (!clear) {
+                compiled.resolveCollision(owner, ball);
             }
         }
+        if (!clear) resolveCollision(ball);
+    }
+    
+    /*
+     * Tests whether the ball in a slot is too far from every wall and static gadget to collide with any of them
+     * within COLLISION_WINDOW at its current velocity, using the clearance cached for it. The clearance is
+     * measured where the ball is now if it is not known, or if it was too small and the ball has moved
+     * CLEARANCE_REFRESH since. Since the cache holds a distance rather than a collision time, it stays valid
+     * whatever happens to the ball's velocity, and the ball's position is checked against it every time.
+     * A ball leaving an absorber or portal is never clear, since those gadgets release it when they test it.
+     */
+    private boolean isClear(final int slot, final StaticGeometry compiled) {
+        if (!clearanceCaching || balls.exitingAbsorber.get(slot) || balls.exitingPortal.get(slot)) return false;
+        final double x = balls.x[slot];
+        final double y = balls.y[slot];
+        final double reach = Math.sqrt(balls.vx[slot]*balls.vx[slot] + balls.vy[slot]*balls.vy[slot])*COLLISION_WINDOW
+                             + CLEARANCE_MARGIN;
+        final double dx = x - balls.clearX[slot];
+        final double dy = y - balls.clearY[slot];
+        final double moved = Math.sqrt(dx*dx + dy*dy);
+        final double clearance = balls.clearance[slot];
+        if (moved + reach < clearance) return true;
+        if (clearance != BallStore.UNKNOWN_CLEARANCE && moved < CLEARANCE_REFRESH) return false;
+        balls.clearX[slot] = x;
+        balls.clearY[slot] = y;
+        balls.clearance[slot] = measureClearance(x, y, balls.getBall(slot).getRadius(), compiled);
+        return reach < balls.clearance[slot];
+    }
+    
+    /*
+     * Measures the distance, up to CLEARANCE_RANGE, from the surface of a ball centered at (x, y) to the
+     * nearest wall or static gadget. A gadget that the grid does not find in the cells around the ball is
+     * at least CLEARANCE_RANGE from its center.
+     */
+    private double measureClearance(final double x, final double y, final double radius, final StaticGeometry compiled) {
+        double distance = Math.min(CLEARANCE_RANGE, compiled.distanceToWalls(x, y));
+        gadgetGrid.getCandidates(x - CLEARANCE_RANGE, y - CLEARANCE_RANGE, x + CLEARANCE_RANGE, y + CLEARANCE_RANGE,
+                                 nearby);
+        for (Gadget gadget : nearby) {
+            final int owner = compiled.owner(gadget);
+            if (owner >= 0) distance = Math.min(distance, compiled.distance(owner, x, y));
+        }
+        return Math.max(0, distance - radius);
+    }
+    
+    /**
+     * Compiles the outer walls and the gadgets that never move into flat arrays for collision tests,
+     * unless they have been compiled since the gadgets last changed. BoardParser calls it once the board
+     * is loaded; adding or removing a gadget afterwards discards the compiled geometry, and the next
+     * collision test compiles it again.
+     * @return the compiled geometry of this board
+     */
+    StaticGeometry compileGeometry() {
+        if (!geometry.isPresent()) {
+            geometry = Optional.of(new StaticGeometry(walls.values(), gadgets.values()));
+            balls.forgetClearances(); // measured against the old geometry
+        }
+        return geometry.get();
+    }
+    
+    /**
+     * Resolve collisions between pairs of balls that are colliding with each other,
+     * according to the rules of Flingball Physics. Each ball collides with at most one other ball per call.
+     */
+    public void resolveBallCollisions() {
+        final Map<Ball, Ball> collisions = ballSweep.findCollisions(balls, COLLISION_WINDOW);
         for (Ball ball1: collisions.keySet()) {
             Ball ball2 = collisions.get(ball1);
             Physics.VectPair vectPair = Physics.reflectBalls(ball1.getPosition(), 1., ball1.getVelocity(), ball2.getPosition(), 1., ball2.getVelocity());
@@ -297,20 +491,11 @@ public class Board {
      */
     public boolean resolveCollision(Ball ball) {
         /*
-         * Call timeUntilWallCollision() methods to calculate 
-         * the times at which the ball will collide with each of lines. 
-         * The minimum of all these times is the time of the next collision.
+         * Find the wall the ball will collide with next, if the collision
+         * is at most 1 ms away, using the compiled geometry of the walls.
          */
-        long mintimeLine = Long.MAX_VALUE;
-        Wall nextCollidingWall = null;
-        for (Wall wall : walls.values()) {
-            final long collisionTime = (long) (Physics.timeUntilWallCollision(wall.getLineSegment(), ball.getCircle(), ball.getVelocity())*1000);
-            if (collisionTime < mintimeLine) {
-                mintimeLine = collisionTime;
-                nextCollidingWall = wall;
-            }
-        }
-        if (mintimeLine <= 1) {
+        final Wall nextCollidingWall = compileGeometry().collidingWall(ball);
+        if (nextCollidingWall != null) {
         	//if the wall still exists on the board
         	if (!nextCollidingWall.isRemoved()) {
 	            // call reflectWall() to calculate the change in the ball's velocity
@@ -318,19 +503,34 @@ public class Board {
 	            ball.setVelocity(newVelocity); // updates the ball's velocity
 	            return true;
         	} else if (nextCollidingWall.isRemoved() && client.isPresent()) {
-        		System.out.println("colliding with a removed wall");
+        		Log.debug("ballLeaving", "ball", ball.getName(), "wall", nextCollidingWall.getOrientation());
         		client.get().sendRequest(ball, nextCollidingWall);
         	}
         }
         return false; // no collision
     }
     
+    /**
+     * Predicts when a ball will next collide with one of the outer walls of this board,
+     * if it keeps moving at its current velocity.
+     * @param ball ball of the Flingball game
+     * @return time in seconds until the ball collides with an outer wall,
+     *         or Double.POSITIVE_INFINITY if it never does
+     */
+    public double timeUntilWallCollision(final Ball ball) {
+        return compileGeometry().timeUntilWallCollision(ball);
+    }
+    
     /**
      * Adds a gadget to this board.
      * @param gadget gadget to add
      */
     public void addGadget(final Gadget gadget) {
-        gadgets.put(gadget.getName(), gadget);
+        final Gadget replaced = gadgets.put(gadget.getName(), gadget);
+        fixedGadgets = Optional.empty();
+        geometry = Optional.empty();
+        if (replaced != null) gadgetGrid.remove(replaced);
+        gadgetGrid.add(gadget);
         if (gadget instanceof Flipper) {
             Flipper flipper = (Flipper) gadget;
             flippers.add(flipper);
@@ -347,7 +547,7 @@ public class Board {
      * @param ball ball to add
      */
     public void addBall(final Ball ball) {
-        balls.put(ball.getName(), ball);
+        balls.add(ball);
         checkRep();
     }
     
@@ -377,8 +577,14 @@ public class Board {
         }
     }
     
+    /**
+     * Connects this board to a server through a client. If the board is already being simulated,
+     * the client starts receiving messages from the server straight away.
+     * @param client client connected to the server
+     */
     public void addClient(BoardClient client) {
     	    this.client = Optional.of(client);
+    	    if (running) client.startListening();
     }
     
     /**
@@ -386,7 +592,10 @@ public class Board {
      * @param gadget
      */
     public void removeGadget(final Gadget gadget) {
-        gadgets.remove(gadget.getName());
+        final Gadget removed = gadgets.remove(gadget.getName());
+        fixedGadgets = Optional.empty();
+        geometry = Optional.empty();
+        if (removed != null) gadgetGrid.remove(removed);
         checkRep();
     }
     
@@ -411,7 +620,8 @@ public class Board {
     }
     
     /**
-     * 
+     * Triggers the gadgets bound to pressing a key.
+     * Other threads than the one stepping this board must call it through submit().
      * @param key
      */
     public void keyPressTrigger(String key) {
@@ -423,7 +633,8 @@ public class Board {
     }
     
     /**
-     * 
+     * Triggers the gadgets bound to releasing a key.
+     * Other threads than the one stepping this board must call it through submit().
      * @param key
      */
     public void keyReleaseTrigger(String key) {
@@ -466,6 +677,80 @@ public class Board {
     	return walls.get(side);
     }
     
+    /** @return length in milliseconds of the fixed step used by simulate() */
+    public long getTimestep() {
+        return timestep;
+    }
+    
+    /**
+     * Sets the length of the fixed step used by simulate().
+     * Takes effect the next time simulate() is called.
+     * @param newTimestep length of the step in milliseconds, requires newTimestep > 0
+     */
+    public void setTimestep(final long newTimestep) {
+        timestep = newTimestep;
+        checkRep();
+    }
+    
+    /**
+     * @return fraction of a step, in [0, 1), of real time that has passed since the 
+     *         simulation last stepped; renderers may use it to draw in-between states
+     */
+    public double getInterpolationAlpha() {
+        return interpolationAlpha;
+    }
+    
+    /**
+     * Chooses how step() resolves collisions. The event-driven engine resolves each collision
+     * at the moment it happens, so larger steps can be used without balls passing through
+     * gadgets; the default engine only resolves collisions that are about to happen.
+     * @param eventDriven true to use the event-driven engine, false to use the default engine
+     */
+    public void setEventDriven(final boolean eventDriven) {
+        eventEngine = eventDriven ? Optional.of(new EventDrivenEngine(this, gadgetGrid)) : Optional.empty();
+    }
+    
+    /** @return true if step() uses the event-driven engine */
+    public boolean isEventDriven() {
+        return eventEngine.isPresent();
+    }
+    
+    /**
+     * Chooses how many threads the default engine uses to find the balls that might collide
+     * in each step. The collisions found are still resolved one at a time in the same order,
+     * so the outcome of a step does not depend on the number of threads.
+     * Has no effect on the event-driven engine.
+     * @param threads number of threads, requires threads > 0; 1 finds the collisions on the
+     *                thread that steps the board
+     */
+    public void setCollisionThreads(final int threads) {
+        collisionDetector.ifPresent(ParallelCollisionDetector::shutdown); // its workers would idle until they time out
+        collisionDetector = threads > 1 ? Optional.of(new ParallelCollisionDetector(this, gadgetGrid, threads))
+                                        : Optional.empty();
+    }
+    
+    /** @return number of threads the default engine uses to find the balls that might collide */
+    public int getCollisionThreads() {
+        return collisionDetector.isPresent() ? collisionDetector.get().getThreads() : 1;
+    }
+    
+    /**
+     * Chooses whether the default engine caches how far each ball is from the walls and the gadgets that
+     * never move, and skips testing a ball against them while it is too far away to reach any of them
+     * during the step. Skipping a test never changes the outcome of a step. Caching is on by default.
+     * Has no effect on the event-driven engine.
+     * @param caching true to cache clearances and skip the tests they rule out, false to test every ball every step
+     */
+    public void setClearanceCaching(final boolean caching) {
+        clearanceCaching = caching;
+        balls.forgetClearances();
+    }
+    
+    /** @return true if the default engine skips the tests that cached clearances rule out */
+    public boolean isClearanceCaching() {
+        return clearanceCaching;
+    }
+    
     /** @return gravity of the Flingball board */
     public double getGravity() {
         checkRep();
@@ -518,15 +803,32 @@ public class Board {
     	return portals.get(name);
     }
     
+    /**
+     * 
+     * @param ballName the name of the ball we want
+     * @return the ball with that name, or null if there is no such ball on this board
+     */
+    public Ball getBallByName(String ballName) {
+        return balls.get(ballName);
+    }
+    
     /** @return set of the name of balls that are currently on this board */
     public Set<String> getBallsNames(){
         checkRep();
-        return new HashSet<>(balls.keySet());
+        return new HashSet<>(balls.getNames());
     }
 
     /**
      * 
-     * @return the client that connects this board to the server
+     * @return true if this board is connected to a server, false otherwise
+     */
+    public boolean hasClient() {
+        return client.isPresent();
+    }
+    
+    /**
+     * 
+     * @return the client that connects this board to the server, requires hasClient()
      */
     public BoardClient getClient() {
     	    return client.get();
@@ -553,7 +855,7 @@ public class Board {
                 if (!this.gadgets.get(gadgetName).sameValue(other.gadgets.get(gadgetName)))
                     return false;
             }
-            for (String ballName : balls.keySet()) {
+            for (String ballName : balls.getNames()) {
                 if (!this.balls.get(ballName).sameValue(other.balls.get(ballName)))
                     return false;
             }
@@ -576,8 +878,8 @@ public class Board {
             formatter.format("  - %s\n", gadget.getName());
         }
         formatter.format("With %d balls\n", balls.size());
-        for (Ball ball : balls.values()) {
-            formatter.format("  - %s\n", ball.getName());
+        for (int i = 0; i < balls.size(); i++) {
+            formatter.format("  - %s\n", balls.getBall(i).getName());
         }
         string.deleteCharAt(string.length() - 1); // delete last new line character
         return string.toString();
@@ -1,13 +1,20 @@
 package flingball;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 
 import physics.Vect;
 
@@ -32,28 +39,46 @@ import physics.Vect;
  *   'removeWall ' 'Add='BOARDNAME ' toWall='('Right'|'Left'|'Top'|'Bottom');
  *   'addWall ' 'side='('Right'|'Left'|'Top'|'Bottom');
  *   "success. remove ball name="BALLNAME;
+ *   
+ * These are the text forms of the messages (see TextCodec). A client made with the binary option instead
+ * sends and receives the same messages as binary frames (see BinaryCodec), if the server accepts.
+ * 
+ * Requests are not sent straight away: the requests made during one step of the board are sent together
+ * when the step ends (see flush()), as one BATCH frame or one write of several lines, so the client writes to
+ * the server once per step however many balls leave the board.
  */
 public class BoardClient {
 	
+	private static final int HANDSHAKE_TIMEOUT_MILLIS = 2000;
+	
 	//fields
 	private Socket socket;
-	private BufferedReader in;
-	private PrintWriter out;
+	private BufferedInputStream in;
+	private BufferedReader lines;
+	private DataInputStream frames;
+	private OutputStream out;
+	private Optional<BinaryCodec> binary;
 	private Board board;
+	private Optional<Thread> listener = Optional.empty();
+	private final List<WireMessage> outgoing = new ArrayList<>();
 	
 	/*
 	 * Abstraction Function:
-	 * 		AF(socket, in, out, board): Connects to a board and passes messages of the board state to the server so that the board
+	 * 		AF(socket, in, lines, frames, out, binary, board): Connects to a board and passes messages of the board state to the server so that the board
 	 * 				can interact with other boards connected to the server.
 	 * 			socket: method of connection to the server (how we connect)
-	 * 			in: reads messages from FlingballServer
+	 * 			in: reads messages from FlingballServer, through ``frames`` if binary.isPresent() and through ``lines`` otherwise
 	 * 			out: sends messages to FlingballServer
+	 * 			binary: the binary encoding of the connection, if the server accepted it
 	 * 			board: the board BoardClient reads from and sends messages to FlingballServer based on the state of the board.
+	 * 			listener: the thread that receives the server's messages, once startListening() has been called
+	 * 			outgoing: the requests made since the last flush(), in order
 	 * 
 	 * Rep Invariant:
 	 * 		socket != null
-	 * 		in != null
+	 * 		in != null, and lines and frames wrap in
 	 * 		out != null
+	 * 		binary != null
 	 * 		board != null
 	 * 
 	 * Safety from RepExposure
@@ -61,48 +86,79 @@ public class BoardClient {
 	 * 		socket, in, out are not mutated from outside the class
 	 * 
 	 * Thread Safety Argument
-	 * 		The board class is not threadsafe so this class is not completely threadsafe
+	 * 		``listener`` is only read and written while holding the client's lock
+	 * 		getReply() runs on the listener thread and never changes the board directly:
+	 * 			every change is passed to board.submit(), which runs it on the thread that steps the board
+	 * 		sendRequest() and flush() run on the thread that steps the board; ``outgoing`` is only used, and every
+	 * 			message is only encoded and written, while holding the lock on ``out``, so messages never interleave
 	 * 		Other than the board field, all other fields cannot be accessed outside this
-	 * 			class and because multiple threads don't run in this class (confinement)
-	 * 			most of BoardClient is threadsafe.
+	 * 			class (confinement)
 	 */
 	
     /**
      * Make a SquareClient and connect it to a server running on
-     * hostname at the specified port.
+     * hostname at the specified port, speaking text.
      * @throws IOException if can't connect
      */
     public BoardClient(String hostname, int port, Board board) throws IOException {
+    	this(hostname, port, board, false);
+    }
+    
+    /**
+     * Make a SquareClient and connect it to a server running on
+     * hostname at the specified port.
+     * @param binary true to ask the server for the binary encoding, which is smaller and faster to parse;
+     *               if the server does not accept it within a short time, the client reconnects and speaks text
+     * @throws IOException if can't connect
+     */
+    public BoardClient(String hostname, int port, Board board, boolean binary) throws IOException {
         socket = new Socket(hostname, port); //hostname examples: localhost, google.com, etc
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
-        
-        //write board to input stream
-        out.println(board.getName());
-        out.flush();
-        
-        //write portals to input stream
-        List<String> portals = board.getPortalNames();
-        if (!portals.isEmpty()) {
-	    	String sendString = "";
-	    	for (String portal : portals) {
-	    		sendString += portal + " ";
-	    	}
-	    	out.println("sendingPortals " + sendString.substring(0, sendString.length()-1));
-	    	out.flush();
-        } else {
-        	out.println("noPortals");
-        	out.flush();
+        this.binary = Optional.empty();
+        if (binary) {
+        	if (handshake(socket)) {
+        		this.binary = Optional.of(new BinaryCodec());
+        	} else {
+        		socket.close();
+        		socket = new Socket(hostname, port);
+        	}
         }
+        in = new BufferedInputStream(socket.getInputStream());
+        lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        frames = new DataInputStream(in);
+        out = new BufferedOutputStream(socket.getOutputStream());
+        
+        //write board and its portals to the server
+        send(WireMessage.register(board.getName(), board.getPortalNames()));
         
         this.board = board;
         checkRep();
     }
     
+    /*
+     * Asks the server for the binary encoding on a new connection.
+     * Returns true if the server accepted it before the timeout.
+     */
+    private static boolean handshake(Socket socket) throws IOException {
+    	OutputStream rawOut = socket.getOutputStream();
+    	rawOut.write(new byte[] {BinaryCodec.MAGIC, BinaryCodec.VERSION});
+    	rawOut.flush();
+    	socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+    	try {
+    		InputStream rawIn = socket.getInputStream();
+    		// read byte by byte from the socket itself, so nothing after the answer is buffered and lost
+    		return rawIn.read() == (BinaryCodec.MAGIC & 0xFF) && rawIn.read() == BinaryCodec.VERSION;
+    	} catch (SocketTimeoutException e) {
+    		return false;
+    	} finally {
+    		socket.setSoTimeout(0);
+    	}
+    }
+    
     private void checkRep() {
     	assert socket != null;
-    	assert in != null;
+    	assert in != null && lines != null && frames != null;
     	assert out != null;
+    	assert binary != null;
     	assert board != null;
     }
     
@@ -115,7 +171,7 @@ public class BoardClient {
     }
     
     /**
-     * Send a request to the server to add a ball.
+     * Queue a request to the server to add a ball, to be sent by the next flush().
      * Normally occurs when ball is moving to a different board because there are no walls 
      * Requires this is "open".
      * @param ball that is moving to a different board
@@ -123,37 +179,80 @@ public class BoardClient {
      * @throws IOException if network or server failure
      */
     public void sendRequest(Ball b, Wall w) {
-    	System.err.println("Sending request to server; ball moving");
-    	
-    	out.println("ballThroughWall newBoardName="+w.getNeighboringBoard() + " wallOrientation=" + w.getOrientation() + 
-    			" name=" + b.getName() + " x=" + b.getPosition().x() + " y=" +b.getPosition().y() + 
-    			" xVelocity=" + b.getVelocity().x() + " yVelocity=" + b.getVelocity().y());
-    	
-    	out.flush();
+    	Log.debug("sendRequest", "ball", b.getName(), "board", w.getNeighboringBoard());
     	
+    	queue(WireMessage.ballThroughWall(w.getNeighboringBoard(), w.getOrientation(), b.getName(),
+    			b.getPosition().x(), b.getPosition().y(), b.getVelocity().x(), b.getVelocity().y()));
     }
     
     /**
-     * Send a request to the server to move a ball between portals on different boards.
+     * Queue a request to the server to move a ball between portals on different boards,
+     * to be sent by the next flush().
      * Requires this is "open".
      * @param b ball that is moving to different portal
      * @param newPortal portal that the ball is moving to
      * @throws IOException if network or server failure
      */
     public void sendRequest(Ball b, String newPortal, String newBoard) {
-    	System.err.println("Sending request to server");
-    	
-    	out.println("portalExiting newBoardName=" + newBoard + " newPortalName=" + newPortal + " ball=" + b.getName() + 
-    			" xVelocity=" + b.getVelocity().x() + " yVelocity=" + b.getVelocity().y());
+    	Log.debug("sendRequest", "ball", b.getName(), "portal", newPortal);
     	
-    	out.flush();
+    	queue(WireMessage.portalExiting(newBoard, newPortal, b.getName(), b.getVelocity().x(), b.getVelocity().y()));
+    }
+    
+    /**
+     * @return true if this client speaks the binary encoding with the server, false if it speaks text
+     */
+    public boolean isBinary() {
+    	return binary.isPresent();
+    }
+    
+    /**
+     * Sends the requests queued since the last flush to the server together, with a single write.
+     * Board.step() calls this at the end of every step. Does nothing if no requests are queued.
+     */
+    public void flush() {
+    	synchronized (out) {
+    		if (outgoing.isEmpty()) return;
+    		final WireMessage requests = WireMessage.together(outgoing);
+    		outgoing.clear();
+    		send(requests);
+    	}
+    }
+    
+    /*
+     * Adds a request to the ones the next flush() sends.
+     */
+    private void queue(WireMessage request) {
+    	synchronized (out) {
+    		outgoing.add(request);
+    	}
+    }
+    
+    /*
+     * Encodes a message and sends it to the server. A failure to send is not reported here:
+     * the listener thread finds out that the connection is broken.
+     */
+    private void send(WireMessage message) {
+    	synchronized (out) {
+    		try {
+    			if (binary.isPresent()) {
+    				out.write(binary.get().encode(message));
+    			} else {
+    				out.write((TextCodec.encode(message) + "\n").getBytes(StandardCharsets.UTF_8));
+    			}
+    			out.flush();
+    		} catch (IOException e) {
+    			// the connection is broken
+    		}
+    	}
     }
 
 	
     /**
      * Get a reply from the next request that was submitted.
      * Requires this is "open".
-     * Responds appropriately to the reply depending on what type of reply it is.
+     * Responds appropriately to the reply depending on what type of reply it is;
+     * changes to the board are submitted to it, to be made at the start of its next step.
      * @throws IOException if network or server failure
      */
     public void getReply() throws IOException {
@@ -165,97 +264,134 @@ public class BoardClient {
     	 *  -Add a wall to the board
     	 *  -Success: the ball moved, remove ball
     	 */
-    	System.out.println("getting reply");
-    	
-    	
-        String reply = in.readLine();
-        if (reply == null) {
-            throw new IOException("connection terminated unexpectedly");
-        } 
-        //code to parse reply and figure out what to do with it
-        
-        
-        System.out.println(reply);
-        
-        
-        if (reply.startsWith("ballEntering")) {
-        	String[] information = reply.split(" ");
-        	String name = information[1].substring(5);
-        	double xPosition = Double.parseDouble(information[2].substring(2));
-        	double yPosition = Double.parseDouble(information[3].substring(2));
-        	double xVelocity = Double.parseDouble(information[4].substring(10));
-        	double yVelocity = Double.parseDouble(information[5].substring(10));
-        	
-        	Ball newBall = new Ball(name, xPosition, yPosition, xVelocity, yVelocity);
-        	
-        	board.addBall(newBall);
-        	
-        	
-        } else if (reply.contains("enteringPortal")) {
-        	String[] information = reply.split(" ");
-        	String portalName = information[1].substring(11);
-        	String ballName = information[2].substring(9);
-        	double xVelocity = Double.parseDouble(information[3].substring(10));
-        	double yVelocity = Double.parseDouble(information[4].substring(10));
-        	Portal destinationPortal = (Portal) board.getGadgetByName(portalName);
-        	Vect portalPosition = destinationPortal.getPosition();
-        	
-        	Ball newBall = new Ball(ballName, portalPosition.x(), portalPosition.y(),
-        			xVelocity, yVelocity);
-        	newBall.setExitingPortal(true);
-        	destinationPortal.addBall(newBall);
-        	board.addBall(newBall);
-        	
-        } else if (reply.startsWith("removeWall")) {
-        	String[] information = reply.split(" ");
-        	String newBoard = information[1].substring(4);
-        	String side = information[2].substring(7);
-        	
-        	if (board.getWall(side).hasNeighboringBoard()) {
-        		String neighbor = board.getWall(side).getNeighboringBoard();
-        		String newSide = null;
-        		if (side.equals("Top")) newSide = "Bottom";
-        		else if (side.equals("Bottom")) newSide = "Top";
-        		else if (side.equals("Left")) newSide = "Right";
-        		else if (side.equals("Right")) newSide = "Left";
-        		
-        		out.println("addWall board=" + neighbor + " side=" + newSide);
-        		out.flush();	
+        WireMessage reply;
+        if (binary.isPresent()) {
+        	reply = binary.get().read(frames);
+        } else {
+        	String line = lines.readLine();
+        	if (line == null) {
+        		throw new IOException("connection terminated unexpectedly");
         	}
+        	try {
+        		reply = TextCodec.decode(line);
+        	} catch (IllegalArgumentException e) {
+        		return; // not a reply this client understands
+        	}
+        }
+        handle(reply);
+    }
+    
+    /*
+     * Responds to one message from the server, or to each message of a BATCH in order.
+     */
+    private void handle(WireMessage reply) {
+        Log.debug("reply", "board", board.getName(), "type", reply.getType());
+        //figure out what to do with the reply
+        switch (reply.getType()) {
+        case BALL_ENTERING: {
+        	Ball newBall = new Ball(reply.getBall(), reply.getX(), reply.getY(), reply.getXVelocity(), reply.getYVelocity());
         	
-        	//System.out.println(newBoard + "  " + side);
-        	//System.out.println(board.getWalls());
-        	
-        	//System.out.println(board.getWall("Left"));
-        	
-        	board.getWall(side).addNeighboringBoard(newBoard);
-        	board.getWall(side).removeWall();
+        	board.submit(() -> board.addBall(newBall));
+        	break;
+        }
+        case ENTERING_PORTAL: {
+        	String portalName = reply.getPortal();
+        	String ballName = reply.getBall();
+        	double xVelocity = reply.getXVelocity();
+        	double yVelocity = reply.getYVelocity();
+        	board.submit(() -> {
+        		Portal destinationPortal = (Portal) board.getGadgetByName(portalName);
+        		Vect portalPosition = destinationPortal.getPosition();
+        		
+        		Ball newBall = new Ball(ballName, portalPosition.x(), portalPosition.y(),
+        				xVelocity, yVelocity);
+        		newBall.setExitingPortal(true);
+        		destinationPortal.addBall(newBall);
+        		board.addBall(newBall);
+        	});
+        	break;
+        }
+        case REMOVE_WALL: {
+        	String newBoard = reply.getBoard();
+        	String side = reply.getSide();
         	
-        } else if (reply.contains("addWall")) {
-        	//System.out.println("re adding the wall");
+        	board.submit(() -> {
+        		if (board.getWall(side).hasNeighboringBoard()) {
+        			String neighbor = board.getWall(side).getNeighboringBoard();
+        			String newSide = null;
+        			if (side.equals("Top")) newSide = "Bottom";
+        			else if (side.equals("Bottom")) newSide = "Top";
+        			else if (side.equals("Left")) newSide = "Right";
+        			else if (side.equals("Right")) newSide = "Left";
+        		
+        			queue(WireMessage.addWallRequest(neighbor, newSide));
+        		}
         	
+        		board.getWall(side).addNeighboringBoard(newBoard);
+        		board.getWall(side).removeWall();
+        	});
+        	break;
+        }
+        case ADD_WALL: {
         	//when a board disconnects re-add the wall
-        	String[] information = reply.split(" ");
-        	String wallOrientation = information[1].substring(5);
+        	String wallOrientation = reply.getSide();
         	
-        	for (Wall wall : board.getWalls()) {
-        		if (wall.getOrientation().equals(wallOrientation)) {
-        			wall.addWall();
-        			wall.removeNeighboringBoard();
+        	board.submit(() -> {
+        		for (Wall wall : board.getWalls()) {
+        			if (wall.getOrientation().equals(wallOrientation)) {
+        				wall.addWall();
+        				wall.removeNeighboringBoard();
+        			}
         		}
-        	}
+        	});
+        	break;
         }
-        
-        else if (reply.contains("success")) {
-        	String[] information = reply.split(" ");
-        	String ballName = information[3].substring(5);
-        	board.removeBall(ballName);
+        case REMOVE_BALL: {
+        	String ballName = reply.getBall();
+        	board.submit(() -> board.removeBall(ballName));
+        	break;
         }
-        
-        else if (reply.contains("portal exit fail")) {
-        	System.out.println("exit failed");
+        case BATCH:
+        	for (WireMessage each : reply.getMessages()) handle(each);
+        	break;
+        default:
+        	break;
         }
     }
+    /**
+     * Starts a thread that receives the server's messages and handles each one with getReply(),
+     * until the connection is closed. The thread blocks while it waits for a message, so it uses no CPU
+     * between messages. It is a virtual thread on a Java runtime that supports them, and a daemon
+     * platform thread otherwise.
+     * Does nothing if the client is already listening.
+     */
+    public synchronized void startListening() {
+        if (listener.isPresent()) return;
+        final Runnable listen = () -> {
+            try {
+                while (true) {
+                    getReply();
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) Log.warn("connectionLost", "board", board.getName(), "error", e.getMessage());
+            }
+        };
+        // a daemon, so that it does not keep the program running once the board's window is closed
+        final Thread thread = ThreadFactories.preferVirtual("BoardClient " + board.getName()).newThread(listen);
+        listener = Optional.of(thread);
+        thread.start();
+    }
+    
+    /** @return true if startListening() has been called */
+    public synchronized boolean isListening() {
+        return listener.isPresent();
+    }
+    
+    /** @return the thread started by startListening(), or empty if it has not been called */
+    synchronized Optional<Thread> getListener() {
+        return listener;
+    }
+    
     /**
      * 
      * @return the board attached to this client
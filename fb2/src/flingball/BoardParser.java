@@ -253,6 +253,7 @@ public class BoardParser {
             else throw new AssertionError("should never get here");
         }        
         
+        board.compileGeometry();
         return board;
     }
     
@@ -0,0 +1,127 @@
+package flingball;
+
+import java.awt.Graphics2D;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An immutable picture of what a Flingball board looks like at the end of one step:
+ * where its free balls are and how fast they are going, the pose of each flipper,
+ * the gadgets that never move, and the neighbor shown above the top wall.
+ * Snapshots are published by the thread that steps the board and drawn by the thread that renders it.
+ */
+public class BoardSnapshot {
+
+    private static final int BALL_LENGTH = 4; // x, y, vx, vy
+
+    private final double[] balls;
+    private final double[] flipperPoses;
+    private final List<Gadget> fixedGadgets;
+    private final Optional<String> topNeighbor;
+
+    /*
+     * Abstraction function:
+     *     AF(balls, flipperPoses, fixedGadgets, topNeighbor):
+     *         a picture of a board showing balls.length / BALL_LENGTH balls that are not held by an absorber,
+     *         where ball i is centered at (balls[4i], balls[4i+1]) with velocity (balls[4i+2], balls[4i+3]);
+     *         flipperPoses.length / Flipper.POSE_LENGTH flippers, each in the pose starting at
+     *         index i*Flipper.POSE_LENGTH as described by Flipper.getPose(); the gadgets in ``fixedGadgets``,
+     *         none of which changes how it looks; and, if topNeighbor.isPresent() is true, the name of
+     *         the board joined to the top wall.
+     *
+     * Rep Invariant:
+     *   - balls.length is a multiple of BALL_LENGTH, and flipperPoses.length is a multiple of Flipper.POSE_LENGTH
+     *   - fixedGadgets contains no flippers
+     *
+     * Safety from rep exposure:
+     *   - all fields are private and final, and the arrays are created here and never shared
+     *   - fixedGadgets is an unmodifiable list, and the gadgets in it are only used to draw
+     *     them, which reads nothing but their immutable position and shape
+     *
+     * Thread Safety Argument:
+     *   - BoardSnapshot is immutable: all fields are final and set before the constructor returns,
+     *     so a snapshot published through a volatile field can be drawn by any thread
+     */
+
+    /**
+     * Takes a snapshot of the balls and flippers of a board.
+     * Must be called by the thread that steps the board.
+     * @param store balls of the board
+     * @param flippers flippers of the board
+     * @param fixedGadgets unmodifiable list of the other gadgets of the board, which must never
+     *                    change how they look
+     * @param topNeighbor name of the board joined to the top wall, if there is one
+     */
+    BoardSnapshot(final BallStore store, final Collection<Flipper> flippers,
+                  final List<Gadget> fixedGadgets, final Optional<String> topNeighbor) {
+        int free = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (!store.absorbed.get(slot)) free++;
+        }
+        this.balls = new double[free * BALL_LENGTH];
+        int i = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.absorbed.get(slot)) continue; // only display balls that are not absorbed
+            balls[i++] = store.x[slot];
+            balls[i++] = store.y[slot];
+            balls[i++] = store.vx[slot];
+            balls[i++] = store.vy[slot];
+        }
+        this.flipperPoses = new double[flippers.size() * Flipper.POSE_LENGTH];
+        int offset = 0;
+        for (Flipper flipper : flippers) {
+            flipper.getPose(flipperPoses, offset);
+            offset += Flipper.POSE_LENGTH;
+        }
+        this.fixedGadgets = fixedGadgets;
+        this.topNeighbor = topNeighbor;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert balls.length % BALL_LENGTH == 0;
+        assert flipperPoses.length % Flipper.POSE_LENGTH == 0;
+        assert fixedGadgets != null && topNeighbor != null;
+    }
+
+    /** @return number of balls shown, which leaves out balls held by absorbers */
+    public int getBallCount() {
+        return balls.length / BALL_LENGTH;
+    }
+
+    /** @return number of flippers shown */
+    public int getFlipperCount() {
+        return flipperPoses.length / Flipper.POSE_LENGTH;
+    }
+
+    /**
+     * Displays this snapshot across the window.
+     * @param g graphics for the drawing buffer for the window.
+     *          Modifies this graphics by drawing the snapshot on it.
+     * @param extrapolation length of time in seconds to move the balls ahead at their velocity
+     *                      before drawing them, requires extrapolation >= 0
+     */
+    public void render(final Graphics2D g, final double extrapolation) {
+        if (topNeighbor.isPresent()) {
+            final int X_COORD_STRING = 9;
+            final int Y_COORD_STRING = 0;
+            g.drawString(topNeighbor.get(), X_COORD_STRING*Flingball.PIXELS_PER_L, Y_COORD_STRING*Flingball.PIXELS_PER_L);
+        }
+        for (Gadget gadget : fixedGadgets) {
+            gadget.render(g);
+        }
+        for (int offset = 0; offset < flipperPoses.length; offset += Flipper.POSE_LENGTH) {
+            Flipper.renderPose(g, flipperPoses, offset);
+        }
+        for (int i = 0; i < balls.length; i += BALL_LENGTH) {
+            final double x = Math.min(Math.max(balls[i] + balls[i + 2]*extrapolation, Ball.POS_LOWER_BOUND),
+                                      Ball.POS_UPPER_BOUND);
+            final double y = Math.min(Math.max(balls[i + 1] + balls[i + 3]*extrapolation, Ball.POS_LOWER_BOUND),
+                                      Ball.POS_UPPER_BOUND);
+            Ball.renderAt(g, x, y);
+        }
+    }
+
+}
@@ -78,6 +78,7 @@ public class CircleBumper implements Bumper {
     
     // checkRep
     private void checkRep() {
+        if (!RepChecks.enabled()) return;
         assert name != null;
         
         assert position != null;
@@ -132,6 +133,7 @@ public class CircleBumper implements Bumper {
     
     @Override
     public boolean resolveCollision(final Ball ball) {
+        if (!mayCollide(ball, COLLISION_WINDOW)) return false;
         /*
          * A note on implemenatation:
          *      1) call Physics.timeUntilWallCollision() to calculate the times at which the ball is colliding with each the lines/circles
@@ -155,6 +157,11 @@ public class CircleBumper implements Bumper {
         return false; // no collision
     }
     
+    @Override
+    public double timeUntilCollision(final Ball ball) {
+        return Physics.timeUntilCircleCollision(circles.get(0), ball.getCircle(), ball.getVelocity());
+    }
+    
     @Override
     public List<LineSegment> getLineSegments() {
         checkRep();
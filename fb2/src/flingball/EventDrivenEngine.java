@@ -0,0 +1,237 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import physics.Physics;
+
+/**
+ * A mutable event-driven collision engine for a Flingball board. Instead of resolving only the
+ * collisions that are about to happen at the start of a step, it repeatedly finds the earliest
+ * collision within the step, moves every ball exactly to that moment, resolves the collision,
+ * and continues from there, so fast balls cannot pass through walls, gadgets or each other.
+ */
+public class EventDrivenEngine {
+
+    /** Maximum number of collisions resolved during a single step. */
+    public static final int MAX_EVENTS_PER_STEP = 1000;
+
+    private final Board board;
+    private final GadgetGrid gadgetGrid;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final Map<Ball, Long> predictedVersions = new HashMap<>();
+    private final List<Gadget> candidates = new ArrayList<>();
+    private long sequence = 0;
+
+    /*
+     * Abstraction function:
+     *     AF(board, gadgetGrid, events, predictedVersions, candidates, sequence):
+     *         an engine that steps the balls of ``board``, finding the gadgets near a ball with ``gadgetGrid``.
+     *         During a step, ``events`` holds the predicted collisions of the step ordered by time,
+     *         and predictedVersions maps each ball to its version when its collisions were last predicted.
+     *         A predicted collision is out of date, and is skipped, once a ball involved in it
+     *         has a different version than when the collision was predicted.
+     *         ``candidates`` is scratch space for gadget queries, and ``sequence`` orders
+     *         collisions predicted for the same time in the order they were predicted.
+     *
+     * Rep Invariant:
+     *   - every event in events has time >= 0
+     *   - sequence >= 0
+     *
+     * Safety from rep exposure:
+     *   - all fields are private and final except ``sequence``, which is a private primitive
+     *   - board and gadgetGrid are shared with the board that owns this engine on purpose,
+     *     and are never shared with other clients
+     *
+     * Thread Safety Argument:
+     *   - EventDrivenEngine is not threadsafe; it is confined to the thread that simulates its board
+     */
+
+    /*
+     * A predicted collision of a ball with a gadget, with a border wall of the board, or with another ball.
+     */
+    private static class Event implements Comparable<Event> {
+        private final double time;
+        private final long sequence;
+        private final Ball ball;
+        private final long ballVersion;
+        private final Gadget gadget; // null unless the ball collides with a gadget
+        private final Ball other; // null unless the ball collides with another ball
+        private final long otherVersion;
+
+        private Event(final double time, final long sequence, final Ball ball,
+                      final Gadget gadget, final Ball other) {
+            this.time = time;
+            this.sequence = sequence;
+            this.ball = ball;
+            this.ballVersion = ball.getVersion();
+            this.gadget = gadget;
+            this.other = other;
+            this.otherVersion = other == null ? 0 : other.getVersion();
+        }
+
+        /** @return true if a ball involved in this collision has changed since it was predicted */
+        private boolean isStale() {
+            return ball.getVersion() != ballVersion || (other != null && other.getVersion() != otherVersion);
+        }
+
+        @Override
+        public int compareTo(final Event that) {
+            final int byTime = Double.compare(this.time, that.time);
+            return byTime != 0 ? byTime : Long.compare(this.sequence, that.sequence);
+        }
+    }
+
+    /**
+     * Creates a new engine for a board.
+     * @param board board whose balls this engine moves
+     * @param gadgetGrid index of exactly the gadgets on the board
+     */
+    public EventDrivenEngine(final Board board, final GadgetGrid gadgetGrid) {
+        this.board = board;
+        this.gadgetGrid = gadgetGrid;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert board != null;
+        assert gadgetGrid != null;
+        assert sequence >= 0;
+    }
+
+    /**
+     * Moves the balls of the board through one step, resolving every collision
+     * at the moment it happens, and then applies gravity and friction to them.
+     * Gadgets keep their positions during the step; the board moves its flippers afterwards.
+     * At most MAX_EVENTS_PER_STEP collisions are resolved, after which the balls move freely
+     * until the end of the step.
+     * @param elapsedTime length of the step in milliseconds, requires elapsedTime > 0
+     * @param balls the balls of the board, in a deterministic order
+     */
+    public void step(final long elapsedTime, final List<Ball> balls) {
+        final double duration = (double) elapsedTime / 1000;
+        double now = 0;
+        events.clear();
+        predictedVersions.clear();
+        for (int i = 0; i < balls.size(); i++) {
+            // pairs with earlier balls were already predicted with those balls
+            predict(balls.get(i), balls.subList(i + 1, balls.size()), now, duration);
+        }
+        int resolved = 0;
+        while (!events.isEmpty() && resolved < MAX_EVENTS_PER_STEP) {
+            final Event event = events.poll();
+            if (event.time > duration) break;
+            if (event.isStale()) continue;
+            advance(balls, event.time - now);
+            now = event.time;
+            resolve(event);
+            resolved++;
+            // a collision can change other balls too, e.g. when it triggers an absorber,
+            // so predict again for every ball that has changed. A ball whose collision had
+            // no effect keeps its version and moves freely until the end of the step.
+            for (Ball ball : balls) {
+                final Long version = predictedVersions.get(ball);
+                if (version == null || version != ball.getVersion()) {
+                    predict(ball, balls, now, duration);
+                }
+            }
+        }
+        advance(balls, duration - now);
+        for (Ball ball : balls) {
+            ball.applyForces(duration, board);
+        }
+        releaseExitingBalls(balls, duration);
+        events.clear();
+        checkRep();
+    }
+
+    /*
+     * Predicts the earliest collision of a ball with a gadget or border wall, and its
+     * collisions with the specified other balls, that happen before the end of the step.
+     */
+    private void predict(final Ball ball, final List<Ball> others, final double now, final double duration) {
+        predictedVersions.put(ball, ball.getVersion());
+        if (ball.getAbsorbed()) return;
+        final double remaining = duration - now;
+        final StaticGeometry geometry = board.compileGeometry();
+        double earliest = geometry.timeUntilWallCollision(ball);
+        Gadget earliestGadget = null;
+        gadgetGrid.getCandidates(ball, remaining, candidates);
+        for (Gadget gadget : candidates) {
+            final int owner = geometry.owner(gadget);
+            final double time = owner < 0 ? gadget.timeUntilCollision(ball) : geometry.timeUntilCollision(owner, ball);
+            if (time < earliest) {
+                earliest = time;
+                earliestGadget = gadget;
+            }
+        }
+        if (earliest <= remaining) {
+            events.add(new Event(now + earliest, sequence++, ball, earliestGadget, null));
+        }
+        final double speed = Math.sqrt(ball.getVelocityX()*ball.getVelocityX() + ball.getVelocityY()*ball.getVelocityY());
+        for (Ball other : others) {
+            if (other == ball || other.getAbsorbed()) continue;
+            // skip balls too far away to be reached before the end of the step
+            final double dx = ball.getX() - other.getX();
+            final double dy = ball.getY() - other.getY();
+            final double gap = Math.sqrt(dx*dx + dy*dy) - ball.getRadius() - other.getRadius();
+            if (gap > (speed + Math.sqrt(other.getVelocityX()*other.getVelocityX() + other.getVelocityY()*other.getVelocityY()))*remaining) continue;
+            final double time = Physics.timeUntilBallBallCollision(
+                    ball.getCircle(), ball.getVelocity(), other.getCircle(), other.getVelocity());
+            if (time <= remaining) {
+                events.add(new Event(now + time, sequence++, ball, null, other));
+            }
+        }
+    }
+
+    /*
+     * Resolves a collision that is happening now.
+     */
+    private void resolve(final Event event) {
+        if (event.other != null) {
+            final Physics.VectPair vectPair = Physics.reflectBalls(
+                    event.ball.getPosition(), 1., event.ball.getVelocity(),
+                    event.other.getPosition(), 1., event.other.getVelocity());
+            event.ball.setVelocity(vectPair.v1);
+            event.other.setVelocity(vectPair.v2);
+        } else if (event.gadget != null) {
+            event.gadget.resolveCollision(event.ball);
+        } else {
+            board.resolveCollision(event.ball);
+        }
+    }
+
+    /*
+     * Moves every ball in a straight line for the specified period of time.
+     */
+    private static void advance(final List<Ball> balls, final double seconds) {
+        if (seconds <= 0) return;
+        for (Ball ball : balls) {
+            ball.advance(seconds);
+        }
+    }
+
+    /*
+     * Lets absorbers and portals release the balls that have left them during a step of the specified length.
+     * Only their release logic runs: a ball is never captured or teleported here, outside the order of events.
+     */
+    private void releaseExitingBalls(final List<Ball> balls, final double duration) {
+        for (Ball ball : balls) {
+            if (!ball.getExitingAbsorber() && !ball.getExitingPortal()) continue;
+            // look back along the ball's path, since it may have left the gadget well before the end of the step
+            gadgetGrid.getCandidates(ball, duration, candidates);
+            for (Gadget gadget : candidates) {
+                if (gadget instanceof Absorber) {
+                    ((Absorber) gadget).passThrough(ball);
+                } else if (gadget instanceof Portal) {
+                    ((Portal) gadget).passThrough(ball);
+                }
+            }
+        }
+    }
+
+}
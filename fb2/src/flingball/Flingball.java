@@ -39,20 +39,19 @@ public class Flingball {
         KeyListener listener = new KeyAdapter() {
             @Override public void keyPressed(KeyEvent e) {
                 report("press", e.getKeyCode());
-                board.keyPressTrigger(Board.keyName.get(e.getKeyCode()));
+                final String key = Board.keyName.get(e.getKeyCode());
+                board.submit(() -> board.keyPressTrigger(key));
             }
 
             @Override public void keyReleased(KeyEvent e) {
                 report("release", e.getKeyCode());
-                board.keyReleaseTrigger(Board.keyName.get(e.getKeyCode()));
+                final String key = Board.keyName.get(e.getKeyCode());
+                board.submit(() -> board.keyReleaseTrigger(key));
             }
             
             private void report(String whatHappened, int keyCode) {
-                System.out.println(
-                        whatHappened
-                        + " "
-                        + Board.keyName.get(keyCode) // note: may return null, which will print "null"
-                        );
+                // note: keyName may return null, which is logged as "null"
+                Log.debug("key", "event", whatHappened, "key", Board.keyName.get(keyCode));
                 
             }
         };
@@ -71,6 +70,8 @@ public class Flingball {
         drawingArea.setPreferredSize(new Dimension(DRAWING_AREA_SIZE_IN_PIXELS, DRAWING_AREA_SIZE_IN_PIXELS));
         window.add(drawingArea);
         window.pack();
+        // published before the window can paint, since render() only draws published snapshots
+        board.publishSnapshot();
         window.setVisible(true);
 
         board.simulate();
@@ -116,7 +117,8 @@ public class Flingball {
             	
             	Board currentBoard = BoardParser.parse(file);
             	//adding a client to the board automatically connects a socket to the server
-            	currentBoard.addClient(new BoardClient(host, port, currentBoard)); //make sure line is uncommented if trying to connect to server
+            	//ask for the binary encoding; the client falls back to text if the server does not accept it
+            	currentBoard.addClient(new BoardClient(host, port, currentBoard, true)); //make sure line is uncommented if trying to connect to server
             	
             	render(currentBoard);
             }
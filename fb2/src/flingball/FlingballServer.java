@@ -3,15 +3,27 @@ package flingball;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -35,248 +47,422 @@ import java.util.NoSuchElementException;
  *   'addWall ' 'side='('Right'|'Left'|'Top'|'Bottom');
  *   "success. remove ball name="BALLNAME;
  * 
- *   
+ *  These are the text forms of the messages (see TextCodec). A board may instead open its connection with the
+ *  binary handshake, and then send and receive the same messages as binary frames (see BinaryCodec).
+ *  A binary board may send the requests of one step together as a BATCH, and gets each board's replies to
+ *  them together as well (see WireMessage).
  *   
  */
 public class FlingballServer {
     
     private static final int DEFAULT_PORT = 10987;
     
-    private ServerSocket serverSocket;
-    private Map<String, Socket> boards = new HashMap<String, Socket>();
-    private Map<String, List<String>> portals = new HashMap<String, List<String>>();
+    // how long to stop accepting after the server socket fails to accept, for example when out of file descriptors,
+    // since the board that could not be accepted is still waiting and would fail again at once
+    private static final long ACCEPT_PAUSE_MILLIS = 100;
+    
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final Queue<SelectorConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final RoutingTable boards = new RoutingTable();
+    private final ServerMetrics metrics = new ServerMetrics();
+    private volatile boolean closed = false;
     
     /*
      *  Abstraction Function:
-     *   	AF(serverSocket, boards, portals): a server(cloud) which keeps tracks of all game connected to the server and sends messages
-	 *   			between connected games to that games can interact with each other. 
-	 *   				--serverSocket Flingball Server listens for messages from boards via socket--like FlingballServer's telephone. 
-	 *   				--Boards are the boards that are currently connected to the FlingballServer
-	 *   				--portals all the portals on each board currently connected to the server
+     *   	AF(serverChannel, selector, workers, pendingWrites, boards, metrics, closed): a server(cloud) which keeps tracks
+     *   			of all game connected to the server and sends messages between connected games to that games can interact
+     *   			with each other. 
+	 *   				--serverChannel Flingball Server listens for new boards via this channel--like FlingballServer's telephone. 
+	 *   				--selector tells the server's selector thread which connections can be accepted, read or written
+	 *   				--workers run the requests received from the boards
+	 *   				--pendingWrites are the connections that have lines queued but are not yet watched for writability
+	 *   				--Boards are the boards that are currently connected to the FlingballServer, and the portals on each of them
+	 *   				--metrics count the messages, bytes and latencies of the server's routing so far
+	 *   				--the server has been shut down if closed is true
 	 *   
 	 *   RepInvariant:
-	 *   	serverSocket != null
+	 *   	serverChannel != null
+	 *   	selector != null
+	 *   	workers != null
 	 *   	boards != null
-	 *   	portals != null
+	 *   	metrics != null
 	 *   
 	 *   Safety From Rep Exposure
 	 *   	-All fields are private
 	 *   	-All other classes cannot mutate FlingballServer, they only send messages. FlingballServer mutates itself from within
+	 *   	-connections get a reference to the server only to hand it their requests
 	 *   
 	 *   Thread Safety Argument:
-	 *   	Class is threadsafe because no other class can mutate this class. Thus we do not have to worry about threads
-	 *   	from other classes mutating FlingballServer.
-	 *   	There are many threads running on this class which may mutate the class so FlingballServer is not completely threadsafe.
-	 *   	This especially occurs as one client tries to disconnect and close its socket while another thread is simultaneously trying
-	 *   		read from the socket if the wall is currently permeable.
-	 *   		TODO fix the bug to make this class threadSafe
+	 *   	One selector thread, running serve(), does all socket reads and writes, so a fixed number of threads
+	 *   		serves any number of boards.
+	 *   	Requests run on the worker pool; the requests of one board run one at a time and in order
+	 *   		(see SelectorConnection), while requests from different boards may run at the same time.
+	 *   	boards is a thread-safe RoutingTable, so requests and console commands can look up boards
+	 *   		and portals from any thread without a lock. A board that disconnects
+	 *   		while a request is routed to it is simply missing from the lookup, or its connection is closed
+	 *   		and drops the line.
+	 *   	Lines are sent to a board only through its ServerConnection, which queues them and never interleaves
+	 *   		lines sent by different threads.
+	 *   	pendingWrites is a thread-safe queue, metrics is a thread-safe ServerMetrics, and closed is volatile.
+	 *   	With serve(ThreadFactory) there is no selector thread: each board's own thread reads and handles its
+	 *   		requests, and the rest of this argument holds with that thread in place of the worker.
      */
     
     /**
      * Make a FlingballServer that listens for connections on port.
+     * Requests are handled by one worker thread per available processor.
      * @param port port number, requires 0 <= port <= 65535
      * @throws IOException if there is an error listening on port
      */
     public FlingballServer(int port) throws IOException {
-    	//System.out.println("creating new flingball server");
-        serverSocket = new ServerSocket(port);
+    	this(port, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Make a FlingballServer that listens for connections on port.
+     * @param port port number, requires 0 <= port <= 65535
+     * @param workerThreads number of threads that handle requests from boards, requires workerThreads > 0
+     * @throws IOException if there is an error listening on port
+     */
+    public FlingballServer(int port, int workerThreads) throws IOException {
+    	serverChannel = ServerSocketChannel.open();
+    	serverChannel.bind(new InetSocketAddress(port));
+    	selector = Selector.open();
+    	workers = Executors.newFixedThreadPool(workerThreads, ThreadFactories.platform("FlingballServer worker"));
         checkRep();
     }    
     
     private void checkRep() {
-    	assert serverSocket != null;
+    	assert serverChannel != null;
+    	assert selector != null;
+    	assert workers != null;
     	assert boards != null;
-    	assert portals != null;
+    	assert metrics != null;
     }
     
     /**
-     * Runs the server, listening for connections and handling them.
-     * @throws IOException if the main server socket is broken
+     * @return the port this server listens on
+     */
+    public int getPort() {
+    	return serverChannel.socket().getLocalPort();
+    }
+    
+    /**
+     * Runs the server, listening for connections and handling them, until close() is called.
+     * The calling thread becomes the server's selector thread, and requests are handled by the worker threads.
+     * Only one of serve() and serve(ThreadFactory) may be called. A board that cannot be accepted, for example
+     * because the process has run out of file descriptors, is logged and left waiting, and the server keeps serving
+     * the boards already connected and tries to accept again a moment later.
+     * @throws IOException if the selector is broken
      */
     public void serve() throws IOException {
-        while (true) {
-            // block until a client connects
-            final Socket socket = serverSocket.accept();
-            System.out.println("accepted a socket " + socket);
-            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            
-            String name = in.readLine();
-            boards.put(name, socket);
-            
-            //System.out.println("boards " + boards);
-            
-            String portalNames = in.readLine();
-            if (!portalNames.equals("noPortals")) {
-	        	String[] portalNames2 = portalNames.substring(15).split(" ");
-	        	List<String> portalsToAdd = new ArrayList<>();
-	        	for (String portal : portalNames2) {portalsToAdd.add(portal);}
-	        	portals.put(name, portalsToAdd);
-            }
-        	//System.out.println("portals server " + portals);
-        	
-            
-            
-            // create a new thread to handle that client
-            Thread handler = new Thread(new Runnable() {
-                public void run() {
-                	
-                	//System.out.println("entered the thread and running");
-                	
-                	//create new board
-                    try {
-                        try {
-                        	//System.out.println("Now trying to handle socket");
-                            handle(socket);
-                        } finally {
-                        	System.out.println("socket is closing");
-                        	//remove portals
-                        	portals.remove(name);
-                        	boards.get(name).close();
-                        	boards.remove(name);
-                        	
-                        	System.out.println(boards + "  " + portals);
-                        	
-                            socket.close();
-                        }
-                    } catch (IOException ioe) {
-                        // this exception wouldn't terminate serve(),
-                        // since we're now on a different thread, but
-                        // we still need to handle it
-                    	//System.out.println("tried to read but socket is already closed");
-                        //ioe.printStackTrace();
-                    }
-                }
-            });
-            // start the thread
-            handler.start();
-        }
+    	try {
+    		serverChannel.configureBlocking(false);
+    		SelectionKey acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    		long acceptResumeNanos = 0; // while accepting is paused, when to try again
+    		while (!closed) {
+    			if (acceptKey.interestOps() == 0 && System.nanoTime() - acceptResumeNanos >= 0) {
+    				acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+    			}
+    			if (acceptKey.interestOps() == 0) {
+    				selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(acceptResumeNanos - System.nanoTime())));
+    			} else {
+    				selector.select();
+    			}
+    			for (SelectorConnection connection = pendingWrites.poll(); connection != null; connection = pendingWrites.poll()) {
+    				connection.enableWrite();
+    			}
+    			Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+    			while (selected.hasNext()) {
+    				SelectionKey key = selected.next();
+    				selected.remove();
+    				if (!key.isValid()) continue;
+    				if (key.isAcceptable()) {
+    					if (!accept()) {
+    						key.interestOps(0);
+    						acceptResumeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACCEPT_PAUSE_MILLIS);
+    					}
+    					continue;
+    				}
+    				SelectorConnection connection = (SelectorConnection) key.attachment();
+    				try {
+    					if (key.isReadable() && !connection.read()) {
+    						connection.disconnected();
+    					} else if (key.isValid() && key.isWritable()) {
+    						connection.write();
+    					}
+    				} catch (IOException | CancelledKeyException e) {
+    					connection.disconnected();
+    				}
+    			}
+    		}
+    	} finally {
+    		for (SelectionKey key : selector.keys()) {
+    			if (key.attachment() instanceof SelectorConnection) ((SelectorConnection) key.attachment()).close();
+    		}
+    		selector.close();
+    		serverChannel.close();
+    		workers.shutdown();
+    	}
     }
     
     /**
-     * Handle one client connection. Returns when client disconnects.
-     * @param socket socket where client is connected
-     * @throws IOException if connection encounters an error
+     * Runs the server with one blocking thread per board, listening for connections and handling them,
+     * until close() is called. Each board's thread reads and handles its requests, and writes to other
+     * boards through their connections. Only one of serve() and serve(ThreadFactory) may be called.
+     * A board that cannot be accepted is handled as in serve().
+     * @param handlers makes the thread for each board, for example threadFactory("virtual")
+     * @throws IOException if the main server socket cannot be closed
      */
-    private void handle(Socket socket) throws IOException {
-    	System.err.println("client connected");
-    	
-    	// get the socket's input stream, and wrap converters around it
-        // that convert it from a byte stream to a character stream,
-        // and that buffer it so that we can read a line at a time
-    	BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-    	PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
-    	
-    	//wait for request: like a ball hit a portal or removed wall or something
+    public void serve(ThreadFactory handlers) throws IOException {
     	try {
-            // each request is a single line containing a number
-            for (String line = in.readLine(); line != null; line = in.readLine()) {
-                //System.err.println("request: " + line);
-                try {
-                    if (line.contains("ballThroughWall")) {
-                    	
-                    	//System.out.println("working on ball exiting");
-                    	
-                    	String[] information = line.split(" ");
-                    	String newBoard = information[1].substring(13);
-                    	String oldOrientation = information[2].substring(16);
-                    	String ballName = information[3].substring(5);
-                    	String xPosition = information[4].substring(2);
-                    	String yPosition = information[5].substring(2);
-                    	String xVelocity = information[6].substring(10);
-                    	String yVelocity = information[7].substring(10);
-                    	
-                    	System.out.println("oldOrientation " + oldOrientation);
-                    	
-                    	if (oldOrientation.equals("Top")) {
-                    		yPosition = "19.75";
-                    	} else if (oldOrientation.equals("Bottom")) {
-                    		yPosition = "0.25"; 
-                    	} else if (oldOrientation.equals("Right")) {
-                    		xPosition = "0.25";
-                    	} else if (oldOrientation.equals("Left")) {
-                    		xPosition = "19.75";
-                    	}
-                    	
-                    	System.out.println("should try to remove ball from current board now");
-                    	
-                    	if (boards.containsKey(newBoard)) {
-	                    	out.println("success. remove ball name=" + ballName);
-	                    	
-	                    	Socket newSocket = boards.get(newBoard);
-	                    	PrintWriter outNewSocket = new PrintWriter(new OutputStreamWriter(newSocket.getOutputStream()), true);
-	                    	
-	                    	outNewSocket.println("ballEntering name=" + ballName + " x=" + xPosition + " y=" + yPosition + 
-	                    			" xVelocity=" + xVelocity + " yVelocity=" +yVelocity);
-	                    	
-	                    	outNewSocket.flush();
-                    	} else {
-                    		//System.out.println("Board no longer exists");
-                    		out.println("addWall side=" + oldOrientation);
-                    	}
-                    	
-                    	
-                    } else if (line.startsWith("portalExiting")) {
-                    	
-                    	//System.out.println("working on portal exiting");
-                    	
-                    	String[] information = line.split(" ");
-                    	
-                    	String newBoard = information[1].substring(13);
-                    	String newPortal = information[2].substring(14);
-                    	String ballName = information[3].substring(5);
-                    	String xVelocity = information[4].substring(10);
-                    	String yVelocity = information[5].substring(10);
-                    	
-                    	if (boards.containsKey(newBoard) && portals.get(newBoard).contains(newPortal)) {
-                    		System.out.println("sending information to other board");
-                        	
-                        	Socket newSocket = boards.get(newBoard);
-                        	System.out.println("socket and board " + newBoard + " " + newSocket);
-                        	PrintWriter outNewSocket = new PrintWriter(new OutputStreamWriter(newSocket.getOutputStream()), true);
-                        	
-                        	
-                        	
-                        	
-                        	outNewSocket.println("enteringPortal portalName=" + newPortal + " ballName=" + ballName +
-                        			" xVelocity=" + xVelocity + " yVelocity=" + yVelocity);
-                        	
-                        	outNewSocket.flush();
-                        	
-                        	out.println("success. remove ball name=" + ballName);
-                    	}
-                    } else if (line.startsWith("addWall")) {
-                    	String[] information = line.split(" ");
-                    	
-                    	String board = information[1].substring(6);
-                    	String side = information[2].substring(5);
-                    	
-                    	if (boards.containsKey(board)) {
-                    		Socket newSocket = boards.get(board);
-                    		PrintWriter outNewSocket = new PrintWriter(new OutputStreamWriter(newSocket.getOutputStream()), true);
-                    		outNewSocket.println("addWall side=" + side);
-                    		outNewSocket.flush();
-                    	}
-                    	
-                    }
-                    
-                    
-                } catch (NumberFormatException nfe) {
-                    // complain about ill-formatted request
-                    System.err.println("reply: err");
-                    out.println("err");
-                }
-                // important! flush our buffer so the reply is sent
-                out.flush();
-            }
-        } finally {
-            out.close();
-            in.close();
+    		while (!closed) {
+    			SocketChannel channel;
+    			try {
+    				channel = serverChannel.accept();
+    			} catch (ClosedChannelException e) {
+    				break; // close() was called
+    			} catch (IOException e) {
+    				Log.warn("acceptFailed", "error", e.getMessage());
+    				try {
+    					Thread.sleep(ACCEPT_PAUSE_MILLIS);
+    				} catch (InterruptedException interrupted) {
+    					break; // stop serving
+    				}
+    				continue;
+    			}
+    			Socket socket = channel.socket();
+    			try {
+    				Log.info("accepted", "address", socket.getRemoteSocketAddress());
+    				socket.setTcpNoDelay(true);
+    				handlers.newThread(new BlockingConnection(this, socket)).start();
+    			} catch (IOException e) {
+    				Log.warn("acceptFailed", "address", socket.getRemoteSocketAddress(), "error", e.getMessage());
+    				closeQuietly(channel);
+    			}
+    		}
+    	} finally {
+    		serverChannel.close();
+    		for (ServerConnection connection : boards.connections()) {
+    			connection.close();
+    		}
+    		workers.shutdown();
+    	}
+    }
+    
+    /**
+     * Makes the threads that serve(ThreadFactory) runs boards on.
+     * @param mode "platform" for one operating system thread per board, or "virtual" for one
+     *             virtual thread per board, which needs a Java runtime that supports them (21 or later)
+     * @return a factory of daemon threads of that kind
+     * @throws IllegalArgumentException if mode is not one of the above, or this runtime has no virtual threads
+     */
+    public static ThreadFactory threadFactory(String mode) {
+    	if (mode.equals("platform")) {
+    		return ThreadFactories.platform("FlingballServer board");
+    	} else if (mode.equals("virtual")) {
+    		return ThreadFactories.virtual("FlingballServer board")
+    		                      .orElseThrow(() -> new IllegalArgumentException("virtual threads need Java 21 or later"));
+    	}
+    	throw new IllegalArgumentException("illegal input for threads: " + mode);
+    }
+    
+    /**
+     * @return the metrics of this server's routing, which its connections also update
+     */
+    ServerMetrics metrics() {
+    	return metrics;
+    }
+    
+    /**
+     * Starts a thread that prints this server's metrics as one line of JSON every period,
+     * until the server is closed.
+     * @param periodMillis time between lines in milliseconds, requires periodMillis > 0
+     */
+    public void logMetrics(long periodMillis) {
+    	Thread logger = new Thread(() -> {
+    		try {
+    			while (!closed) {
+    				Thread.sleep(periodMillis);
+    				Log.info("metrics", "stats", metrics.toJson());
+    			}
+    		} catch (InterruptedException e) {
+    			// stop logging
+    		}
+    	}, "FlingballServer metrics");
+    	logger.setDaemon(true);
+    	logger.start();
+    }
+    
+    /**
+     * Stops the server: serve() closes every connection and returns.
+     */
+    public void close() {
+    	closed = true;
+    	selector.wakeup();
+    	if (serverChannel.isBlocking()) {
+    		try {
+    			serverChannel.close(); // wakes up serve(ThreadFactory) in accept()
+    		} catch (IOException e) {
+    			// already closed
+    		}
+    	}
+    }
+    
+    /*
+     * Accepts a board that is waiting to connect, or logs why it could not. Must be called by the selector thread.
+     * Returns false if the server socket failed to accept, and true otherwise.
+     */
+    private boolean accept() {
+    	SocketChannel channel;
+    	try {
+    		channel = serverChannel.accept();
+    	} catch (IOException e) {
+    		Log.warn("acceptFailed", "error", e.getMessage());
+    		return false;
+    	}
+    	if (channel == null) return true;
+    	try {
+    		Log.info("accepted", "address", channel.socket().getRemoteSocketAddress());
+    		channel.configureBlocking(false);
+    		channel.socket().setTcpNoDelay(true);
+    		new SelectorConnection(this, selector, channel, workers);
+    	} catch (IOException e) {
+    		Log.warn("acceptFailed", "address", channel.socket().getRemoteSocketAddress(), "error", e.getMessage());
+    		closeQuietly(channel);
+    	}
+    	return true;
+    }
+    
+    /*
+     * Closes a channel to a board that could not be accepted.
+     */
+    private static void closeQuietly(SocketChannel channel) {
+    	try {
+    		channel.close();
+    	} catch (IOException e) {
+    		// the connection is gone either way
+    	}
+    }
+    
+    /**
+     * Asks the selector thread to write a connection's queued lines.
+     * @param connection connection with lines queued
+     */
+    void requestWrite(SelectorConnection connection) {
+    	pendingWrites.add(connection);
+    	selector.wakeup();
+    }
+    
+    /**
+     * Adds a board that has just connected.
+     * @param registration REGISTER message the board sent
+     * @param connection connection to the board
+     */
+    void register(WireMessage registration, ServerConnection connection) {
+    	Log.info("connected", "board", registration.getBoard(), "portals", registration.getPortals());
+    	metrics.received(registration);
+    	boards.register(registration.getBoard(), registration.getPortals(), connection);
+    }
+    
+    /**
+     * Removes a board that has disconnected, unless another board with the same name has connected since.
+     * @param name name of the board
+     * @param connection connection to the board that disconnected
+     */
+    void unregister(String name, ServerConnection connection) {
+    	if (boards.unregister(name, connection)) Log.info("disconnected", "board", name);
+    }
+    
+    /**
+     * Handle one request from a board, which may be a BATCH of requests.
+     * The replies to a batch are sent in bulk: each board gets all of its replies together, in one message.
+     * @param from connection to the board that sent the request
+     * @param request request, of a type that boards send other than REGISTER
+     * @param receivedNanos System.nanoTime() when the request was read from the board's socket, from which the
+     *                      latency of the messages forwarded because of it is measured
+     */
+    void handleRequest(ServerConnection from, WireMessage request, long receivedNanos) {
+        metrics.received(request);
+        final Map<ServerConnection, List<WireMessage>> replies = new LinkedHashMap<>();
+        if (request.getType() == WireMessage.Type.BATCH) {
+            for (WireMessage each : request.getMessages()) route(from, each, replies);
+        } else {
+            route(from, request, replies);
+        }
+        for (Map.Entry<ServerConnection, List<WireMessage>> entry : replies.entrySet()) {
+            entry.getKey().forward(WireMessage.together(entry.getValue()), receivedNanos);
         }
     }
     
+    /*
+     * Works out the replies to one request, adding them to the replies for each board in order.
+     */
+    private void route(ServerConnection from, WireMessage request, Map<ServerConnection, List<WireMessage>> replies) {
+        //wait for request: like a ball hit a portal or removed wall or something
+        Log.debug("route", "type", request.getType(), "board", request.getBoard());
+        switch (request.getType()) {
+        case BALL_THROUGH_WALL: {
+        	String oldOrientation = request.getSide();
+        	double xPosition = request.getX();
+        	double yPosition = request.getY();
+        	
+        	if (oldOrientation.equals("Top")) {
+        		yPosition = 19.75;
+        	} else if (oldOrientation.equals("Bottom")) {
+        		yPosition = 0.25; 
+        	} else if (oldOrientation.equals("Right")) {
+        		xPosition = 0.25;
+        	} else if (oldOrientation.equals("Left")) {
+        		xPosition = 19.75;
+        	}
+        	
+        	Optional<ServerConnection> destination = boards.connection(request.getBoard());
+        	if (destination.isPresent()) {
+            	reply(replies, from, WireMessage.removeBall(request.getBall()));
+            	reply(replies, destination.get(), WireMessage.ballEntering(request.getBall(), xPosition, yPosition,
+            			request.getXVelocity(), request.getYVelocity()));
+        	} else {
+        		//Board no longer exists
+        		reply(replies, from, WireMessage.addWall(oldOrientation));
+        	}
+        	break;
+        }
+        case PORTAL_EXITING: {
+        	Optional<ServerConnection> destination = boards.connection(request.getBoard());
+        	if (destination.isPresent() && boards.hasPortal(request.getBoard(), request.getPortal())) {
+            	reply(replies, destination.get(), WireMessage.enteringPortal(request.getPortal(), request.getBall(),
+            			request.getXVelocity(), request.getYVelocity()));
+            	reply(replies, from, WireMessage.removeBall(request.getBall()));
+        	}
+        	break;
+        }
+        case ADD_WALL_REQUEST: {
+        	Optional<ServerConnection> destination = boards.connection(request.getBoard());
+        	if (destination.isPresent()) {
+        		reply(replies, destination.get(), WireMessage.addWall(request.getSide()));
+        	}
+        	break;
+        }
+        default:
+            // complain about a message only the server sends
+            Log.warn("unexpectedMessage", "type", request.getType());
+            reply(replies, from, WireMessage.error());
+        }
+    }
+    
+    /*
+     * Adds a reply for a board to the replies for each board.
+     */
+    private static void reply(Map<ServerConnection, List<WireMessage>> replies, ServerConnection to, WireMessage reply) {
+        replies.computeIfAbsent(to, connection -> new ArrayList<>()).add(reply);
+    }
+    
     /**
      * Reads commands passed in through the console and sends messages to clients
-     * 		based on input
+     * 		based on input. The command "stats" prints the server's metrics as one line of JSON.
      * @throws IOException
      */
     public void readCommands() throws IOException {
@@ -290,39 +476,34 @@ public class FlingballServer {
                 System.exit(0); // exits the program
             }
 
+            if (input.trim().equals("stats")) {
+            	System.out.println(metrics.toJson());
+            	continue;
+            }
+
             try {
             	String[] information = input.trim().split("[ \t]+");
             	
-            	System.out.println("info " + information[0]);
-            	
             	if (information.length != 3) {
             		throw new Error("Invalid console input");
             	} else if (!information[0].equals("h") && !information[0].equals("v")) {
             		throw new Error("Invalid console input");
-            	} else if (!boards.containsKey(information[1]) || !boards.containsKey(information[2])) {
+            	} else if (!boards.connection(information[1]).isPresent() || !boards.connection(information[2]).isPresent()) {
             		throw new Error("Board does not exist");
             	}
             	
                 if (information[0].equals("h")) {
-                	System.out.println(input);
-                    
                     String leftBoard = information[1];
                     String rightBoard = information[2];
                     
-                    if (boards.containsKey(leftBoard) && boards.containsKey(rightBoard)) {
+                    Optional<ServerConnection> outLeftBoard = boards.connection(leftBoard);
+                    Optional<ServerConnection> outRightBoard = boards.connection(rightBoard);
+                    if (outLeftBoard.isPresent() && outRightBoard.isPresent()) {
                     
-                    	System.out.println("have two valid boards");
-	                    PrintWriter outLeftBoard = new PrintWriter(new OutputStreamWriter(boards.get(leftBoard).getOutputStream()), true);
-	                    PrintWriter outRightBoard = new PrintWriter(new OutputStreamWriter(boards.get(rightBoard).getOutputStream()), true);
-	                    
 	                    //Send a message that board needs to remove wall and attach new board
 	                    
-	                    outLeftBoard.println("removeWall" + " Add=" + rightBoard + " toWall=Right");
-	                    outRightBoard.println("removeWall" + " Add=" + leftBoard + " toWall=Left");
-	                    
-	                    outLeftBoard.flush();
-	                    outRightBoard.flush();
-	                    
+	                    outLeftBoard.get().send(WireMessage.removeWall(rightBoard, "Right"));
+	                    outRightBoard.get().send(WireMessage.removeWall(leftBoard, "Left"));
 	                    
 	                	System.out.println("join two horizontal boards");
                     }
@@ -331,16 +512,16 @@ public class FlingballServer {
                 	String topBoard = information[1];
                 	String bottomBoard = information[2];
                 	
-                	PrintWriter outTopBoard = new PrintWriter(new OutputStreamWriter(boards.get(topBoard).getOutputStream()), true);
-                	PrintWriter outBottomBoard = new PrintWriter(new OutputStreamWriter(boards.get(bottomBoard).getOutputStream()), true);
+                	Optional<ServerConnection> outTopBoard = boards.connection(topBoard);
+                	Optional<ServerConnection> outBottomBoard = boards.connection(bottomBoard);
+                	if (!outTopBoard.isPresent() || !outBottomBoard.isPresent()) {
+                		throw new Error("Board does not exist");
+                	}
                 	
                 	//Send message that board needs to remove wall and attach new board
                 	//when you remove a wall always send message that old wall is added back
-                	outTopBoard.println("removeWall" + " Add=" + bottomBoard + " toWall=Bottom");
-                	outBottomBoard.println("removeWall" + " Add=" + topBoard + " toWall=Top");
-                	
-                	outTopBoard.flush();
-                	outBottomBoard.flush();
+                	outTopBoard.get().send(WireMessage.removeWall(bottomBoard, "Bottom"));
+                	outBottomBoard.get().send(WireMessage.removeWall(topBoard, "Top"));
                 	
                 	System.out.println("join two vertical boards");
                 } else {
@@ -362,13 +543,20 @@ public class FlingballServer {
      * listen for connections and read inputs from the console for joining boards.
      * 
      * Command line usage: 
-     *   FlingballServer [--port PORT]
+     *   FlingballServer [--port PORT] [--threads (selector|platform|virtual)] [--stats SECONDS]
      * 
      * where PORT is an integer in the range 0 to 65535 inclusive,
      * specifying the port where the server should listen for incoming connections.
      * 
      * If no port is specified, the default port is 10987.
      * 
+     * --threads chooses how boards are served: "selector" (the default) serves every board from one
+     * selector thread and a small pool of workers; "platform" and "virtual" give each board a blocking
+     * thread of its own, of that kind (see threadFactory()).
+     * 
+     * --stats prints the server's routing metrics as one line of JSON every SECONDS seconds (see logMetrics());
+     * the console command "stats" prints them once.
+     * 
      * Requires: args.length()%2 == 0
      * 
      * @throws IOException 
@@ -377,29 +565,40 @@ public class FlingballServer {
         //Run this in one thread:
     	
     	
-    	System.out.println("Running main method flingball server");
-    	
-    	FlingballServer server;
-    	if (args.length == 0) {
-    		server = new FlingballServer(DEFAULT_PORT);
-		} else if (args.length == 2) {
-        	//System.out.println("args length == 2");
-            server = new FlingballServer(Integer.parseInt(args[1]));
-        } else {
+    	if (args.length % 2 != 0) {
             throw new IllegalArgumentException("illegal input for port");
-        }
+    	}
+    	int port = DEFAULT_PORT;
+    	Optional<ThreadFactory> handlers = Optional.empty();
+    	Optional<Long> statsSeconds = Optional.empty();
+    	for (int i = 0; i < args.length; i += 2) {
+    		if (args[i].equals("--threads")) {
+    			handlers = args[i+1].equals("selector") ? Optional.empty() : Optional.of(threadFactory(args[i+1]));
+    		} else if (args[i].equals("--stats")) {
+    			statsSeconds = Optional.of(Long.parseLong(args[i+1]));
+    			if (statsSeconds.get() <= 0) throw new IllegalArgumentException("illegal input for stats: " + args[i+1]);
+    		} else {
+    			port = Integer.parseInt(args[i+1]);
+    		}
+    	}
+    	final Optional<ThreadFactory> serveHandlers = handlers;
+    	FlingballServer server = new FlingballServer(port);
+    	if (statsSeconds.isPresent()) server.logMetrics(statsSeconds.get() * 1000);
     	Thread serveThread = new Thread(new Runnable() {
             public void run() {
             	
             	//System.out.println("running server thread");
             	
             	try {
-					server.serve();
+					if (serveHandlers.isPresent()) {
+						server.serve(serveHandlers.get());
+					} else {
+						server.serve();
+					}
 						
 				} catch (IOException e) {
 					//Auto-generated catch block
-					System.out.println("tried to serve");
-					e.printStackTrace();
+					Log.error("serveFailed", "error", e);
 				}  	
             }
         });
@@ -413,8 +612,7 @@ public class FlingballServer {
 					server.readCommands();
 				} catch (IOException e) {
 					//Auto-generated catch block
-					System.out.println("console thread exception!!");
-					e.printStackTrace();
+					Log.error("consoleFailed", "error", e);
 				}
     			
     		}
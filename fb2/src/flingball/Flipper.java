@@ -19,7 +19,8 @@ import physics.Vect;
 
 public class Flipper implements Gadget{
     
-    private final int RECTANGLE_SIDES = 4;
+    private static final int RECTANGLE_SIDES = 4;
+    static final int POSE_LENGTH = 4 + 2*RECTANGLE_SIDES; // coordinates in a pose returned by getPose()
     private static final double CIRCLE_RADIUS = .25;
     private static final double BOX_DIM = 2;
     private static final double REFLECTION_COEFF = .95;
@@ -205,6 +206,7 @@ public class Flipper implements Gadget{
     
     //checks the rep invariant of the flipper
     private void checkRep() {
+        if (!RepChecks.enabled()) return;
         assert type.equals("left") || type.equals("right");
         assert lines.length == 2;
         assert ! outsideBox(lines[0]);
@@ -321,19 +323,46 @@ public class Flipper implements Gadget{
     }
     
     @Override public void render(Graphics2D g) {
+        final double[] pose = new double[POSE_LENGTH];
+        getPose(pose, 0);
+        renderPose(g, pose, 0);
+        checkRep();
+    }
+    
+    /**
+     * Copies the current pose of this flipper into an array: the centers of the pivot circle and 
+     * the moving circle, followed by the four corners of the rectangle in the middle of the flipper,
+     * as POSE_LENGTH coordinates x1, y1, x2, y2, ...
+     * @param pose array to copy the pose into
+     * @param offset index in pose of the first coordinate, requires offset + POSE_LENGTH <= pose.length
+     */
+    void getPose(final double[] pose, final int offset) {
+        final Vect[] points = {pivotCircle.getCenter(), movingCircle.getCenter(), 
+                               lines[0].p1(), lines[0].p2(), lines[1].p2(), lines[1].p1()};
+        for (int i = 0; i < points.length; i++) {
+            pose[offset + 2*i] = points[i].x();
+            pose[offset + 2*i + 1] = points[i].y();
+        }
+    }
+    
+    /**
+     * Displays a flipper in a pose copied by getPose().
+     * @param g graphics for the drawing buffer for the window. 
+     *          Modifies this graphics by drawing the flipper on it.
+     * @param pose array holding the pose
+     * @param offset index in pose of the first coordinate of the pose
+     */
+    static void renderPose(final Graphics2D g, final double[] pose, final int offset) {
         final double diameter = (CIRCLE_RADIUS + CIRCLE_RADIUS) * Flingball.PIXELS_PER_L;
         g.setColor(Color.ORANGE);
-        //Pivot Circle
-        g.fill(new Ellipse2D.Double((this.pivotCircle.getCenter().x()-CIRCLE_RADIUS) * Flingball.PIXELS_PER_L, 
-                (this.pivotCircle.getCenter().y()-CIRCLE_RADIUS) * Flingball.PIXELS_PER_L, 
-                diameter, diameter));
-        //Moving Circle
-        g.fill(new Ellipse2D.Double((this.movingCircle.getCenter().x()-CIRCLE_RADIUS) * Flingball.PIXELS_PER_L, 
-                (this.movingCircle.getCenter().y()-CIRCLE_RADIUS) * Flingball.PIXELS_PER_L, 
-                diameter, diameter));
+        //Pivot Circle and Moving Circle
+        for (int i = 0; i < 2; i++) {
+            g.fill(new Ellipse2D.Double((pose[offset + 2*i]-CIRCLE_RADIUS) * Flingball.PIXELS_PER_L, 
+                    (pose[offset + 2*i + 1]-CIRCLE_RADIUS) * Flingball.PIXELS_PER_L, 
+                    diameter, diameter));
+        }
         //Rectangle
-        g.fill(makeRectangle());
-        checkRep();
+        g.fill(makeRectangle(pose, offset));
     }
     
     /**
@@ -341,21 +370,31 @@ public class Flipper implements Gadget{
      * @return the polygon that represents the rectangle
      */
     private Polygon makeRectangle() {
-        int npoints = RECTANGLE_SIDES;
-        int[] xpoints = new int[npoints];
-        xpoints[0] = (int) (this.lines[0].p1().x()*Flingball.PIXELS_PER_L);
-        xpoints[1] = (int) (this.lines[0].p2().x()*Flingball.PIXELS_PER_L);
-        xpoints[2] = (int) (this.lines[1].p2().x()*Flingball.PIXELS_PER_L);
-        xpoints[3] = (int) (this.lines[1].p1().x()*Flingball.PIXELS_PER_L);
-        int[] ypoints = new int[npoints];
-        ypoints[0] = (int) (this.lines[0].p1().y()*Flingball.PIXELS_PER_L);
-        ypoints[1] = (int) (this.lines[0].p2().y()*Flingball.PIXELS_PER_L);
-        ypoints[2] = (int) (this.lines[1].p2().y()*Flingball.PIXELS_PER_L);
-        ypoints[3] = (int) (this.lines[1].p1().y()*Flingball.PIXELS_PER_L);
-        return new Polygon(xpoints, ypoints, npoints);
+        final double[] pose = new double[POSE_LENGTH];
+        getPose(pose, 0);
+        return makeRectangle(pose, 0);
+    }
+    
+    /**
+     * Make the rectangle shape in the middle of a flipper in a pose copied by getPose(), 
+     * with appropriate for rendering on the board
+     * @param pose array holding the pose
+     * @param offset index in pose of the first coordinate of the pose
+     * @return the polygon that represents the rectangle
+     */
+    private static Polygon makeRectangle(final double[] pose, final int offset) {
+        final int[] xpoints = new int[RECTANGLE_SIDES];
+        final int[] ypoints = new int[RECTANGLE_SIDES];
+        for (int i = 0; i < RECTANGLE_SIDES; i++) {
+            xpoints[i] = (int) (pose[offset + 4 + 2*i]*Flingball.PIXELS_PER_L);
+            ypoints[i] = (int) (pose[offset + 4 + 2*i + 1]*Flingball.PIXELS_PER_L);
+        }
+        return new Polygon(xpoints, ypoints, RECTANGLE_SIDES);
     }
     
     @Override public boolean resolveCollision(Ball ball) {
+        // a ball outside the grown box is not inside the flipper either, so nothing below would change it
+        if (!mayCollide(ball, COLLISION_WINDOW)) return false;
         if (insideBox(ball)) {
             final double standardTimestep = .05;
             Vect newPos = ball.getPosition().plus(ball.getVelocity().times(standardTimestep));
@@ -433,6 +472,31 @@ public class Flipper implements Gadget{
         return false;
     }   
     
+    @Override public double timeUntilCollision(Ball ball) {
+        // use the same angular velocity as resolveCollision() so that both agree on the collision
+        double ang_velocity = ANGULAR_VELOCITY;
+        if (! rotateCounterClockwise) {
+            ang_velocity = - ang_velocity;
+        }
+        double mintime = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < lines.length; i ++) {
+            if (! shouldMove) {
+                mintime = Math.min(mintime, Physics.timeUntilWallCollision(lines[i], ball.getCircle(), ball.getVelocity()));
+            } else {
+                mintime = Math.min(mintime, Physics.timeUntilRotatingWallCollision(
+                        lines[i], pivotCircle.getCenter(), ang_velocity, ball.getCircle(), ball.getVelocity()));
+            }
+        }
+        mintime = Math.min(mintime, Physics.timeUntilCircleCollision(pivotCircle, ball.getCircle(), ball.getVelocity()));
+        if (! shouldMove) {
+            mintime = Math.min(mintime, Physics.timeUntilCircleCollision(movingCircle, ball.getCircle(), ball.getVelocity()));
+        } else {
+            mintime = Math.min(mintime, Physics.timeUntilRotatingCircleCollision(
+                    movingCircle, pivotCircle.getCenter(), ang_velocity, ball.getCircle(), ball.getVelocity()));
+        }
+        return mintime;
+    }
+    
     @Override public String getName() {
         return this.name;
     }
@@ -459,6 +523,16 @@ public class Flipper implements Gadget{
          return BOX_DIM;
      }
 
+     /*
+      * Collisions are predicted as if the flipper kept turning, so within some time its parts may sweep
+      * a little outside its bounding box; the box is grown by the farthest any part of it can move.
+      */
+     @Override public boolean mayCollide(final Ball ball, final double seconds) {
+         final double sweep = ANGULAR_VELOCITY*BOX_DIM*Math.sqrt(2)*seconds;
+         return Gadget.sweptBoxOverlaps(ball, seconds, position.x() - sweep, position.y() - sweep,
+                                        BOX_DIM + 2*sweep, BOX_DIM + 2*sweep);
+     }
+
      @Override public double getHeight() {
          return BOX_DIM;
      }
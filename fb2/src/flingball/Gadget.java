@@ -11,6 +11,15 @@ import physics.Vect;
  * A mutable data type representing a general Flingball gadget.
  */
 public interface Gadget {
+
+    /**
+     * Time in seconds within which resolveCollision() resolves a collision: a ball collides with a gadget
+     * if it would reach it in less than this time at its current velocity.
+     */
+    public static final double COLLISION_WINDOW = 0.002;
+
+    /** Distance in L by which swept boxes are grown, so that rounding never hides a collision. */
+    public static final double BOX_MARGIN = 1e-6;
     
     /**
      * Displays this gadget on the window.
@@ -28,6 +37,54 @@ public interface Gadget {
      */
     public boolean resolveCollision(final Ball ball);
     
+    /**
+     * Predicts when a ball will next collide with this gadget if it keeps moving
+     * at its current velocity and this gadget keeps its current motion.
+     * @param ball ball of the Flingball game
+     * @return time in seconds until the ball collides with this gadget,
+     *         or Double.POSITIVE_INFINITY if it never does or this gadget currently ignores the ball
+     */
+    public double timeUntilCollision(final Ball ball);
+
+    /**
+     * Tests whether a ball might collide with this gadget within some time, by testing whether the box the
+     * ball sweeps overlaps this gadget's bounding box. The test is conservative: it may return true for a ball
+     * that misses, but never returns false for a ball that collides within the time.
+     * resolveCollision() returns false at once when this returns false for COLLISION_WINDOW.
+     * @param ball ball of the Flingball game
+     * @param seconds time ahead in seconds, requires seconds >= 0
+     * @return false if the ball cannot collide with this gadget within seconds at its current velocity,
+     *         true if it might
+     */
+    public default boolean mayCollide(final Ball ball, final double seconds) {
+        final Vect position = getPosition();
+        return sweptBoxOverlaps(ball, seconds, position.x(), position.y(), getWidth(), getHeight());
+    }
+
+    /**
+     * Tests whether the box a ball sweeps within some time overlaps a box: whether the box, grown on every side
+     * by the ball's radius, the distance the ball moves along that axis and BOX_MARGIN, contains the ball's center.
+     * @param ball ball of the Flingball game
+     * @param seconds time ahead in seconds, requires seconds >= 0
+     * @param x left edge of the box
+     * @param y top edge of the box
+     * @param width width of the box, requires width >= 0
+     * @param height height of the box, requires height >= 0
+     * @return false if the ball cannot touch anything inside the box within seconds at its current velocity,
+     *         true if it might
+     */
+    public static boolean sweptBoxOverlaps(final Ball ball, final double seconds, final double x, final double y,
+                                           final double width, final double height) {
+        final double ballX = ball.getX();
+        final double ballY = ball.getY();
+        final double radius = ball.getRadius();
+        final double reachX = radius + Math.abs(ball.getVelocityX())*seconds + BOX_MARGIN;
+        final double reachY = radius + Math.abs(ball.getVelocityY())*seconds + BOX_MARGIN;
+        // written as a negation so that a NaN coordinate or velocity counts as a possible collision
+        return !(ballX + reachX < x || ballX - reachX > x + width
+                 || ballY + reachY < y || ballY - reachY > y + height);
+    }
+    
     /** @return gadget's name */
     public String getName();
     
@@ -0,0 +1,179 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import physics.Vect;
+
+/**
+ * A mutable uniform-grid spatial index over the gadgets of a 20L x 20L Flingball board.
+ * Each cell of the grid covers 1L x 1L, so integer-aligned gadgets fall cleanly into cells.
+ */
+public class GadgetGrid {
+
+    public static final int CELLS_PER_SIDE = 20;
+
+    private final List<List<Entry>> cells = new ArrayList<>();
+    private final Map<Gadget, Entry> entries = new HashMap<>();
+
+    /*
+     * Abstraction function:
+     *     AF(cells, entries):
+     *         an index of the gadgets that are the keys of ``entries``, where the cell at
+     *         column c and row r covers the square [c, c+1] x [r, r+1] of the board and
+     *         cells.get(r*CELLS_PER_SIDE + c) holds every gadget whose bounding box touches that square.
+     *
+     * Rep Invariant:
+     *   - cells has size CELLS_PER_SIDE * CELLS_PER_SIDE
+     *   - for each entry in entries, 0 <= minCol <= maxCol < CELLS_PER_SIDE and
+     *     0 <= minRow <= maxRow < CELLS_PER_SIDE, and the entry appears exactly in
+     *     the cells of columns minCol..maxCol and rows minRow..maxRow
+     *
+     * Safety from rep exposure:
+     *   - all fields are private and final, and their references are never shared with clients
+     *   - gadgets are shared with clients on purpose, since the grid only indexes them
+     *
+     * Thread Safety Argument:
+     *   - GadgetGrid is not threadsafe. Queries do not mutate the grid, so concurrent queries
+     *     are safe as long as no gadget is added or removed at the same time.
+     */
+
+    /*
+     * One gadget together with the range of cells its bounding box touches.
+     */
+    private static class Entry {
+        private final Gadget gadget;
+        private final int minCol;
+        private final int minRow;
+        private final int maxCol;
+        private final int maxRow;
+
+        private Entry(final Gadget gadget, final int minCol, final int minRow, final int maxCol, final int maxRow) {
+            this.gadget = gadget;
+            this.minCol = minCol;
+            this.minRow = minRow;
+            this.maxCol = maxCol;
+            this.maxRow = maxRow;
+        }
+    }
+
+    /**
+     * Creates a new, empty grid.
+     */
+    public GadgetGrid() {
+        for (int i = 0; i < CELLS_PER_SIDE * CELLS_PER_SIDE; i++) {
+            cells.add(new ArrayList<Entry>());
+        }
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert cells.size() == CELLS_PER_SIDE * CELLS_PER_SIDE;
+        for (Entry entry : entries.values()) {
+            assert 0 <= entry.minCol && entry.minCol <= entry.maxCol && entry.maxCol < CELLS_PER_SIDE;
+            assert 0 <= entry.minRow && entry.minRow <= entry.maxRow && entry.maxRow < CELLS_PER_SIDE;
+        }
+    }
+
+    /**
+     * Adds a gadget to this grid, using the bounding box given by
+     * its position, width and height. Replaces the gadget if it is already in the grid.
+     * @param gadget gadget to add
+     */
+    public void add(final Gadget gadget) {
+        remove(gadget);
+        final Vect position = gadget.getPosition();
+        // the far edges are inclusive so that a ball exactly touching a gadget is still found
+        final Entry entry = new Entry(gadget,
+                                      toCell(position.x()), toCell(position.y()),
+                                      toCell(position.x() + gadget.getWidth()), toCell(position.y() + gadget.getHeight()));
+        for (int row = entry.minRow; row <= entry.maxRow; row++) {
+            for (int col = entry.minCol; col <= entry.maxCol; col++) {
+                cells.get(row*CELLS_PER_SIDE + col).add(entry);
+            }
+        }
+        entries.put(gadget, entry);
+        checkRep();
+    }
+
+    /**
+     * Removes a gadget from this grid, if it is in the grid.
+     * @param gadget gadget to remove
+     */
+    public void remove(final Gadget gadget) {
+        final Entry entry = entries.remove(gadget);
+        if (entry == null) return;
+        for (int row = entry.minRow; row <= entry.maxRow; row++) {
+            for (int col = entry.minCol; col <= entry.maxCol; col++) {
+                final Iterator<Entry> cell = cells.get(row*CELLS_PER_SIDE + col).iterator();
+                while (cell.hasNext()) {
+                    if (cell.next() == entry) cell.remove();
+                }
+            }
+        }
+        checkRep();
+    }
+
+    /**
+     * Finds the gadgets that a ball could touch within the specified period of time
+     * if it kept moving at its current velocity.
+     * @param ball ball of the Flingball game
+     * @param seconds length of time in seconds, requires seconds >= 0
+     * @param result list to fill; it is cleared and then filled with every gadget whose cells
+     *               overlap the box swept by the ball, each exactly once
+     */
+    public void getCandidates(final Ball ball, final double seconds, final List<Gadget> result) {
+        final double vx = ball.getVelocityX();
+        final double vy = ball.getVelocityY();
+        final double reach = ball.getRadius() + Math.sqrt(vx*vx + vy*vy)*seconds;
+        getCandidates(ball.getX() - reach, ball.getY() - reach, ball.getX() + reach, ball.getY() + reach, result);
+    }
+
+    /**
+     * Finds the gadgets whose cells overlap a box.
+     * @param minX left edge of the box
+     * @param minY top edge of the box
+     * @param maxX right edge of the box, requires maxX >= minX
+     * @param maxY bottom edge of the box, requires maxY >= minY
+     * @param result list to fill; it is cleared and then filled with every gadget
+     *               whose cells overlap the box, each exactly once
+     */
+    public void getCandidates(final double minX, final double minY, final double maxX, final double maxY,
+                              final List<Gadget> result) {
+        result.clear();
+        final int minCol = toCell(minX);
+        final int minRow = toCell(minY);
+        final int maxCol = toCell(maxX);
+        final int maxRow = toCell(maxY);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                for (Entry entry : cells.get(row*CELLS_PER_SIDE + col)) {
+                    // a gadget spanning several cells is reported only from the first cell
+                    // that both it and the box cover, so no gadget is reported twice
+                    if (col == Math.max(minCol, entry.minCol) && row == Math.max(minRow, entry.minRow)) {
+                        result.add(entry.gadget);
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return number of gadgets in this grid */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param coordinate a coordinate on the board in L
+     * @return index of the row or column of cells containing that coordinate,
+     *         clamped to the board
+     */
+    private static int toCell(final double coordinate) {
+        return (int) Math.min(Math.max(Math.floor(coordinate), 0), CELLS_PER_SIDE - 1);
+    }
+
+}
@@ -0,0 +1,113 @@
+package flingball;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * Console interface that simulates a Flingball board without displaying it.
+ *
+ * The board is stepped as fast as possible instead of being paced against real time,
+ * so it can be used to run boards for regression testing and tuning.
+ * No window is opened and AWT is only used in headless mode.
+ */
+public class HeadlessFlingball {
+
+    public static final double DEFAULT_SECONDS = 10;
+
+    /**
+     * Steps a board for the specified length of simulated time, as fast as possible.
+     * @param board board to simulate
+     * @param duration length of simulated time in milliseconds, requires duration >= 0
+     * @param step length of each step in milliseconds, requires step > 0
+     * @return number of steps taken
+     */
+    public static long run(final Board board, final long duration, final long step) {
+        long ticks = 0;
+        for (long elapsed = 0; elapsed + step <= duration; elapsed += step) {
+            board.step(step);
+            ticks++;
+        }
+        return ticks;
+    }
+
+    /**
+     * Simulates a board without displaying it and prints how fast it ran and where its balls ended up.
+     *
+     * Command line usage:
+     *   HeadlessFlingball [--seconds SECONDS] [--step STEP] [--event-driven] [--collision-threads THREADS]
+     *                     [--checks (off|sampled|full)] [FILE]
+     *
+     *   SECONDS is the length of simulated time to run the board for. The default is 10 seconds.
+     *
+     *   STEP is the length of each simulation step in milliseconds.
+     *   The default is Board.DEFAULT_TIMESTEP.
+     *
+     *   --event-driven steps the board with the event-driven collision engine.
+     *
+     *   THREADS is the number of threads used to find the balls that might collide in each step,
+     *   as in Board.setCollisionThreads(). The default is 1.
+     *
+     *   --checks sets how often rep invariants are checked when assertions are enabled, as in RepChecks.setMode().
+     *   The default is RepChecks' initial mode.
+     *
+     *   FILE is an optional argument specifying a file pathname of the Flingball board to run.
+     *   If FILE is not provided, the default benchmark board is run.
+     *
+     * @param args command-line arguments as described above
+     * @throws IllegalArgumentException if the arguments or the board file are invalid
+     * @throws IOException if there is an error reading the input
+     */
+    public static void main(String[] args) throws IOException {
+        // make sure nothing touched by the board, such as the key codes in KeyEvent, tries to use a display
+        System.setProperty("java.awt.headless", "true");
+
+        double seconds = DEFAULT_SECONDS;
+        long step = Board.DEFAULT_TIMESTEP;
+        boolean eventDriven = false;
+        int collisionThreads = 1;
+        String file = "boards/default.fb";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--seconds")) seconds = Double.parseDouble(args[++i]);
+                else if (args[i].equals("--step")) step = Long.parseLong(args[++i]);
+                else if (args[i].equals("--event-driven")) eventDriven = true;
+                else if (args[i].equals("--collision-threads")) collisionThreads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--checks")) RepChecks.setMode(RepChecks.Mode.valueOf(args[++i].toUpperCase()));
+                else file = args[i];
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(
+                    "usage: HeadlessFlingball [--seconds SECONDS] [--step STEP] [--event-driven] [--collision-threads THREADS]"
+                    + " [--checks (off|sampled|full)] [FILE]", e);
+        }
+        if (seconds < 0 || step <= 0 || collisionThreads <= 0) {
+            throw new IllegalArgumentException("seconds must be >= 0, and step and threads must be > 0");
+        }
+
+        final Board board;
+        try {
+            board = BoardParser.parse(file);
+        } catch (UnableToParseException e) {
+            throw new IllegalArgumentException("input board file is syntactically invalid", e);
+        }
+        board.setEventDriven(eventDriven);
+        board.setCollisionThreads(collisionThreads);
+
+        final long start = System.nanoTime();
+        final long ticks = run(board, (long) (seconds * 1000), step);
+        final double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Board <%s>: %d steps of %d ms in %.3f s (%.0f ticks/sec)%n",
+                          board.getName(), ticks, step, wallSeconds, ticks / wallSeconds);
+        final List<String> ballNames = new ArrayList<>(board.getBallsNames());
+        Collections.sort(ballNames);
+        for (String ballName : ballNames) {
+            System.out.print(board.getBallByName(ballName));
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package flingball;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A mutable histogram of latencies in nanoseconds, with a bounded relative error in the style of HdrHistogram.
+ *
+ * Latencies below SUB_BUCKETS nanoseconds are counted exactly. Every larger power of two is split into SUB_BUCKETS
+ * buckets of equal width, so a latency is known to within 1/SUB_BUCKETS of its value (about 6%), and the whole
+ * range of a long fits in a fixed array of under a thousand counts. Recording a latency is one atomic increment,
+ * and never allocates.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /*
+     * Abstraction function:
+     *     AF(counts, max): the multiset of latencies recorded, where counts.get(i) latencies lie between
+     *         lowest(i) and highest(i) nanoseconds, and the largest of them is max.get()
+     *
+     * Rep Invariant:
+     *   - every count is >= 0
+     *   - max.get() is in the highest nonempty bucket, or 0 if there is none
+     *
+     * Safety from rep exposure:
+     *   - all fields are private and never returned
+     *
+     * Thread Safety Argument:
+     *   - counts and max are only changed atomically, so record() may be called from any thread.
+     *     The queries read the counts one at a time, so a query that races with record() may miss
+     *     the latencies being recorded, but never sees a count that was not recorded.
+     */
+
+    /**
+     * Records one latency.
+     * @param nanos latency in nanoseconds; negative latencies, from clocks read on different threads, count as 0
+     */
+    void record(final long nanos) {
+        final long latency = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(latency));
+        max.accumulate(latency);
+    }
+
+    /**
+     * @return number of latencies recorded
+     */
+    long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * @return largest latency recorded, in nanoseconds, or 0 if none has been recorded
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile fraction of the latencies, requires 0 < quantile <= 1
+     * @return a latency in nanoseconds that at least that fraction of the latencies recorded are no larger than,
+     *         and that is within the error of the histogram of the smallest such latency; 0 if none has been recorded
+     */
+    long percentile(final double quantile) {
+        assert 0 < quantile && quantile <= 1;
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        final long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(highest(i), max());
+        }
+        return max();
+    }
+
+    /*
+     * Returns the bucket that counts a latency.
+     */
+    static int bucket(final long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /*
+     * Returns the smallest latency counted by a bucket.
+     */
+    static long lowest(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    /*
+     * Returns the largest latency counted by a bucket.
+     */
+    static long highest(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        return lowest(bucket) + (1L << shift) - 1;
+    }
+
+}
@@ -0,0 +1,355 @@
+package flingball;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous, level-gated structured logging for Flingball's simulation and networking classes.
+ *
+ * A log entry is an event name and up to two key=value fields, for example
+ *   Log.debug("sendRequest", "ball", ball.getName(), "board", neighbor);
+ * which, if DEBUG is enabled, is written as one line, stamped with the UTC time of day
+ *   12:30:05.123 DEBUG [Thread-3] sendRequest ball=Ball1 board=Right
+ *
+ * Calls below the current level (see setLevel()) return after reading one volatile field, without allocating.
+ * Enabled calls copy their arguments into a preallocated slot of a fixed-size ring buffer and return; a daemon
+ * writer thread formats the entries and writes them to standard error in the order they were logged, so the
+ * logging thread never waits for the console. If the buffer is full, the entry is dropped and counted, and
+ * the writer reports how many were dropped.
+ *
+ * Values are formatted with String.valueOf() on the writer thread, later than they were logged, so they must be
+ * strings, numbers or other immutable values. Boxing a primitive value allocates; in a hot loop, check enabled()
+ * before logging one.
+ *
+ * The initial level is INFO, or the level named by the system property flingball.log, for example
+ * -Dflingball.log=DEBUG.
+ */
+public class Log {
+
+    /** Levels of log entries, from the most to the least detailed. */
+    public enum Level {
+        /** details of every message and collision, for debugging */
+        DEBUG,
+        /** connections and other events worth seeing while running */
+        INFO,
+        /** problems that the program recovers from */
+        WARN,
+        /** failures */
+        ERROR,
+        /** as a threshold: log nothing */
+        OFF
+    }
+
+    private static final int CAPACITY = 1 << 12;
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final Entry[] ring = new Entry[CAPACITY];
+    private static final AtomicLong claimed = new AtomicLong();
+    private static final AtomicLong consumed = new AtomicLong();
+    private static final LongAdder dropped = new LongAdder();
+    private static volatile Level threshold = initialLevel();
+    private static volatile PrintStream output = System.err;
+    private static volatile boolean writerParked = false;
+    private static final Thread writer = new Thread(Log::write, "Log writer");
+
+    /*
+     * Abstraction function:
+     *     AF(ring, claimed, consumed, dropped, threshold, output, writerParked, writer):
+     *         a log that keeps entries at ``threshold`` or above and writes them to ``output``.
+     *         The entries with sequence numbers consumed.get() ... claimed.get()-1 have been logged but not
+     *         written yet; the entry with sequence number s is in ring[s & MASK] once ring[s & MASK].sequence == s.
+     *         dropped.sum() entries were dropped because the ring was full.
+     *
+     * Rep Invariant:
+     *   - consumed.get() <= claimed.get() <= consumed.get() + CAPACITY
+     *   - CAPACITY is a power of two
+     *
+     * Safety from rep exposure:
+     *   - all fields are private, and entries are never returned
+     *
+     * Thread Safety Argument:
+     *   - producers claim sequence numbers with a compare-and-set on ``claimed``, only while the ring has room,
+     *     so no two producers fill the same slot and no producer overwrites an entry that has not been written
+     *   - a producer publishes its entry by writing the slot's volatile ``sequence`` last, after its fields, so the
+     *     writer sees a complete entry once it sees the sequence number it is waiting for
+     *   - only the writer thread reads entries and advances ``consumed``, which frees their slots
+     *   - writerParked is volatile: the writer sets it before checking for entries one last time and parking,
+     *     and producers check it after publishing and unpark the writer if it is set, so either the writer sees
+     *     the new entry or the producer sees that the writer is parking; IDLE_PARK_NANOS only bounds the wait
+     *     for drops to be reported
+     *   - threshold and output are volatile
+     */
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Entry(i - CAPACITY);
+        }
+        writer.setDaemon(true);
+        writer.start();
+        // write what is left when the program exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(TimeUnit.SECONDS.toMillis(1)), "Log flush"));
+    }
+
+    private Log() {
+        // not instantiable
+    }
+
+    private static Level initialLevel() {
+        final String level = System.getProperty("flingball.log");
+        if (level == null) return Level.INFO;
+        try {
+            return Level.valueOf(level.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    /**
+     * Sets the least severe level that is logged.
+     * @param level entries at this level and above are logged; OFF logs nothing
+     */
+    public static void setLevel(final Level level) {
+        threshold = level;
+    }
+
+    /** @return the least severe level that is logged */
+    public static Level getLevel() {
+        return threshold;
+    }
+
+    /**
+     * @param level level of an entry, other than OFF
+     * @return true if entries at that level are logged
+     */
+    public static boolean enabled(final Level level) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    /**
+     * Writes log lines to a different stream, for example to capture them in a test.
+     * @param stream stream to write lines to
+     */
+    static void setOutput(final PrintStream stream) {
+        output = stream;
+    }
+
+    /**
+     * Logs an event at DEBUG.
+     * @param event name of the event
+     */
+    public static void debug(final String event) {
+        log(Level.DEBUG, event, null, null, null, null);
+    }
+
+    /**
+     * Logs an event with one field at DEBUG.
+     * @param event name of the event
+     * @param key field name
+     * @param value field value
+     */
+    public static void debug(final String event, final String key, final Object value) {
+        log(Level.DEBUG, event, key, value, null, null);
+    }
+
+    /**
+     * Logs an event with two fields at DEBUG.
+     * @param event name of the event
+     * @param key1 first field name
+     * @param value1 first field value
+     * @param key2 second field name
+     * @param value2 second field value
+     */
+    public static void debug(final String event, final String key1, final Object value1,
+                             final String key2, final Object value2) {
+        log(Level.DEBUG, event, key1, value1, key2, value2);
+    }
+
+    /**
+     * Logs an event at INFO.
+     * @param event name of the event
+     */
+    public static void info(final String event) {
+        log(Level.INFO, event, null, null, null, null);
+    }
+
+    /**
+     * Logs an event with one field at INFO.
+     * @param event name of the event
+     * @param key field name
+     * @param value field value
+     */
+    public static void info(final String event, final String key, final Object value) {
+        log(Level.INFO, event, key, value, null, null);
+    }
+
+    /**
+     * Logs an event with two fields at INFO.
+     * @param event name of the event
+     * @param key1 first field name
+     * @param value1 first field value
+     * @param key2 second field name
+     * @param value2 second field value
+     */
+    public static void info(final String event, final String key1, final Object value1,
+                            final String key2, final Object value2) {
+        log(Level.INFO, event, key1, value1, key2, value2);
+    }
+
+    /**
+     * Logs an event with one field at WARN.
+     * @param event name of the event
+     * @param key field name
+     * @param value field value
+     */
+    public static void warn(final String event, final String key, final Object value) {
+        log(Level.WARN, event, key, value, null, null);
+    }
+
+    /**
+     * Logs an event with two fields at WARN.
+     * @param event name of the event
+     * @param key1 first field name
+     * @param value1 first field value
+     * @param key2 second field name
+     * @param value2 second field value
+     */
+    public static void warn(final String event, final String key1, final Object value1,
+                            final String key2, final Object value2) {
+        log(Level.WARN, event, key1, value1, key2, value2);
+    }
+
+    /**
+     * Logs an event with one field at ERROR.
+     * @param event name of the event
+     * @param key field name
+     * @param value field value
+     */
+    public static void error(final String event, final String key, final Object value) {
+        log(Level.ERROR, event, key, value, null, null);
+    }
+
+    /*
+     * Copies an entry into the ring if its level is enabled and the ring has room.
+     * key1 and key2 are null for fields that are not used.
+     */
+    private static void log(final Level level, final String event, final String key1, final Object value1,
+                            final String key2, final Object value2) {
+        if (!enabled(level)) return;
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        final Entry entry = ring[(int) sequence & MASK];
+        entry.millis = System.currentTimeMillis();
+        entry.level = level;
+        entry.thread = Thread.currentThread().getName();
+        entry.event = event;
+        entry.key1 = key1;
+        entry.value1 = value1;
+        entry.key2 = key2;
+        entry.value2 = value2;
+        entry.sequence = sequence; // publishes the entry to the writer
+        if (writerParked) LockSupport.unpark(writer);
+    }
+
+    /**
+     * Waits until every entry logged before this call has been written, or the timeout passes.
+     * @param timeoutMillis longest time to wait, in milliseconds
+     * @return true if every entry was written in time
+     */
+    static boolean flush(final long timeoutMillis) {
+        final long target = claimed.get();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (consumed.get() < target) {
+            if (System.nanoTime() - deadline > 0) return false;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        output.flush();
+        return true;
+    }
+
+    /*
+     * Runs on the writer thread: writes entries in order as they are published.
+     */
+    private static void write() {
+        final StringBuilder line = new StringBuilder();
+        long reportedDrops = 0;
+        while (true) {
+            final long next = consumed.get();
+            final Entry entry = ring[(int) next & MASK];
+            if (entry.sequence != next) {
+                final long drops = dropped.sum();
+                if (drops != reportedDrops) {
+                    output.println("Log dropped " + (drops - reportedDrops) + " entries while its buffer was full");
+                    reportedDrops = drops;
+                }
+                output.flush();
+                writerParked = true;
+                if (entry.sequence != next) LockSupport.parkNanos(IDLE_PARK_NANOS);
+                writerParked = false;
+                continue;
+            }
+            line.setLength(0);
+            entry.format(line);
+            entry.clear(); // let the values be collected
+            consumed.set(next + 1); // frees the slot for producers
+            output.println(line);
+        }
+    }
+
+    /*
+     * A slot of the ring. Its fields are written by the producer that claimed the slot, and read by the writer
+     * once ``sequence`` says the entry is published.
+     */
+    private static class Entry {
+        private volatile long sequence;
+        private long millis;
+        private Level level;
+        private String thread;
+        private String event;
+        private String key1;
+        private Object value1;
+        private String key2;
+        private Object value2;
+
+        private Entry(final long sequence) {
+            this.sequence = sequence;
+        }
+
+        private void format(final StringBuilder line) {
+            final long millisOfDay = Math.floorMod(millis, TimeUnit.DAYS.toMillis(1));
+            appendPadded(line, millisOfDay / 3_600_000, 2).append(':');
+            appendPadded(line, millisOfDay / 60_000 % 60, 2).append(':');
+            appendPadded(line, millisOfDay / 1000 % 60, 2).append('.');
+            appendPadded(line, millisOfDay % 1000, 3);
+            line.append(' ').append(level).append(" [").append(thread).append("] ").append(event);
+            if (key1 != null) line.append(' ').append(key1).append('=').append(value1);
+            if (key2 != null) line.append(' ').append(key2).append('=').append(value2);
+        }
+
+        private void clear() {
+            thread = null;
+            event = null;
+            key1 = null;
+            value1 = null;
+            key2 = null;
+            value2 = null;
+        }
+
+        private static StringBuilder appendPadded(final StringBuilder line, final long value, final int digits) {
+            final String text = Long.toString(value);
+            for (int i = text.length(); i < digits; i++) line.append('0');
+            return line.append(text);
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A mutable detection phase that finds, on several worker threads, which balls of a board
+ * might be involved in a collision during the next step.
+ *
+ * Detection only reads the board: each ball is tested against the walls and the bumpers near it,
+ * and a ball near any stateful gadget (an absorber, flipper or portal) is always reported, since
+ * those gadgets change state when balls come near them. The board then resolves the reported balls
+ * one at a time in slot order, so every side effect, such as an absorber capturing a ball,
+ * a portal teleporting it, or a chain of triggers, happens in the same order as in a serial step.
+ * A ball that is not reported would not have collided in a serial step either.
+ */
+class ParallelCollisionDetector {
+
+    // balls per task below which a range of balls is not split further
+    private static final int MIN_BALLS_PER_TASK = 64;
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final Board board;
+    private final GadgetGrid grid;
+    private final ForkJoinPool pool;
+    private boolean[] reported = new boolean[0];
+    private int detected = 0;
+
+    /*
+     * Abstraction function:
+     *     AF(board, grid, pool, reported, detected):
+     *         the detection phase of ``board``, whose gadgets are indexed by ``grid``, run on the
+     *         worker threads of ``pool``. After the last detection, which covered ``detected`` balls,
+     *         the ball in slot i might collide during the next step if reported[i] is true.
+     *
+     * Rep Invariant:
+     *   - 0 <= detected <= reported.length
+     *
+     * Safety from rep exposure:
+     *   - all fields are private, and their references are never shared with clients
+     *   - board and grid are shared with the board that owns this phase on purpose
+     *
+     * Thread Safety Argument:
+     *   - ParallelCollisionDetector is confined to the thread that simulates its board, except while
+     *     detect() runs. During detect() each worker writes only the slots of ``reported`` in its own
+     *     range of balls, and calls only methods that read the board, its gadgets and the balls
+     *     in that range; the only writes they make are to the cached views of their own balls.
+     *   - the board and its gadgets are not changed while detect() runs, because the simulating
+     *     thread waits for the workers to finish, and ForkJoinPool.invoke() makes the workers'
+     *     writes visible to it afterwards.
+     */
+
+    /**
+     * Creates a detection phase for a board.
+     * @param board board whose balls are tested
+     * @param grid index of the gadgets of board
+     * @param threads number of worker threads, requires threads > 0
+     */
+    ParallelCollisionDetector(final Board board, final GadgetGrid grid, final int threads) {
+        this.board = board;
+        this.grid = grid;
+        this.pool = new ForkJoinPool(threads);
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert board != null && grid != null && pool != null;
+        assert 0 <= detected && detected <= reported.length;
+    }
+
+    /** @return number of worker threads used for detection */
+    int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Shuts down the worker threads, once the board no longer uses this detection phase.
+     * detect() must not be called afterwards.
+     */
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    /** @return true if shutdown() has been called */
+    boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    /**
+     * Finds the balls of a store that might collide with a wall or gadget within the specified
+     * period of time. The board and the balls must not change until this method returns.
+     * @param balls balls of the board
+     * @param seconds length of time in seconds, requires seconds > 0
+     */
+    void detect(final BallStore balls, final double seconds) {
+        detected = balls.size();
+        if (detected > reported.length) reported = new boolean[Math.max(detected, 2*reported.length)];
+        final int grain = Math.max(MIN_BALLS_PER_TASK, detected / (pool.getParallelism() * TASKS_PER_THREAD) + 1);
+        // compiled here, on the simulating thread, before the workers read it
+        final StaticGeometry geometry = board.compileGeometry();
+        pool.invoke(new Detection(balls, geometry, seconds, 0, detected, grain));
+        checkRep();
+    }
+
+    /**
+     * @param slot slot of a ball in the store given to the last detect()
+     * @return true if the ball in that slot might collide during the next step, or if the slot
+     *         was not covered by the last detection; false only if it will not collide
+     */
+    boolean isReported(final int slot) {
+        return slot >= detected || reported[slot];
+    }
+
+    /*
+     * Detection for a range of balls, split in half until it is at most grain balls long.
+     */
+    private class Detection extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BallStore balls;
+        private final StaticGeometry geometry;
+        private final double seconds;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        private Detection(final BallStore balls, final StaticGeometry geometry, final double seconds,
+                          final int from, final int to, final int grain) {
+            this.balls = balls;
+            this.geometry = geometry;
+            this.seconds = seconds;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > grain) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new Detection(balls, geometry, seconds, from, middle, grain),
+                          new Detection(balls, geometry, seconds, middle, to, grain));
+                return;
+            }
+            final List<Gadget> candidates = new ArrayList<>();
+            for (int slot = from; slot < to; slot++) {
+                reported[slot] = mightCollide(balls.getBall(slot), geometry, seconds, candidates);
+            }
+        }
+    }
+
+    /*
+     * Tests whether a ball might collide within the specified period of time, without changing
+     * the board. Collisions are tested the same way as the bumpers' and board's resolveCollision(),
+     * which count a collision when the time until it, truncated to whole milliseconds, is at most 1.
+     */
+    private boolean mightCollide(final Ball ball, final StaticGeometry geometry, final double seconds,
+                                 final List<Gadget> candidates) {
+        if (ball.getExitingAbsorber() || ball.getExitingPortal()) return true;
+        grid.getCandidates(ball, seconds, candidates);
+        for (final Gadget gadget : candidates) {
+            if (!isStatic(gadget) || isImminent(geometry.timeUntilCollision(geometry.owner(gadget), ball))) return true;
+        }
+        return isImminent(geometry.timeUntilWallCollision(ball));
+    }
+
+    /*
+     * A gadget is static if resolving a collision with it changes nothing but the ball's velocity
+     * and the gadgets it triggers, and testing a ball against it does not depend on its state.
+     */
+    private static boolean isStatic(final Gadget gadget) {
+        return gadget instanceof SquareBumper || gadget instanceof CircleBumper || gadget instanceof TriangleBumper;
+    }
+
+    /*
+     * Tests a collision time in seconds the same way resolveCollision() does.
+     */
+    private static boolean isImminent(final double collisionTime) {
+        return (long) (collisionTime * 1000) <= 1;
+    }
+
+}
@@ -83,7 +83,7 @@ public class Portal implements Gadget{
     public Portal(final String name, final int xPos, final int yPos, Board board, String otherPortal, String otherBoard) {
         this.name = name;
         this.position = new Vect(xPos,yPos);
-        this.circle = new Circle(new Vect(xPos,yPos),RADIUS);
+        this.circle = new Circle(new Vect(xPos+RADIUS,yPos+RADIUS),RADIUS);
         this.otherBoard = Optional.of(otherBoard);
         this.otherPortal = otherPortal; 
         this.board = board;
@@ -95,6 +95,7 @@ public class Portal implements Gadget{
      * Checks if rep invariant is obeyed
      */
     private void checkRep() {
+        if (!RepChecks.enabled()) return;
         assert name != null;
         
         assert position != null;
@@ -118,19 +119,29 @@ public class Portal implements Gadget{
                                     Flingball.PIXELS_PER_L, Flingball.PIXELS_PER_L));
     }
 
-    public boolean resolveCollision(Ball ball) {
-        if (ball.getExitingPortal() && balls.contains(ball)) {
-            //assert balls.get(0).equals(ball);
-            if ((ball.getPosition().y() + ball.getCircle().getRadius()<= getPosition().y() 
-                || ball.getPosition().y() >= getPosition().y() + this.getHeight()) ||
-                    (ball.getPosition().x() + ball.getCircle().getRadius() <= getPosition().x() 
-                    || ball.getPosition().x() >= getPosition().x() + this.getWidth())) {
-                balls.remove(0);
-                ball.setExitingAbsorber(false);
-            }
-            checkRep();
-            return false;
+    /**
+     * Lets a ball that came out of this portal pass through it,
+     * and forgets the ball once it is clear of the portal.
+     * @param ball ball of the Flingball game
+     * @return true if the ball has not yet left this portal, so it does not collide with it
+     */
+    boolean passThrough(final Ball ball) {
+        if (!(ball.getExitingPortal() && balls.contains(ball))) return false;
+        //assert balls.get(0).equals(ball);
+        if ((ball.getPosition().y() + ball.getCircle().getRadius()<= getPosition().y() 
+            || ball.getPosition().y() >= getPosition().y() + this.getHeight()) ||
+                (ball.getPosition().x() + ball.getCircle().getRadius() <= getPosition().x() 
+                || ball.getPosition().x() >= getPosition().x() + this.getWidth())) {
+            balls.remove(0);
+            ball.setExitingAbsorber(false);
         }
+        checkRep();
+        return true;
+    }
+
+    public boolean resolveCollision(Ball ball) {
+        if (passThrough(ball)) return false;
+        if (!mayCollide(ball, COLLISION_WINDOW)) return false;
         /*
          * A note on implementation:
          *      1) call Physics.timeUntilWallCollision() to calculate the times at which the ball is colliding with each the lines/circles
@@ -149,7 +160,11 @@ public class Portal implements Gadget{
             //on another board
             if (this.otherBoard.isPresent()) {
                 trigger(); // trigger upon collision
-                //send info to server
+                //send info to server, unless the board is not connected to one
+                if (!board.hasClient()) {
+                    checkRep();
+                    return false;
+                }
                 board.getClient().sendRequest(ball, otherPortal, otherBoard.get());
                 checkRep();
                 return true;
@@ -177,6 +192,15 @@ public class Portal implements Gadget{
         return false; // no collision
 
     }
+    @Override
+    public double timeUntilCollision(Ball ball) {
+        // a ball that has not yet left this portal cannot be teleported again
+        if (ball.getExitingPortal() && balls.contains(ball)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Physics.timeUntilCircleCollision(circle, ball.getCircle(), ball.getVelocity());
+    }
+    
     /**
      * Adds a ball to balls, meaning a ball has been teleported to the portal
      * is within it
@@ -0,0 +1,138 @@
+package flingball;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How often the checkRep() methods of Board, Ball, the bumpers, Flipper, Absorber and Portal check their
+ * rep invariants.
+ *
+ * In FULL mode every checkRep() checks, as it always has. In SAMPLED mode they only check during one step in
+ * every getSamplePeriod() steps of any board, so a long run with assertions enabled still catches a broken
+ * invariant without paying for a check in every getter of every ball on every step. In OFF mode they return
+ * at once. checkRep() asks enabled() first, which reads one volatile field, so a check that is skipped costs
+ * nothing else and never allocates.
+ *
+ * Rep invariants are checked with assert, so checking only happens when assertions are enabled (-ea);
+ * with assertions disabled, enabled() is always false, whatever the mode.
+ *
+ * The initial mode is FULL, or the mode named by the system property flingball.checks, for example
+ * -Dflingball.checks=sampled, and the initial sample period is DEFAULT_SAMPLE_PERIOD, or the number given by
+ * the system property flingball.checks.period.
+ */
+public class RepChecks {
+
+    /** How often rep invariants are checked. */
+    public enum Mode {
+        /** never */
+        OFF,
+        /** during one step in every getSamplePeriod() steps */
+        SAMPLED,
+        /** whenever a checkRep() method runs */
+        FULL
+    }
+
+    /** Default number of steps between sampled checks. */
+    public static final int DEFAULT_SAMPLE_PERIOD = 64;
+
+    private static final boolean ASSERTIONS = assertionsEnabled();
+    private static final AtomicLong steps = new AtomicLong();
+    private static volatile Mode mode = initialMode();
+    private static volatile int samplePeriod = initialSamplePeriod();
+    private static volatile boolean active = ASSERTIONS && mode == Mode.FULL;
+
+    /*
+     * Abstraction function:
+     *     AF(steps, mode, samplePeriod, active): rep invariants are checked according to ``mode``, sampling once
+     *         every ``samplePeriod`` steps; ``steps`` steps have been taken by all boards together, and checkRep()
+     *         methods check right now if ``active``
+     *
+     * Rep Invariant:
+     *   - samplePeriod > 0
+     *   - !ASSERTIONS implies !active
+     *   - mode == FULL implies active == ASSERTIONS, and mode == OFF implies !active
+     *
+     * Safety from rep exposure:
+     *   - all fields are private, and the mode is an immutable enum value
+     *
+     * Thread Safety Argument:
+     *   - mode, samplePeriod and active are volatile, and steps is atomic. Boards stepped on different threads
+     *     share the sampled steps: while one board's step is sampled, checks are active on every thread. A step
+     *     that races with the change of ``active`` may check a little more or a little less, which only moves
+     *     the sample.
+     */
+
+    private RepChecks() {
+        // not instantiable
+    }
+
+    private static boolean assertionsEnabled() {
+        boolean enabled = false;
+        assert enabled = true; // only runs with assertions enabled
+        return enabled;
+    }
+
+    private static Mode initialMode() {
+        final String name = System.getProperty("flingball.checks");
+        if (name == null) return Mode.FULL;
+        try {
+            return Mode.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Mode.FULL;
+        }
+    }
+
+    private static int initialSamplePeriod() {
+        try {
+            final int period = Integer.parseInt(System.getProperty("flingball.checks.period", ""));
+            return period > 0 ? period : DEFAULT_SAMPLE_PERIOD;
+        } catch (NumberFormatException e) {
+            return DEFAULT_SAMPLE_PERIOD;
+        }
+    }
+
+    /**
+     * @return true if checkRep() methods should check their rep invariants now
+     */
+    public static boolean enabled() {
+        return active;
+    }
+
+    /**
+     * Sets how often rep invariants are checked.
+     * @param newMode new mode
+     */
+    public static void setMode(final Mode newMode) {
+        mode = newMode;
+        active = ASSERTIONS && newMode == Mode.FULL;
+    }
+
+    /** @return how often rep invariants are checked */
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets how many steps pass between sampled checks.
+     * @param period number of steps, requires period > 0
+     */
+    public static void setSamplePeriod(final int period) {
+        assert period > 0;
+        samplePeriod = period;
+    }
+
+    /** @return number of steps between sampled checks */
+    public static int getSamplePeriod() {
+        return samplePeriod;
+    }
+
+    /**
+     * Called by Board at the start of every step, to choose the steps that are sampled.
+     * Does nothing unless the mode is SAMPLED.
+     */
+    static void step() {
+        if (mode != Mode.SAMPLED) return;
+        final boolean sampled = ASSERTIONS && steps.incrementAndGet() % samplePeriod == 0;
+        if (active != sampled) active = sampled;
+    }
+
+}
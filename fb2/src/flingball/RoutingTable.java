@@ -0,0 +1,174 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A mutable table of the boards connected to FlingballServer and the portals they publish, which routes
+ * requests by compact integer IDs.
+ *
+ * Every board name and every portal name the server has seen is interned once, when a board registers,
+ * to a small integer ID that is never reused for another name. The connection to a board is then found by
+ * indexing an array with the board's ID, and whether a board has a portal by testing one bit of the set of its
+ * portal IDs, so the cost of routing a request does not grow with the number of boards or portals.
+ */
+class RoutingTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> boardIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> portalIds = new ConcurrentHashMap<>();
+    private final List<String> boardNames = new ArrayList<>();
+    private volatile AtomicReferenceArray<ServerConnection> connections = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private volatile AtomicReferenceArray<BitSet> portals = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    /*
+     * Abstraction function:
+     *     AF(boardIds, portalIds, boardNames, connections, portals):
+     *         the boards connected to the server: the board named n, with ID i = boardIds.get(n), is connected
+     *         through connections.get(i) if that is not null, and publishes the portals whose IDs are set in
+     *         portals.get(i). The portal named p has ID portalIds.get(p), and boardNames.get(i) is the name
+     *         of the board with ID i.
+     *
+     * Rep Invariant:
+     *   - the IDs in boardIds are 0, 1, ..., boardIds.size()-1, and boardNames is their inverse
+     *   - the IDs in portalIds are 0, 1, ..., portalIds.size()-1
+     *   - connections and portals have the same length, which is at least boardIds.size()
+     *   - portals.get(i) is null or an empty set whenever connections.get(i) is null
+     *
+     * Safety from rep exposure:
+     *   - all fields are private; connections are shared with the server on purpose,
+     *     and the sets of portal IDs are never returned
+     *
+     * Thread Safety Argument:
+     *   - register() and unregister() change the table while holding its lock, so changes never race
+     *     with each other, and the arrays are only replaced by larger copies while holding it, so no change is lost
+     *   - connection() and hasPortal() take no lock: boardIds and portalIds are concurrent maps, the arrays
+     *     are volatile, and their elements are read and written atomically. Each set of portal IDs is built
+     *     before it is stored in the array and never changed afterwards, so it is safely published.
+     *     A lookup that races with a board connecting or disconnecting sees the board either before or after.
+     *   - boardNames is only used while holding the lock
+     */
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert boardIds.size() == boardNames.size();
+        assert connections.length() == portals.length() && connections.length() >= boardIds.size();
+        for (int i = 0; i < boardNames.size(); i++) {
+            assert boardIds.get(boardNames.get(i)) == i;
+        }
+    }
+
+    /**
+     * Connects a board, replacing any earlier connection of a board with the same name.
+     * @param board name of the board
+     * @param portalNames names of the portals on the board
+     * @param connection connection to the board
+     */
+    synchronized void register(final String board, final List<String> portalNames, final ServerConnection connection) {
+        final int id = intern(board);
+        final BitSet published = new BitSet();
+        for (String portal : portalNames) {
+            published.set(portalIds.computeIfAbsent(portal, name -> portalIds.size()));
+        }
+        portals.set(id, published);
+        connections.set(id, connection);
+        checkRep();
+    }
+
+    /**
+     * Disconnects a board, unless another board with the same name has connected since.
+     * @param board name of the board
+     * @param connection connection to the board that disconnected
+     * @return true if the board was disconnected
+     */
+    synchronized boolean unregister(final String board, final ServerConnection connection) {
+        final Integer id = boardIds.get(board);
+        if (id == null || !connections.compareAndSet(id, connection, null)) return false;
+        portals.set(id, null);
+        checkRep();
+        return true;
+    }
+
+    /**
+     * @param board name of a board
+     * @return the connection to the board, or empty if no board with that name is connected
+     */
+    Optional<ServerConnection> connection(final String board) {
+        final Integer id = boardIds.get(board);
+        return id == null ? Optional.empty() : Optional.ofNullable(connections.get(id));
+    }
+
+    /**
+     * @param board name of a board
+     * @param portal name of a portal
+     * @return true if a board with that name is connected and published a portal with that name
+     */
+    boolean hasPortal(final String board, final String portal) {
+        final Integer boardId = boardIds.get(board);
+        final Integer portalId = portalIds.get(portal);
+        if (boardId == null || portalId == null) return false;
+        final BitSet published = portals.get(boardId);
+        return published != null && published.get(portalId);
+    }
+
+    /**
+     * @return the connections to every connected board
+     */
+    synchronized List<ServerConnection> connections() {
+        final List<ServerConnection> connected = new ArrayList<>();
+        for (int i = 0; i < boardNames.size(); i++) {
+            final ServerConnection connection = connections.get(i);
+            if (connection != null) connected.add(connection);
+        }
+        return connected;
+    }
+
+    /**
+     * @return the names of the connected boards, in the order they first connected
+     */
+    synchronized List<String> names() {
+        final List<String> connected = new ArrayList<>();
+        for (int i = 0; i < boardNames.size(); i++) {
+            if (connections.get(i) != null) connected.add(boardNames.get(i));
+        }
+        return Collections.unmodifiableList(connected);
+    }
+
+    /*
+     * Returns the ID of a board name, giving it the next ID and making room for it if it is new.
+     * Must be called while holding the lock.
+     */
+    private int intern(final String board) {
+        final Integer known = boardIds.get(board);
+        if (known != null) return known;
+        final int id = boardNames.size();
+        if (id == connections.length()) grow();
+        boardNames.add(board);
+        boardIds.put(board, id);
+        return id;
+    }
+
+    /*
+     * Doubles the length of the arrays. Must be called while holding the lock.
+     */
+    private void grow() {
+        final int length = 2*connections.length();
+        final AtomicReferenceArray<ServerConnection> biggerConnections = new AtomicReferenceArray<>(length);
+        final AtomicReferenceArray<BitSet> biggerPortals = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < connections.length(); i++) {
+            biggerConnections.set(i, connections.get(i));
+            biggerPortals.set(i, portals.get(i));
+        }
+        // portals first, so a reader that sees the new connections also sees the new portals
+        portals = biggerPortals;
+        connections = biggerConnections;
+    }
+
+}
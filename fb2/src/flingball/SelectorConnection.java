@@ -0,0 +1,395 @@
+package flingball;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A mutable non-blocking connection between FlingballServer and one board.
+ *
+ * The server's selector thread does all reading and writing of the channel. Each line it reads
+ * becomes a task that runs on the server's worker pool; the tasks of one connection run one at a time,
+ * in the order their lines arrived. Lines sent to the board from any thread are queued as bytes and
+ * written by the selector thread when the channel can take them.
+ *
+ * The first byte a board sends chooses the encoding. A board that opens with BinaryCodec's handshake
+ * sends binary frames, starting with a REGISTER message; any other board sends lines of text, the first two
+ * of which are its name and its portals (see TextCodec). The connection registers the board with the server
+ * once it has received its REGISTER message, and every later message is a request.
+ */
+class SelectorConnection implements ServerConnection {
+
+    private static final int READ_BUFFER_BYTES = 4096;
+    private static final int INITIAL_LINE_BYTES = 128;
+    // most buffers written by one gathering write
+    private static final int GATHER_BUFFERS = 16;
+
+    private final FlingballServer server;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final Executor workers;
+
+    // confined to the selector thread
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+    private byte[] line = new byte[INITIAL_LINE_BYTES];
+    private int lineLength = 0;
+    private boolean text = false;
+    private Optional<String> name = Optional.empty();
+    private boolean registered = false;
+    private final ByteBuffer[] gather = new ByteBuffer[GATHER_BUFFERS];
+    
+    // set by the selector thread during the handshake, before any message is sent to the board
+    private volatile Optional<BinaryCodec> binary = Optional.empty();
+
+    // shared between threads
+    private final Queue<Outbound> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /*
+     * Abstraction function:
+     *     AF(server, channel, key, workers, readBuffer, line, lineLength, text, name, registered, gather, binary,
+     *        outbound, writeRequested, tasks, draining, closed):
+     *         the connection of ``server`` to the board at the other end of ``channel``, which is
+     *         registered with the server's selector under ``key``. The board speaks text if ``text``,
+     *         binary frames encoded by binary.get() if binary.isPresent(), and has not chosen yet otherwise.
+     *         readBuffer holds bytes received but not yet decoded, and the bytes line[0..lineLength-1] are
+     *         the start of a line of text that has not been fully received yet. The board is called name.get()
+     *         if it has sent its name, and has been registered with the server if ``registered``.
+     *         ``outbound`` holds the bytes queued for the board that have not been written yet, in order,
+     *         each with the time the request it replies to was received, if it is a reply,
+     *         and ``tasks`` the work for the lines received from the board that has not run yet, in order.
+     *         The connection is closed if closed.get(). gather is scratch space for write().
+     *
+     * Rep Invariant:
+     *   - 0 <= lineLength <= line.length
+     *   - not both text and binary.isPresent()
+     *   - registered implies name.isPresent()
+     *   - key.channel() == channel and key.attachment() == this
+     *
+     * Safety from rep exposure:
+     *   - all fields are private, and the buffers and queues are never returned
+     *   - server, channel and workers are shared with the server that owns this connection on purpose
+     *
+     * Thread Safety Argument:
+     *   - readBuffer, line, lineLength, text, name, registered and gather are confined to the selector thread,
+     *     which is the only caller of read(), write(), enableWrite() and disconnected()
+     *   - ``binary`` is volatile, and only set by the selector thread before the board is registered,
+     *     so before any other thread can find the connection to send to it
+     *   - send() may be called from any thread: it only adds to ``outbound``, a thread-safe queue,
+     *     and sets ``writeRequested``, an atomic flag, so that exactly one write request is pending
+     *     while bytes are waiting. Binary frames are encoded and queued while holding the codec's lock,
+     *     so they are queued in the order their names were defined. Only the selector thread takes bytes
+     *     off ``outbound`` and writes them, so messages are never interleaved on the wire.
+     *   - ``tasks`` is a thread-safe queue, and ``draining`` makes sure at most one worker runs the
+     *     tasks at a time, so the requests of one board are handled one at a time and in order
+     *   - ``closed`` is atomic, so the channel is closed once
+     */
+
+    /**
+     * Makes a connection for a channel that the server has just accepted and registers it with the
+     * server's selector for reading. Must be called by the selector thread.
+     * @param server server the board is connected to
+     * @param selector server's selector
+     * @param channel non-blocking channel connected to the board
+     * @param workers pool that runs the tasks for the lines received from the board
+     * @throws IOException if the channel cannot be registered
+     */
+    SelectorConnection(final FlingballServer server, final Selector selector, final SocketChannel channel,
+                       final Executor workers) throws IOException {
+        this.server = server;
+        this.channel = channel;
+        this.workers = workers;
+        this.key = channel.register(selector, SelectionKey.OP_READ, this);
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert server != null && channel != null && key != null && workers != null;
+        assert 0 <= lineLength && lineLength <= line.length;
+        assert !(text && binary.isPresent());
+        assert !registered || name.isPresent();
+    }
+
+    @Override
+    public void send(final WireMessage message) {
+        send(message, OptionalLong.empty());
+    }
+
+    @Override
+    public void forward(final WireMessage message, final long receivedNanos) {
+        send(message, OptionalLong.of(receivedNanos));
+    }
+
+    /*
+     * Encodes a message and queues it, with the time its request was received if it is a reply.
+     */
+    private void send(final WireMessage message, final OptionalLong receivedNanos) {
+        if (closed.get()) return;
+        server.metrics().sent(message);
+        final Optional<BinaryCodec> codec = binary;
+        if (codec.isPresent()) {
+            synchronized (codec.get()) {
+                queue(codec.get().encode(message), receivedNanos);
+            }
+        } else {
+            queue((TextCodec.encode(message) + "\n").getBytes(StandardCharsets.UTF_8), receivedNanos);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        while (outbound.poll() != null) server.metrics().queuedWrites(-1);
+        try {
+            channel.close(); // also cancels the key
+        } catch (IOException e) {
+            // the connection is gone either way
+        }
+    }
+
+    /**
+     * Reads whatever the board has sent and schedules a task for each complete message.
+     * Must be called by the selector thread when the channel is readable.
+     * @return false if the board has closed the connection
+     * @throws IOException if the channel cannot be read, or the board sent a malformed binary frame
+     */
+    boolean read() throws IOException {
+        final int read = channel.read(readBuffer);
+        if (read < 0) return false;
+        server.metrics().bytesIn(read);
+        readBuffer.flip();
+        if (!text && !binary.isPresent()) handshake();
+        if (text) {
+            readLines();
+        } else if (binary.isPresent()) {
+            readFrames(binary.get());
+        }
+        readBuffer.compact();
+        checkRep();
+        return true;
+    }
+
+    /**
+     * Writes as many of the queued bytes as the channel takes, and stops asking the selector
+     * for writability once they have all been written.
+     * Must be called by the selector thread when the channel is writable.
+     * @throws IOException if the channel cannot be written
+     */
+    void write() throws IOException {
+        while (!outbound.isEmpty()) {
+            // write the messages queued so far with one system call rather than one each
+            int count = 0;
+            for (Iterator<Outbound> queued = outbound.iterator(); queued.hasNext() && count < gather.length; ) {
+                gather[count++] = queued.next().bytes;
+            }
+            server.metrics().bytesOut(channel.write(gather, 0, count));
+            final boolean full = gather[count - 1].hasRemaining();
+            for (int i = 0; i < count; i++) {
+                // the buffers are written in order, so the ones written whole are at the head of the queue
+                if (!gather[i].hasRemaining()) written(outbound.poll());
+                gather[i] = null;
+            }
+            if (full) return; // the socket's buffer is full; wait until it is writable again
+        }
+        key.interestOps(SelectionKey.OP_READ);
+        writeRequested.set(false);
+        // a line may have been queued after the queue was seen empty but before the flag was cleared
+        if (!outbound.isEmpty() && writeRequested.compareAndSet(false, true)) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Asks the selector to report when the channel is writable.
+     * Must be called by the selector thread.
+     */
+    void enableWrite() {
+        if (key.isValid()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Closes the connection after the board has closed it or it has failed, and unregisters the board
+     * from the server once the requests it sent before have been handled.
+     * Must be called by the selector thread.
+     */
+    void disconnected() {
+        close();
+        if (registered) {
+            final String board = name.get();
+            schedule(() -> server.unregister(board, this));
+        }
+    }
+
+    /*
+     * Chooses the encoding from the first bytes the board sent, once there are enough of them.
+     */
+    private void handshake() {
+        if (!readBuffer.hasRemaining()) return;
+        if (readBuffer.get(readBuffer.position()) != BinaryCodec.MAGIC) {
+            text = true;
+            return;
+        }
+        if (readBuffer.remaining() < 2) return;
+        readBuffer.get();
+        final byte version = readBuffer.get();
+        if (version == BinaryCodec.VERSION) {
+            binary = Optional.of(new BinaryCodec());
+            queue(new byte[] {BinaryCodec.MAGIC, BinaryCodec.VERSION}, OptionalLong.empty());
+        } else {
+            // the board falls back to text on a new connection, so ignore anything else it sends on this one
+            queue(new byte[] {BinaryCodec.MAGIC, 0}, OptionalLong.empty());
+            readBuffer.position(readBuffer.limit());
+        }
+    }
+
+    /*
+     * Decodes every complete line in the read buffer.
+     */
+    private void readLines() {
+        while (readBuffer.hasRemaining()) {
+            final byte b = readBuffer.get();
+            if (b == '\n') {
+                int end = lineLength;
+                if (end > 0 && line[end - 1] == '\r') end--;
+                receivedLine(new String(line, 0, end, StandardCharsets.UTF_8));
+                lineLength = 0;
+            } else {
+                if (lineLength == line.length) line = Arrays.copyOf(line, 2*line.length);
+                line[lineLength++] = b;
+            }
+        }
+    }
+
+    /*
+     * Handles a complete line received from the board.
+     */
+    private void receivedLine(final String text) {
+        if (!name.isPresent()) {
+            name = Optional.of(text);
+            return;
+        }
+        try {
+            received(registered ? TextCodec.decode(text) : TextCodec.decodeRegister(name.get(), text));
+        } catch (IllegalArgumentException e) {
+            // complain about ill-formatted request
+            Log.warn("malformedRequest", "board", name.get(), "line", text);
+            schedule(() -> send(WireMessage.error()));
+        }
+    }
+
+    /*
+     * Decodes every complete frame in the read buffer, leaving a partial frame at its end,
+     * and makes room in the buffer for a frame too long to fit.
+     */
+    private void readFrames(final BinaryCodec codec) throws IOException {
+        while (readBuffer.remaining() >= BinaryCodec.LENGTH_BYTES) {
+            final int length = readBuffer.getInt(readBuffer.position());
+            if (length <= 0 || length > BinaryCodec.MAX_FRAME_BYTES) throw new IOException("bad frame length " + length);
+            if (readBuffer.remaining() < BinaryCodec.LENGTH_BYTES + length) {
+                if (readBuffer.capacity() < BinaryCodec.LENGTH_BYTES + length) {
+                    final ByteBuffer larger = ByteBuffer.allocate(BinaryCodec.LENGTH_BYTES + length);
+                    larger.put(readBuffer);
+                    larger.flip();
+                    readBuffer = larger;
+                }
+                return;
+            }
+            readBuffer.position(readBuffer.position() + BinaryCodec.LENGTH_BYTES);
+            final ByteBuffer frame = readBuffer.slice();
+            frame.limit(length);
+            readBuffer.position(readBuffer.position() + length);
+            final Optional<WireMessage> message = codec.decode(frame);
+            try {
+                if (message.isPresent()) received(message.get());
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /*
+     * Handles a complete message received from the board.
+     */
+    private void received(final WireMessage message) throws IllegalArgumentException {
+        final long receivedNanos = System.nanoTime(); // so that latency includes the wait for a worker
+        if (!registered) {
+            if (message.getType() != WireMessage.Type.REGISTER) throw new IllegalArgumentException("expected REGISTER");
+            registered = true;
+            name = Optional.of(message.getBoard());
+            schedule(() -> server.register(message, this));
+        } else {
+            schedule(() -> server.handleRequest(this, message, receivedNanos));
+        }
+    }
+
+    /*
+     * Queues bytes to be written to the board.
+     */
+    private void queue(final byte[] bytes, final OptionalLong receivedNanos) {
+        outbound.add(new Outbound(ByteBuffer.wrap(bytes), receivedNanos));
+        server.metrics().queuedWrites(1);
+        if (writeRequested.compareAndSet(false, true)) server.requestWrite(this);
+    }
+
+    /*
+     * Records that queued bytes have been written whole.
+     */
+    private void written(final Outbound written) {
+        if (written == null) return; // the connection was closed meanwhile, which already counted it
+        server.metrics().queuedWrites(-1);
+        if (written.receivedNanos.isPresent()) server.metrics().forwarded(written.receivedNanos.getAsLong());
+    }
+
+    /*
+     * Queues a task to run on the worker pool after the tasks queued before it.
+     */
+    private void schedule(final Runnable task) {
+        tasks.add(task);
+        server.metrics().queuedTasks(1);
+        if (draining.compareAndSet(false, true)) workers.execute(this::drain);
+    }
+
+    /*
+     * Runs queued tasks until there are none left. At most one worker runs this at a time.
+     */
+    private void drain() {
+        while (true) {
+            for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                server.metrics().queuedTasks(-1);
+                task.run();
+            }
+            draining.set(false);
+            // a task may have been queued after the queue was seen empty but before the flag was cleared
+            if (tasks.isEmpty() || !draining.compareAndSet(false, true)) return;
+        }
+    }
+
+    /*
+     * Bytes queued for the board, and when the request they reply to was received, if they are a reply.
+     */
+    private static class Outbound {
+        private final ByteBuffer bytes;
+        private final OptionalLong receivedNanos;
+
+        private Outbound(final ByteBuffer bytes, final OptionalLong receivedNanos) {
+            this.bytes = bytes;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+}
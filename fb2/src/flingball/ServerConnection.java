@@ -0,0 +1,31 @@
+package flingball;
+
+/**
+ * The server's end of the connection to one board.
+ * FlingballServer routes requests between boards through this interface, independently
+ * of how the connection reads and writes its socket.
+ */
+interface ServerConnection {
+
+    /**
+     * Sends a message to the board, in the encoding the board chose when it connected.
+     * Messages are sent in the order they are passed to send(), and messages sent by different
+     * threads never interleave on the wire. Does nothing if the connection is closed.
+     * @param message message to send, of a type that the server sends
+     */
+    void send(WireMessage message);
+
+    /**
+     * Sends a message in reply to a request, as send() does, and records in the server's metrics how long it
+     * took from receiving the request until the message was written to the board's socket.
+     * @param message message to send, of a type that the server sends
+     * @param receivedNanos System.nanoTime() when the server received the request, before it waited to be handled
+     */
+    void forward(WireMessage message, long receivedNanos);
+
+    /**
+     * Closes the connection. Messages that have not been written yet are dropped.
+     */
+    void close();
+
+}
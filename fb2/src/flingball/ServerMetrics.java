@@ -0,0 +1,172 @@
+package flingball;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mutable counters that FlingballServer and its connections update as they route messages:
+ * messages received and sent by type, bytes read and written, messages queued for writing and tasks
+ * queued for the worker pool, and the latency from receiving a request to writing the message it forwarded
+ * to the destination's socket.
+ *
+ * Every counter is a LongAdder, so threads that update them at the same time do not contend,
+ * and updating one never allocates.
+ */
+class ServerMetrics {
+
+    private static final WireMessage.Type[] TYPES = WireMessage.Type.values();
+    private static final double NANOS_PER_MICRO = 1000;
+
+    private final LongAdder[] received = adders(TYPES.length);
+    private final LongAdder[] sent = adders(TYPES.length);
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder queuedWrites = new LongAdder();
+    private final LongAdder queuedTasks = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /*
+     * Abstraction function:
+     *     AF(received, sent, bytesIn, bytesOut, queuedWrites, queuedTasks, latency):
+     *         the server has received received[t] messages of type TYPES[t] and sent sent[t] of them,
+     *         counting the messages inside a BATCH as well as the BATCH itself; it has read bytesIn bytes
+     *         and written bytesOut bytes; queuedWrites messages are waiting to be written and queuedTasks
+     *         tasks, mostly requests, are waiting for the worker pool; and ``latency`` holds the time from receiving each request
+     *         to writing each message forwarded because of it
+     *
+     * Rep Invariant:
+     *   - received and sent have one adder per message type
+     *
+     * Safety from rep exposure:
+     *   - all fields are private and never returned; queries return numbers and strings
+     *
+     * Thread Safety Argument:
+     *   - every field is a thread-safe counter that is never reassigned. A snapshot taken while the server
+     *     is busy reads the counters one at a time, so it is not one consistent moment, but each number in it
+     *     was true at some point during the snapshot.
+     */
+
+    private static LongAdder[] adders(final int count) {
+        final LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    /**
+     * Counts a message received from a board, and the messages inside it if it is a BATCH.
+     * @param message message received
+     */
+    void received(final WireMessage message) {
+        count(received, message);
+    }
+
+    /**
+     * Counts a message sent to a board, and the messages inside it if it is a BATCH.
+     * @param message message sent
+     */
+    void sent(final WireMessage message) {
+        count(sent, message);
+    }
+
+    private static void count(final LongAdder[] counts, final WireMessage message) {
+        counts[message.getType().ordinal()].increment();
+        for (WireMessage each : message.getMessages()) counts[each.getType().ordinal()].increment();
+    }
+
+    /** @param bytes number of bytes read from a board's socket */
+    void bytesIn(final long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    /** @param bytes number of bytes written to a board's socket */
+    void bytesOut(final long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /** @param change change in the number of messages waiting to be written to boards' sockets */
+    void queuedWrites(final long change) {
+        queuedWrites.add(change);
+    }
+
+    /** @param change change in the number of tasks waiting for the worker pool */
+    void queuedTasks(final long change) {
+        queuedTasks.add(change);
+    }
+
+    /**
+     * Records the latency of a forwarded message.
+     * @param receivedNanos System.nanoTime() when the server received the request that caused the message
+     */
+    void forwarded(final long receivedNanos) {
+        latency.record(System.nanoTime() - receivedNanos);
+    }
+
+    /**
+     * @param type type of message
+     * @return number of messages of that type received, counting those inside batches
+     */
+    long received(final WireMessage.Type type) {
+        return received[type.ordinal()].sum();
+    }
+
+    /**
+     * @param type type of message
+     * @return number of messages of that type sent, counting those inside batches
+     */
+    long sent(final WireMessage.Type type) {
+        return sent[type.ordinal()].sum();
+    }
+
+    /** @return number of bytes read from boards' sockets */
+    long bytesIn() {
+        return bytesIn.sum();
+    }
+
+    /** @return number of bytes written to boards' sockets */
+    long bytesOut() {
+        return bytesOut.sum();
+    }
+
+    /** @return number of messages forwarded whose latency has been recorded */
+    long forwardedCount() {
+        return latency.count();
+    }
+
+    /**
+     * @return the metrics as one line of JSON, with latencies in microseconds, for example
+     *   {"received":{"BALL_THROUGH_WALL":3,...},"sent":{...},"bytesIn":512,"bytesOut":640,"queuedWrites":0,
+     *    "queuedTasks":0,"latencyMicros":{"count":3,"p50":41.0,"p90":55.0,"p99":55.0,"p999":55.0,"max":55.3}}
+     */
+    String toJson() {
+        final StringBuilder json = new StringBuilder("{");
+        json.append("\"received\":");
+        appendCounts(json, received);
+        json.append(",\"sent\":");
+        appendCounts(json, sent);
+        json.append(",\"bytesIn\":").append(bytesIn.sum());
+        json.append(",\"bytesOut\":").append(bytesOut.sum());
+        json.append(",\"queuedWrites\":").append(queuedWrites.sum());
+        json.append(",\"queuedTasks\":").append(queuedTasks.sum());
+        json.append(",\"latencyMicros\":{\"count\":").append(latency.count());
+        json.append(",\"p50\":").append(latency.percentile(0.5) / NANOS_PER_MICRO);
+        json.append(",\"p90\":").append(latency.percentile(0.9) / NANOS_PER_MICRO);
+        json.append(",\"p99\":").append(latency.percentile(0.99) / NANOS_PER_MICRO);
+        json.append(",\"p999\":").append(latency.percentile(0.999) / NANOS_PER_MICRO);
+        json.append(",\"max\":").append(latency.max() / NANOS_PER_MICRO);
+        return json.append("}}").toString();
+    }
+
+    private static void appendCounts(final StringBuilder json, final LongAdder[] counts) {
+        json.append('{');
+        for (int i = 0; i < TYPES.length; i++) {
+            if (i > 0) json.append(',');
+            json.append('"').append(TYPES[i]).append("\":").append(counts[i].sum());
+        }
+        json.append('}');
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+}
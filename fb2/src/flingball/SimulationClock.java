@@ -0,0 +1,91 @@
+package flingball;
+
+/**
+ * A mutable accumulator-based clock that converts the passing of real time
+ * into a whole number of fixed-length simulation steps.
+ */
+public class SimulationClock {
+
+    /** Maximum number of steps handed out by a single call to advance(). */
+    public static final int MAX_STEPS_PER_ADVANCE = 250;
+
+    private final long stepNanos;
+    private long previousTime;
+    private long accumulator;
+
+    /*
+     * Abstraction function:
+     *     AF(stepNanos, previousTime, accumulator):
+     *         a clock for a simulation that advances in steps of ``stepNanos`` nanoseconds,
+     *         which last observed the real time ``previousTime`` (in nanoseconds),
+     *         and which has ``accumulator`` nanoseconds of real time that have passed
+     *         but not yet been simulated.
+     *
+     * Rep Invariant:
+     *   - stepNanos > 0
+     *   - 0 <= accumulator < stepNanos, except during advance()
+     *
+     * Safety from rep exposure:
+     *   - all fields are private primitives and are never returned by reference
+     *
+     * Thread Safety Argument:
+     *   - SimulationClock is not threadsafe; it is confined to the thread running the simulation
+     */
+
+    /**
+     * Creates a new clock.
+     * @param stepNanos length of one simulation step in nanoseconds, requires stepNanos > 0
+     * @param startTime real time in nanoseconds at which the simulation starts
+     */
+    public SimulationClock(final long stepNanos, final long startTime) {
+        this.stepNanos = stepNanos;
+        this.previousTime = startTime;
+        this.accumulator = 0;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert stepNanos > 0;
+        assert 0 <= accumulator && accumulator < stepNanos;
+    }
+
+    /**
+     * Records that real time has passed and hands out the simulation steps that are now due.
+     * If the simulation has fallen more than MAX_STEPS_PER_ADVANCE steps behind,
+     * the excess time is dropped rather than simulated.
+     * @param now current real time in nanoseconds, requires now to be at least
+     *            the time given to the previous call
+     * @return number of whole steps that should be simulated now
+     */
+    public int advance(final long now) {
+        accumulator += Math.max(0, now - previousTime);
+        previousTime = now;
+        long steps = accumulator / stepNanos;
+        accumulator -= steps * stepNanos;
+        if (steps > MAX_STEPS_PER_ADVANCE) {
+            steps = MAX_STEPS_PER_ADVANCE;
+        }
+        checkRep();
+        return (int) steps;
+    }
+
+    /**
+     * @return fraction of a step, in [0, 1), that has passed in real time
+     *         since the last step handed out by advance()
+     */
+    public double getAlpha() {
+        return (double) accumulator / stepNanos;
+    }
+
+    /** @return nanoseconds of real time until the next step is due */
+    public long nanosUntilNextStep() {
+        return stepNanos - accumulator;
+    }
+
+    /** @return length of one simulation step in nanoseconds */
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+}
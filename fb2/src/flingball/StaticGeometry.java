@@ -0,0 +1,475 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import physics.Circle;
+import physics.LineSegment;
+import physics.Physics;
+import physics.Vect;
+
+/**
+ * An immutable, flattened copy of the geometry of a board that never moves: the four outer walls, and the
+ * sides and corners of its square, circle and triangle bumpers and its absorbers.
+ *
+ * Board compiles it once the board is loaded, and again after gadgets are added or removed. The line segments
+ * and circles of every wall and gadget are copied into contiguous arrays of coordinates, and each wall or
+ * gadget, called an owner, keeps the range of segments and circles that it owns. Testing a ball against an
+ * owner is then a loop over doubles, without calling the gadget or copying its lists, and without allocating
+ * unless the ball collides.
+ *
+ * Collision times are computed exactly as Physics.timeUntilWallCollision() and Physics.timeUntilCircleCollision()
+ * compute them in the physics library's default implementation, operation for operation, so they are equal to
+ * the last bit, and collisions are resolved exactly as the gadgets' and board's resolveCollision() resolve them.
+ *
+ * Each gadget also keeps its bounding box, and resolving a collision returns at once when the box the ball
+ * sweeps within Gadget.COLLISION_WINDOW misses it, before computing any time of impact.
+ *
+ * Predicting the time until a ball collides with a range of geometry is one pass over its segments and one
+ * over its circles, each keeping the least time of impact. The pass reads the coordinate arrays in order and
+ * allocates nothing, which is what makes it faster than asking the gadgets; see PhysicsBenchmark.
+ */
+class StaticGeometry {
+
+    private static final double MILLIS_PER_SECOND = 1000;
+
+    private final double[] x1;
+    private final double[] y1;
+    private final double[] x2;
+    private final double[] y2;
+    private final LineSegment[] segments;
+    private final double[] centerX;
+    private final double[] centerY;
+    private final double[] radius;
+    private final Vect[] centers;
+    private final int[] firstSegment;
+    private final int[] firstCircle;
+    private final Gadget[] owners;
+    private final double[] reflectionCoeff;
+    private final double[] boxX;
+    private final double[] boxY;
+    private final double[] boxWidth;
+    private final double[] boxHeight;
+    private final Wall[] walls;
+    private final Map<Gadget, Integer> ownerIds = new IdentityHashMap<>();
+
+    /*
+     * Abstraction function:
+     *     AF(x1, y1, x2, y2, segments, centerX, centerY, radius, centers, firstSegment, firstCircle, owners,
+     *        reflectionCoeff, boxX, boxY, boxWidth, boxHeight, walls, ownerIds):
+     *         the static geometry of a board with walls.length outer walls and owners.length - walls.length
+     *         static gadgets. Segment i runs from (x1[i], y1[i]) to (x2[i], y2[i]) and is the line segment
+     *         segments[i]; circle i has center (centerX[i], centerY[i]) = centers[i] and radius radius[i].
+     *         Owner k owns segments firstSegment[k] ... firstSegment[k+1]-1 and circles
+     *         firstCircle[k] ... firstCircle[k+1]-1. Owners 0 ... walls.length-1 are the walls, in order,
+     *         and the rest are owners[k], which reflects balls with coefficient reflectionCoeff[k]
+     *         unless it is an absorber, and whose bounding box has top left corner (boxX[k], boxY[k]),
+ *         width boxWidth[k] and height boxHeight[k]. ownerIds maps each static gadget to its owner.
+     *
+     * Rep Invariant:
+     *   - the coordinate arrays of segments, and of circles, have the same length as segments and centers,
+     *     and agree with them
+     *   - firstSegment and firstCircle have length owners.length + 1, start at 0, never decrease,
+     *     and end at the number of segments and circles
+     *   - owners[k] is null exactly for k < walls.length, and each wall owns exactly one segment and no circles
+ *   - ownerIds.get(owners[k]) == k for every k >= walls.length
+ *   - the bounding box of owner k >= walls.length contains its segments and circles
+     *
+     * Safety from rep exposure:
+     *   - all fields are private and final, and the arrays and map are never shared with clients;
+     *     walls and gadgets are shared on purpose, since they are the owners that are reported
+     *
+     * Thread Safety Argument:
+     *   - the geometry is never changed after it is built, so it may be queried from any thread,
+     *     but resolveCollision() changes the ball and triggers the gadget, so it is confined
+     *     to the thread that steps the board, like the board itself
+     */
+
+    /**
+     * @param gadget gadget of a board
+     * @return true if the gadget never moves and collisions with it are resolved by this geometry
+     */
+    static boolean compiles(final Gadget gadget) {
+        return gadget instanceof SquareBumper || gadget instanceof CircleBumper
+               || gadget instanceof TriangleBumper || gadget instanceof Absorber;
+    }
+
+    /**
+     * Compiles the static geometry of a board.
+     * @param boardWalls outer walls of the board, in the order the board tests them
+     * @param gadgets gadgets of the board; those that compiles() rejects are left out
+     */
+    StaticGeometry(final Collection<Wall> boardWalls, final Collection<Gadget> gadgets) {
+        final List<LineSegment> allSegments = new ArrayList<>();
+        final List<Circle> allCircles = new ArrayList<>();
+        for (Wall wall : boardWalls) allSegments.add(wall.getLineSegment());
+        this.walls = boardWalls.toArray(new Wall[0]);
+
+        final int ownerCount = walls.length + (int) gadgets.stream().filter(StaticGeometry::compiles).count();
+        this.owners = new Gadget[ownerCount];
+        this.reflectionCoeff = new double[ownerCount];
+        this.boxX = new double[ownerCount];
+        this.boxY = new double[ownerCount];
+        this.boxWidth = new double[ownerCount];
+        this.boxHeight = new double[ownerCount];
+        this.firstSegment = new int[ownerCount + 1];
+        this.firstCircle = new int[ownerCount + 1];
+        for (int k = 0; k <= walls.length; k++) firstSegment[k] = k;
+        int k = walls.length;
+        for (Gadget gadget : gadgets) {
+            if (!compiles(gadget)) continue;
+            owners[k] = gadget;
+            reflectionCoeff[k] = gadget instanceof Bumper ? ((Bumper) gadget).getReflectionCoeff() : 0;
+            boxX[k] = gadget.getPosition().x();
+            boxY[k] = gadget.getPosition().y();
+            boxWidth[k] = gadget.getWidth();
+            boxHeight[k] = gadget.getHeight();
+            ownerIds.put(gadget, k);
+            allSegments.addAll(gadget.getLineSegments());
+            allCircles.addAll(gadget.getCircles());
+            k++;
+            firstSegment[k] = allSegments.size();
+            firstCircle[k] = allCircles.size();
+        }
+
+        this.segments = allSegments.toArray(new LineSegment[0]);
+        this.x1 = new double[segments.length];
+        this.y1 = new double[segments.length];
+        this.x2 = new double[segments.length];
+        this.y2 = new double[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            x1[i] = segments[i].p1().x();
+            y1[i] = segments[i].p1().y();
+            x2[i] = segments[i].p2().x();
+            y2[i] = segments[i].p2().y();
+        }
+        this.centers = new Vect[allCircles.size()];
+        this.centerX = new double[centers.length];
+        this.centerY = new double[centers.length];
+        this.radius = new double[centers.length];
+        for (int i = 0; i < centers.length; i++) {
+            centers[i] = allCircles.get(i).getCenter();
+            centerX[i] = centers[i].x();
+            centerY[i] = centers[i].y();
+            radius[i] = allCircles.get(i).getRadius();
+        }
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        if (!RepChecks.enabled()) return;
+        assert x1.length == segments.length && y1.length == segments.length;
+        assert x2.length == segments.length && y2.length == segments.length;
+        assert centerX.length == centers.length && centerY.length == centers.length;
+        assert radius.length == centers.length;
+        assert firstSegment.length == owners.length + 1 && firstCircle.length == owners.length + 1;
+        assert firstSegment[0] == 0 && firstSegment[owners.length] == segments.length;
+        assert firstCircle[0] == 0 && firstCircle[owners.length] == centers.length;
+        for (int k = 0; k < owners.length; k++) {
+            assert firstSegment[k] <= firstSegment[k+1] && firstCircle[k] <= firstCircle[k+1];
+            assert (owners[k] == null) == (k < walls.length);
+            assert k < walls.length ? firstSegment[k+1] - firstSegment[k] == 1 && firstCircle[k+1] == 0
+                                    : ownerIds.get(owners[k]) == k;
+            if (k < walls.length) continue;
+            for (int i = firstSegment[k]; i < firstSegment[k+1]; i++) {
+                assert inBox(k, x1[i], y1[i], 0) && inBox(k, x2[i], y2[i], 0);
+            }
+            for (int i = firstCircle[k]; i < firstCircle[k+1]; i++) {
+                assert inBox(k, centerX[i], centerY[i], radius[i]);
+            }
+        }
+    }
+
+    /*
+     * Returns true if the bounding box of owner k contains the square of half-side ``half`` centered on (x, y),
+     * allowing for rounding.
+     */
+    private boolean inBox(final int k, final double x, final double y, final double half) {
+        return x - half >= boxX[k] - Gadget.BOX_MARGIN && x + half <= boxX[k] + boxWidth[k] + Gadget.BOX_MARGIN
+               && y - half >= boxY[k] - Gadget.BOX_MARGIN && y + half <= boxY[k] + boxHeight[k] + Gadget.BOX_MARGIN;
+    }
+
+    /** @return number of line segments, including the walls */
+    int segmentCount() {
+        return segments.length;
+    }
+
+    /** @return number of circles */
+    int circleCount() {
+        return centers.length;
+    }
+
+    /** @return number of gadgets compiled, not counting the walls */
+    int gadgetCount() {
+        return owners.length - walls.length;
+    }
+
+    /**
+     * @param gadget gadget of the board
+     * @return the owner of the gadget's geometry, or -1 if the gadget was not compiled
+     */
+    int owner(final Gadget gadget) {
+        final Integer owner = ownerIds.get(gadget);
+        return owner == null ? -1 : owner;
+    }
+
+    /**
+     * @param owner owner of some geometry, requires owner(gadget) == owner for some gadget
+     * @return the gadget that owns that geometry
+     */
+    Gadget gadget(final int owner) {
+        return owners[owner];
+    }
+
+    /**
+     * Finds the outer wall a ball collides with within 1 ms, truncated to whole milliseconds, as
+     * Board.resolveCollision() does: the first wall with the least truncated collision time.
+     * @param ball ball of the Flingball game
+     * @return the wall, or null if the ball does not collide with a wall that soon
+     */
+    Wall collidingWall(final Ball ball) {
+        final double a = ball.getX();
+        final double b = ball.getY();
+        final double r = ball.getRadius();
+        final double va = ball.getVelocityX();
+        final double vb = ball.getVelocityY();
+        long mintime = Long.MAX_VALUE;
+        int colliding = -1;
+        for (int i = 0; i < walls.length; i++) {
+            final long collisionTime = (long) (timeUntilSegment(i, a, b, r, va, vb)*MILLIS_PER_SECOND);
+            if (collisionTime < mintime) {
+                mintime = collisionTime;
+                colliding = i;
+            }
+        }
+        return mintime <= 1 ? walls[colliding] : null;
+    }
+
+    /**
+     * Predicts when a ball will next collide with one of the outer walls, if it keeps moving at its current velocity.
+     * @param ball ball of the Flingball game
+     * @return time in seconds until the ball collides with an outer wall, or Double.POSITIVE_INFINITY if it never does
+     */
+    double timeUntilWallCollision(final Ball ball) {
+        return timeUntilCollision(0, walls.length, ball);
+    }
+
+    /**
+     * Predicts when a ball will next collide with a static gadget, exactly as the gadget's own
+     * timeUntilCollision() would.
+     * @param owner owner of the gadget's geometry, requires owner == owner(gadget) for a compiled gadget
+     * @param ball ball of the Flingball game
+     * @return time in seconds until the collision, or Double.POSITIVE_INFINITY if there is none
+     */
+    double timeUntilCollision(final int owner, final Ball ball) {
+        assert owner >= walls.length;
+        final Gadget gadget = owners[owner];
+        // a held ball, or a ball that has not yet left an absorber, cannot be captured
+        if (gadget instanceof Absorber && (ball.getAbsorbed() || ((Absorber) gadget).isLeaving(ball))) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return timeUntilCollision(owner, owner + 1, ball);
+    }
+
+    /*
+     * Returns the least time in seconds until a ball collides with the geometry of owners fromOwner ... toOwner-1.
+     */
+    private double timeUntilCollision(final int fromOwner, final int toOwner, final Ball ball) {
+        final double a = ball.getX();
+        final double b = ball.getY();
+        final double r = ball.getRadius();
+        final double va = ball.getVelocityX();
+        final double vb = ball.getVelocityY();
+        return Math.min(timeUntilSegments(firstSegment[fromOwner], firstSegment[toOwner], a, b, r, va, vb),
+                        timeUntilCircles(firstCircle[fromOwner], firstCircle[toOwner], a, b, r, va, vb));
+    }
+
+    /*
+     * Returns the least time in seconds until a ball at (a, b) with radius r and velocity (va, vb)
+     * collides with segments from ... to-1.
+     */
+    private double timeUntilSegments(final int from, final int to, final double a, final double b, final double r,
+                                     final double va, final double vb) {
+        double mintime = Double.POSITIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            mintime = Math.min(mintime, timeUntilSegment(i, a, b, r, va, vb));
+        }
+        return mintime;
+    }
+
+    /*
+     * Returns the least time in seconds until a ball at (a, b) with radius r and velocity (va, vb)
+     * collides with circles from ... to-1.
+     */
+    private double timeUntilCircles(final int from, final int to, final double a, final double b, final double r,
+                                    final double va, final double vb) {
+        double mintime = Double.POSITIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            mintime = Math.min(mintime, timeUntilCircle(i, a, b, r, va, vb));
+        }
+        return mintime;
+    }
+
+    /**
+     * @param x x coordinate of a point on the board
+     * @param y y coordinate of the point
+     * @return distance from the point to the nearest outer wall
+     */
+    double distanceToWalls(final double x, final double y) {
+        return distance(0, walls.length, x, y);
+    }
+
+    /**
+     * @param owner owner of the gadget's geometry, requires owner == owner(gadget) for a compiled gadget
+     * @param x x coordinate of a point on the board
+     * @param y y coordinate of the point
+     * @return distance from the point to the nearest side or corner of the gadget; negative if the point
+     *         is inside one of its circles
+     */
+    double distance(final int owner, final double x, final double y) {
+        assert owner >= walls.length;
+        return distance(owner, owner + 1, x, y);
+    }
+
+    /*
+     * Returns the distance from (x, y) to the nearest segment or circle of owners fromOwner ... toOwner-1.
+     */
+    private double distance(final int fromOwner, final int toOwner, final double x, final double y) {
+        double squared = Double.POSITIVE_INFINITY;
+        for (int i = firstSegment[fromOwner]; i < firstSegment[toOwner]; i++) {
+            final double width = x2[i] - x1[i];
+            final double height = y2[i] - y1[i];
+            final double lengthSquared = (width * width) + (height * height);
+            // fraction of the way along the segment of the point nearest to (x, y)
+            final double along = lengthSquared > 0
+                                 ? Math.min(Math.max(((x - x1[i])*width + (y - y1[i])*height) / lengthSquared, 0), 1)
+                                 : 0;
+            final double dx = x - (x1[i] + along*width);
+            final double dy = y - (y1[i] + along*height);
+            squared = Math.min(squared, dx*dx + dy*dy);
+        }
+        double nearest = Math.sqrt(squared);
+        for (int i = firstCircle[fromOwner]; i < firstCircle[toOwner]; i++) {
+            final double dx = x - centerX[i];
+            final double dy = y - centerY[i];
+            nearest = Math.min(nearest, Math.sqrt(dx*dx + dy*dy) - radius[i]);
+        }
+        return nearest;
+    }
+
+    /**
+     * Resolves a collision of a ball with a static gadget, exactly as the gadget's own resolveCollision() would.
+     * @param owner owner of the gadget's geometry, requires owner == owner(gadget) for a compiled gadget
+     * @param ball ball of the Flingball game
+     * @return true if the ball collides with the gadget
+     */
+    boolean resolveCollision(final int owner, final Ball ball) {
+        assert owner >= walls.length;
+        final Gadget gadget = owners[owner];
+        final boolean absorbing = gadget instanceof Absorber;
+        if (absorbing && ((Absorber) gadget).passThrough(ball)) return false;
+        if (!Gadget.sweptBoxOverlaps(ball, Gadget.COLLISION_WINDOW, boxX[owner], boxY[owner],
+                                     boxWidth[owner], boxHeight[owner])) return false;
+
+        final double a = ball.getX();
+        final double b = ball.getY();
+        final double r = ball.getRadius();
+        final double va = ball.getVelocityX();
+        final double vb = ball.getVelocityY();
+        long mintimeLine = Long.MAX_VALUE;
+        int nextCollidingLine = -1;
+        for (int i = firstSegment[owner]; i < firstSegment[owner+1]; i++) {
+            final long collisionTime = (long) (timeUntilSegment(i, a, b, r, va, vb)*MILLIS_PER_SECOND);
+            if (collisionTime < mintimeLine) {
+                mintimeLine = collisionTime;
+                nextCollidingLine = i;
+            }
+        }
+        long mintimeCircle = Long.MAX_VALUE;
+        int nextCollidingCircle = -1;
+        for (int i = firstCircle[owner]; i < firstCircle[owner+1]; i++) {
+            final long collisionTime = (long) (timeUntilCircle(i, a, b, r, va, vb)*MILLIS_PER_SECOND);
+            if (collisionTime < mintimeCircle) {
+                mintimeCircle = collisionTime;
+                nextCollidingCircle = i;
+            }
+        }
+
+        if (absorbing) {
+            if (mintimeLine > 1 && mintimeCircle > 1) return false;
+            ((Absorber) gadget).capture(ball);
+            return true;
+        }
+        if (mintimeLine <= mintimeCircle && mintimeLine <= 1) {
+            ball.setVelocity(Physics.reflectWall(segments[nextCollidingLine], ball.getVelocity(), reflectionCoeff[owner]));
+        } else if (mintimeLine > mintimeCircle && mintimeCircle <= 1) {
+            ball.setVelocity(Physics.reflectCircle(centers[nextCollidingCircle], ball.getPosition(), ball.getVelocity(),
+                                                   reflectionCoeff[owner]));
+        } else {
+            return false; // no collision
+        }
+        gadget.trigger(); // trigger upon collision
+        return true;
+    }
+
+    /*
+     * Returns the time in seconds until a ball at (a, b) with radius r and velocity (va, vb) collides with segment i,
+     * computed exactly as Physics.timeUntilWallCollision() does.
+     */
+    private double timeUntilSegment(final int i, final double a, final double b, final double r,
+                                    final double va, final double vb) {
+        final double width = x2[i] - x1[i];
+        final double height = y2[i] - y1[i];
+        final double f = (va * height) - (vb * width);
+        final double g = (a * height) - (b * width) + ((x2[i] * y1[i]) - (x1[i] * y2[i]));
+        final double h = (width * width) + (height * height);
+        final double collisionTime = minQuadraticSolution(f * f, 2.0 * f * g, (g * g) - (r * r * h));
+        if (Double.isNaN(collisionTime)) return Double.POSITIVE_INFINITY;
+
+        // the point of contact must lie within the segment
+        final double cX = a + (collisionTime * va);
+        final double cY = b + (collisionTime * vb);
+        final double minS = ((width * (cX - x1[i])) + (height * (cY - y1[i]))) / h;
+        if (!(0.0 <= minS && minS < 1.0)) return Double.POSITIVE_INFINITY;
+        if (collisionTime > 0) return collisionTime;
+        // the ball overlaps the segment: it collides now only if it is moving toward it
+        final double impactX = x1[i] + minS * width;
+        final double impactY = y1[i] + minS * height;
+        return va*(a - impactX) + vb*(b - impactY) >= 0 ? Double.POSITIVE_INFINITY : 0;
+    }
+
+    /*
+     * Returns the time in seconds until a ball at (a, b) with radius r and velocity (va, vb) collides with circle i,
+     * computed exactly as Physics.timeUntilCircleCollision() does.
+     */
+    private double timeUntilCircle(final int i, final double a, final double b, final double r,
+                                   final double va, final double vb) {
+        final double distance = radius[i] + r;
+        final double width = a - centerX[i];
+        final double height = b - centerY[i];
+        final double collisionTime = minQuadraticSolution((va * va) + (vb * vb),
+                                                          2.0 * ((va * width) + (vb * height)),
+                                                          (width * width) + (height * height) - (distance * distance));
+        if (Double.isNaN(collisionTime)) return Double.POSITIVE_INFINITY;
+        if (collisionTime > 0) return collisionTime;
+        // the ball overlaps the circle: it collides now only if it is moving toward it
+        return width*va + height*vb >= 0 ? Double.POSITIVE_INFINITY : 0;
+    }
+
+    /*
+     * Returns the lesser solution of a*x^2 + b*x + c = 0, or NaN if there is none,
+     * computed exactly as Physics.minQuadraticSolution() does.
+     */
+    private static double minQuadraticSolution(final double a, final double b, final double c) {
+        if (a == 0.0) return b == 0.0 ? Double.NaN : -c/b;
+        final double discriminant = (b * b) - (4.0 * a * c);
+        if (discriminant < 0.0) return Double.NaN;
+        final double sqrt = Math.sqrt(discriminant);
+        return a > 0 ? (-b - sqrt) / (2.0 * a) : (-b + sqrt) / (2.0 * a);
+    }
+
+}
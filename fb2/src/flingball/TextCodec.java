@@ -0,0 +1,154 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The original line-based text encoding of WireMessages, one message per line
+ * (REGISTER takes two lines: the board's name, then its portals).
+ *
+ * Lines have the forms listed in FlingballServer and BoardClient, for example
+ *   ballThroughWall newBoardName=NAME wallOrientation=SIDE name=BALL x=X y=Y xVelocity=VX yVelocity=VY
+ *
+ * A BATCH is sent as the lines of its messages, so text boards and servers never see one.
+ *
+ * Boards and servers that do not negotiate the binary encoding (see BinaryCodec) use this one.
+ */
+class TextCodec {
+
+    private TextCodec() {
+        // not instantiable
+    }
+
+    /**
+     * @param message message to encode
+     * @return the message's text, without a final line break; a REGISTER message is two lines
+     *         separated by a line break, and a BATCH is the lines of its messages
+     */
+    static String encode(final WireMessage message) {
+        switch (message.getType()) {
+        case REGISTER:
+            return message.getBoard() + "\n" + portalsLine(message.getPortals());
+        case BALL_THROUGH_WALL:
+            return "ballThroughWall newBoardName=" + message.getBoard() + " wallOrientation=" + message.getSide()
+                   + " name=" + message.getBall() + " x=" + message.getX() + " y=" + message.getY()
+                   + " xVelocity=" + message.getXVelocity() + " yVelocity=" + message.getYVelocity();
+        case PORTAL_EXITING:
+            return "portalExiting newBoardName=" + message.getBoard() + " newPortalName=" + message.getPortal()
+                   + " ball=" + message.getBall()
+                   + " xVelocity=" + message.getXVelocity() + " yVelocity=" + message.getYVelocity();
+        case ADD_WALL_REQUEST:
+            return "addWall board=" + message.getBoard() + " side=" + message.getSide();
+        case BALL_ENTERING:
+            return "ballEntering name=" + message.getBall() + " x=" + message.getX() + " y=" + message.getY()
+                   + " xVelocity=" + message.getXVelocity() + " yVelocity=" + message.getYVelocity();
+        case ENTERING_PORTAL:
+            return "enteringPortal portalName=" + message.getPortal() + " ballName=" + message.getBall()
+                   + " xVelocity=" + message.getXVelocity() + " yVelocity=" + message.getYVelocity();
+        case REMOVE_WALL:
+            return "removeWall Add=" + message.getBoard() + " toWall=" + message.getSide();
+        case ADD_WALL:
+            return "addWall side=" + message.getSide();
+        case REMOVE_BALL:
+            return "success. remove ball name=" + message.getBall();
+        case ERROR:
+            return "err";
+        case BATCH: {
+            final StringBuilder lines = new StringBuilder();
+            for (WireMessage each : message.getMessages()) {
+                if (lines.length() > 0) lines.append('\n');
+                lines.append(encode(each));
+            }
+            return lines.toString();
+        }
+        default:
+            throw new AssertionError("unknown message type " + message.getType());
+        }
+    }
+
+    /**
+     * @param name first line a board sends, its name
+     * @param portalsLine second line a board sends, "noPortals" or "sendingPortals" followed by
+     *                    the names of its portals separated by spaces
+     * @return the REGISTER message the two lines encode
+     * @throws IllegalArgumentException if name or portalsLine is malformed
+     */
+    static WireMessage decodeRegister(final String name, final String portalsLine) {
+        if (name.isEmpty() || !WireMessage.isName(name)) throw new IllegalArgumentException("malformed name: " + name);
+        if (portalsLine.equals("noPortals")) return WireMessage.register(name, new ArrayList<>());
+        if (!portalsLine.startsWith("sendingPortals ")) throw new IllegalArgumentException("malformed portals: " + portalsLine);
+        return WireMessage.register(name, Arrays.asList(portalsLine.substring("sendingPortals ".length()).split(" ")));
+    }
+
+    /**
+     * @param line one line of text, other than the two lines of a REGISTER message
+     * @return the message the line encodes
+     * @throws IllegalArgumentException if the line is not a message
+     */
+    static WireMessage decode(final String line) {
+        final String[] fields = line.split(" ");
+        try {
+            switch (fields[0]) {
+            case "ballThroughWall":
+                return WireMessage.ballThroughWall(value(fields[1], "newBoardName="), side(fields[2], "wallOrientation="),
+                                                   value(fields[3], "name="), number(fields[4], "x="), number(fields[5], "y="),
+                                                   number(fields[6], "xVelocity="), number(fields[7], "yVelocity="));
+            case "portalExiting":
+                return WireMessage.portalExiting(value(fields[1], "newBoardName="), value(fields[2], "newPortalName="),
+                                                 value(fields[3], "ball="),
+                                                 number(fields[4], "xVelocity="), number(fields[5], "yVelocity="));
+            case "addWall":
+                return fields.length == 2 ? WireMessage.addWall(side(fields[1], "side="))
+                                          : WireMessage.addWallRequest(value(fields[1], "board="), side(fields[2], "side="));
+            case "ballEntering":
+                return WireMessage.ballEntering(value(fields[1], "name="), number(fields[2], "x="), number(fields[3], "y="),
+                                                number(fields[4], "xVelocity="), number(fields[5], "yVelocity="));
+            case "enteringPortal":
+                return WireMessage.enteringPortal(value(fields[1], "portalName="), value(fields[2], "ballName="),
+                                                  number(fields[3], "xVelocity="), number(fields[4], "yVelocity="));
+            case "removeWall":
+                return WireMessage.removeWall(value(fields[1], "Add="), side(fields[2], "toWall="));
+            case "success.":
+                return WireMessage.removeBall(value(fields[3], "name="));
+            case "err":
+                return WireMessage.error();
+            default:
+                throw new IllegalArgumentException("unknown message: " + line);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("malformed message: " + line, e);
+        }
+    }
+
+    /*
+     * The value of a field of the form KEY=VALUE.
+     */
+    private static String value(final String field, final String key) {
+        if (!field.startsWith(key) || !WireMessage.isName(field)) {
+            throw new IllegalArgumentException("expected " + key + " but got " + field);
+        }
+        return field.substring(key.length());
+    }
+
+    /*
+     * The value of a field of the form KEY=SIDE.
+     */
+    private static String side(final String field, final String key) {
+        final String side = value(field, key);
+        if (!WireMessage.SIDES.contains(side)) throw new IllegalArgumentException("unknown side " + side);
+        return side;
+    }
+
+    /*
+     * The value of a field of the form KEY=NUMBER.
+     */
+    private static double number(final String field, final String key) {
+        return Double.parseDouble(value(field, key)); // NumberFormatException is an IllegalArgumentException
+    }
+
+    private static String portalsLine(final List<String> portals) {
+        return portals.isEmpty() ? "noPortals" : "sendingPortals " + String.join(" ", portals);
+    }
+
+}
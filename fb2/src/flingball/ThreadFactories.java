@@ -0,0 +1,54 @@
+package flingball;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Makes the threads that the server and its clients block on while they wait for the network:
+ * daemon platform threads, or virtual threads on a Java runtime that supports them (21 or later).
+ * Virtual threads are looked up by reflection, so Flingball still compiles and runs on Java 8.
+ */
+class ThreadFactories {
+
+    private ThreadFactories() {
+        // not instantiable
+    }
+
+    /**
+     * @param name the name of every thread made
+     * @return a factory of daemon platform threads
+     */
+    static ThreadFactory platform(final String name) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @param name the name of every thread made
+     * @return a factory of virtual threads, which are always daemon threads, or empty if this runtime
+     *         has no virtual threads
+     */
+    static Optional<ThreadFactory> virtual(final String name) {
+        // looked up on the public interfaces, since the builder's own class is not accessible
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = Class.forName("java.lang.Thread$Builder$OfVirtual").getMethod("name", String.class)
+                           .invoke(builder, name);
+            return Optional.of((ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory")
+                                                    .invoke(builder));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param name the name of every thread made
+     * @return virtual(name) if this runtime has virtual threads, and platform(name) otherwise
+     */
+    static ThreadFactory preferVirtual(final String name) {
+        return virtual(name).orElseGet(() -> platform(name));
+    }
+}
@@ -144,6 +144,7 @@ public class TriangleBumper implements Bumper {
     
     // checkRep
     private void checkRep() {
+        if (!RepChecks.enabled()) return;
         assert name != null;
         
         assert position != null;
@@ -250,6 +251,7 @@ public class TriangleBumper implements Bumper {
     
     @Override
     public boolean resolveCollision(final Ball ball) {
+        if (!mayCollide(ball, COLLISION_WINDOW)) return false;
         /*
          * Call the appropriate timeUntilCollision() methods to calculate 
          * the times at which the ball will collide with each of lines/circles. 
@@ -291,6 +293,18 @@ public class TriangleBumper implements Bumper {
         return false; // no collision
     }
     
+    @Override
+    public double timeUntilCollision(final Ball ball) {
+        double mintime = Double.POSITIVE_INFINITY;
+        for (LineSegment line : lines) {
+            mintime = Math.min(mintime, Physics.timeUntilWallCollision(line, ball.getCircle(), ball.getVelocity()));
+        }
+        for (Circle corner : circles) {
+            mintime = Math.min(mintime, Physics.timeUntilCircleCollision(corner, ball.getCircle(), ball.getVelocity()));
+        }
+        return mintime;
+    }
+    
     @Override
     public List<LineSegment> getLineSegments() {
         checkRep();
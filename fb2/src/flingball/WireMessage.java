@@ -0,0 +1,318 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable message between a board and FlingballServer, independent of how it is encoded on the wire
+ * (see TextCodec and BinaryCodec).
+ *
+ * Boards send REGISTER once, when they connect, and then BALL_THROUGH_WALL, PORTAL_EXITING and
+ * ADD_WALL_REQUEST; the server sends BALL_ENTERING, ENTERING_PORTAL, REMOVE_WALL, ADD_WALL, REMOVE_BALL
+ * and ERROR. Either side may send a BATCH of the other messages, which are handled in order, as if each had
+ * been sent on its own. Sides are the orientations of a board's walls: "Left", "Right", "Top" or "Bottom".
+ */
+class WireMessage {
+
+    /** Kinds of messages, and the fields each one uses. */
+    enum Type {
+        /** a board connecting: board, portals */
+        REGISTER,
+        /** a ball leaving through a removed wall: board (destination), side (wall it left through), ball, x, y, vx, vy */
+        BALL_THROUGH_WALL,
+        /** a ball leaving through a portal: board (destination), portal (destination), ball, vx, vy */
+        PORTAL_EXITING,
+        /** put back the wall of a board that was joined to the sender: board, side */
+        ADD_WALL_REQUEST,
+        /** a ball entering the receiving board: ball, x, y, vx, vy */
+        BALL_ENTERING,
+        /** a ball entering the receiving board through a portal: portal, ball, vx, vy */
+        ENTERING_PORTAL,
+        /** join another board to one of the receiving board's walls: board (new neighbor), side */
+        REMOVE_WALL,
+        /** put back one of the receiving board's walls: side */
+        ADD_WALL,
+        /** a ball the receiving board sent away has arrived, so remove it: ball */
+        REMOVE_BALL,
+        /** the last request could not be understood */
+        ERROR,
+        /** several messages sent together, other than REGISTER and BATCH: messages */
+        BATCH
+    }
+
+    /** Orientations of a board's walls, in the order BinaryCodec numbers them. */
+    static final List<String> SIDES = Collections.unmodifiableList(Arrays.asList("Left", "Right", "Top", "Bottom"));
+
+    private final Type type;
+    private final String board;
+    private final String portal;
+    private final String ball;
+    private final String side;
+    private final double x;
+    private final double y;
+    private final double vx;
+    private final double vy;
+    private final List<String> portals;
+    private final List<WireMessage> messages;
+
+    /*
+     * Abstraction function:
+     *     AF(type, board, portal, ball, side, x, y, vx, vy, portals, messages):
+     *         a message of kind ``type``, whose fields are the ones listed for that type in Type;
+     *         the other fields are empty strings, zeros or empty lists and mean nothing
+     *
+     * Rep Invariant:
+     *   - no field is null, and no string field contains whitespace
+     *   - side is "" or one of SIDES
+     *   - no message in messages is a REGISTER or a BATCH, and a BATCH has at least one message
+     *
+     * Safety from rep exposure:
+     *   - all fields are private and final, and strings and doubles are immutable
+     *   - portals and messages are unmodifiable copies of the lists given to register() and batch()
+     *
+     * Thread Safety Argument:
+     *   - WireMessage is immutable
+     */
+
+    private WireMessage(final Type type, final String board, final String portal, final String ball,
+                        final String side, final double x, final double y, final double vx, final double vy,
+                        final List<String> portals, final List<WireMessage> messages) {
+        this.type = type;
+        this.board = board;
+        this.portal = portal;
+        this.ball = ball;
+        this.side = side;
+        this.x = x;
+        this.y = y;
+        this.vx = vx;
+        this.vy = vy;
+        this.portals = portals;
+        this.messages = messages;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert type != null && portals != null && messages != null;
+        for (String name : Arrays.asList(board, portal, ball, side)) {
+            assert name != null && isName(name);
+        }
+        assert side.isEmpty() || SIDES.contains(side);
+        assert type != Type.BATCH || !messages.isEmpty();
+        for (WireMessage message : messages) {
+            assert message.type != Type.REGISTER && message.type != Type.BATCH;
+        }
+    }
+
+    /**
+     * @param name a string
+     * @return true if name contains no whitespace, so it can name a board, portal or ball in a message
+     */
+    static boolean isName(final String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.isWhitespace(name.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param board name of the board connecting
+     * @param portals names of the board's portals
+     * @return a REGISTER message
+     */
+    static WireMessage register(final String board, final List<String> portals) {
+        return new WireMessage(Type.REGISTER, board, "", "", "", 0, 0, 0, 0,
+                               Collections.unmodifiableList(new ArrayList<>(portals)), Collections.emptyList());
+    }
+
+    /**
+     * @param board destination board
+     * @param side wall of the sending board the ball left through
+     * @param ball name of the ball
+     * @param x ball's x position
+     * @param y ball's y position
+     * @param vx ball's x velocity
+     * @param vy ball's y velocity
+     * @return a BALL_THROUGH_WALL message
+     */
+    static WireMessage ballThroughWall(final String board, final String side, final String ball,
+                                       final double x, final double y, final double vx, final double vy) {
+        return new WireMessage(Type.BALL_THROUGH_WALL, board, "", ball, side, x, y, vx, vy, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param board destination board
+     * @param portal destination portal
+     * @param ball name of the ball
+     * @param vx ball's x velocity
+     * @param vy ball's y velocity
+     * @return a PORTAL_EXITING message
+     */
+    static WireMessage portalExiting(final String board, final String portal, final String ball,
+                                     final double vx, final double vy) {
+        return new WireMessage(Type.PORTAL_EXITING, board, portal, ball, "", 0, 0, vx, vy, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param board board whose wall is put back
+     * @param side wall to put back
+     * @return an ADD_WALL_REQUEST message
+     */
+    static WireMessage addWallRequest(final String board, final String side) {
+        return new WireMessage(Type.ADD_WALL_REQUEST, board, "", "", side, 0, 0, 0, 0, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param ball name of the ball
+     * @param x ball's x position
+     * @param y ball's y position
+     * @param vx ball's x velocity
+     * @param vy ball's y velocity
+     * @return a BALL_ENTERING message
+     */
+    static WireMessage ballEntering(final String ball, final double x, final double y, final double vx, final double vy) {
+        return new WireMessage(Type.BALL_ENTERING, "", "", ball, "", x, y, vx, vy, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param portal portal the ball enters through
+     * @param ball name of the ball
+     * @param vx ball's x velocity
+     * @param vy ball's y velocity
+     * @return an ENTERING_PORTAL message
+     */
+    static WireMessage enteringPortal(final String portal, final String ball, final double vx, final double vy) {
+        return new WireMessage(Type.ENTERING_PORTAL, "", portal, ball, "", 0, 0, vx, vy, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param board new neighbor
+     * @param side wall to join the neighbor to
+     * @return a REMOVE_WALL message
+     */
+    static WireMessage removeWall(final String board, final String side) {
+        return new WireMessage(Type.REMOVE_WALL, board, "", "", side, 0, 0, 0, 0, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param side wall to put back
+     * @return an ADD_WALL message
+     */
+    static WireMessage addWall(final String side) {
+        return new WireMessage(Type.ADD_WALL, "", "", "", side, 0, 0, 0, 0, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param ball name of the ball to remove
+     * @return a REMOVE_BALL message
+     */
+    static WireMessage removeBall(final String ball) {
+        return new WireMessage(Type.REMOVE_BALL, "", "", ball, "", 0, 0, 0, 0, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @return an ERROR message
+     */
+    static WireMessage error() {
+        return new WireMessage(Type.ERROR, "", "", "", "", 0, 0, 0, 0, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param messages messages to send together, in order, none of them a REGISTER or a BATCH;
+     *                 requires messages is not empty
+     * @return a BATCH message
+     */
+    static WireMessage batch(final List<WireMessage> messages) {
+        return new WireMessage(Type.BATCH, "", "", "", "", 0, 0, 0, 0, Collections.emptyList(),
+                               Collections.unmodifiableList(new ArrayList<>(messages)));
+    }
+
+    /**
+     * @param messages messages to send to one board, in order, none of them a REGISTER or a BATCH;
+     *                 requires messages is not empty
+     * @return the message itself if there is only one, otherwise a BATCH of them
+     */
+    static WireMessage together(final List<WireMessage> messages) {
+        assert !messages.isEmpty();
+        return messages.size() == 1 ? messages.get(0) : batch(messages);
+    }
+
+    /** @return kind of this message */
+    Type getType() {
+        return type;
+    }
+
+    /** @return board named by this message, or "" if its type has none */
+    String getBoard() {
+        return board;
+    }
+
+    /** @return portal named by this message, or "" if its type has none */
+    String getPortal() {
+        return portal;
+    }
+
+    /** @return ball named by this message, or "" if its type has none */
+    String getBall() {
+        return ball;
+    }
+
+    /** @return side named by this message, or "" if its type has none */
+    String getSide() {
+        return side;
+    }
+
+    /** @return x position of the ball */
+    double getX() {
+        return x;
+    }
+
+    /** @return y position of the ball */
+    double getY() {
+        return y;
+    }
+
+    /** @return x velocity of the ball */
+    double getXVelocity() {
+        return vx;
+    }
+
+    /** @return y velocity of the ball */
+    double getYVelocity() {
+        return vy;
+    }
+
+    /** @return portals of a registering board, as an unmodifiable list */
+    List<String> getPortals() {
+        return portals;
+    }
+
+    /** @return messages of a BATCH, in order, as an unmodifiable list */
+    List<WireMessage> getMessages() {
+        return messages;
+    }
+
+    @Override
+    public boolean equals(final Object that) {
+        if (!(that instanceof WireMessage)) return false;
+        final WireMessage other = (WireMessage) that;
+        return type == other.type && board.equals(other.board) && portal.equals(other.portal)
+               && ball.equals(other.ball) && side.equals(other.side)
+               && Double.compare(x, other.x) == 0 && Double.compare(y, other.y) == 0
+               && Double.compare(vx, other.vx) == 0 && Double.compare(vy, other.vy) == 0
+               && portals.equals(other.portals) && messages.equals(other.messages);
+    }
+
+    @Override
+    public int hashCode() {
+        return type.hashCode() + 31*(board.hashCode() + 31*(ball.hashCode() + 31*(Double.hashCode(x) + 31*messages.hashCode())));
+    }
+
+    @Override
+    public String toString() {
+        return TextCodec.encode(this);
+    }
+
+}
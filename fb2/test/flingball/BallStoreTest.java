@@ -0,0 +1,136 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import physics.Vect;
+
+public class BallStoreTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - add:
+    //      partition into new name, name already in the store
+    //      partition into ball on no board, ball already in another store
+    //  - remove: first slot, last slot, name not in the store; ball used after it is removed,
+    //            and added again with its state
+    //  - advance, applyForces: absorbed and free balls, same result as moving each ball alone
+    //  - growing past the initial capacity
+
+    //covers add new names, lookup by name, ball state kept when it is added
+    @Test
+    public void testAdd() {
+        final BallStore store = new BallStore();
+        final Ball a = new Ball("A", 5, 6, 1, 2);
+        final Ball b = new Ball("B", 7, 8, 3, 4);
+        a.setAbsorbed(true);
+        store.add(a);
+        store.add(b);
+        assertEquals("Expected two balls", 2, store.size());
+        assertSame("Expected lookup by name", a, store.get("A"));
+        assertSame("Expected lookup by name", b, store.get("B"));
+        assertNull("Expected no such ball", store.get("C"));
+        assertEquals("Expected names", new HashSet<>(Arrays.asList("A", "B")), store.getNames());
+        assertEquals("Expected same position", new Vect(5, 6), a.getPosition());
+        assertEquals("Expected same velocity", new Vect(1, 2), a.getVelocity());
+        assertTrue("Expected still absorbed", a.getAbsorbed());
+        assertFalse("Expected not absorbed", b.getAbsorbed());
+    }
+
+    //covers add a name already in the store
+    @Test
+    public void testAddReplaces() {
+        final BallStore store = new BallStore();
+        final Ball first = new Ball("A", 5, 6, 1, 2);
+        final Ball second = new Ball("A", 7, 8, 3, 4);
+        store.add(first);
+        store.add(second);
+        assertEquals("Expected one ball", 1, store.size());
+        assertSame("Expected the new ball", second, store.get("A"));
+        assertEquals("Expected replaced ball to keep its position", new Vect(5, 6), first.getPosition());
+    }
+
+    //covers add a ball already in another store
+    @Test
+    public void testAddFromOtherStore() {
+        final BallStore from = new BallStore();
+        final BallStore to = new BallStore();
+        final Ball ball = new Ball("A", 5, 6, 1, 2);
+        from.add(ball);
+        to.add(ball);
+        assertEquals("Expected ball to leave its old store", 0, from.size());
+        assertSame("Expected ball in new store", ball, to.get("A"));
+        assertEquals("Expected same position", new Vect(5, 6), ball.getPosition());
+    }
+
+    //covers remove first slot, remove last slot, remove name not in the store, ball used after it is removed,
+    //and added again
+    @Test
+    public void testRemove() {
+        final BallStore store = new BallStore();
+        final Ball a = new Ball("A", 5, 5, 0, 0);
+        final Ball b = new Ball("B", 6, 6, 0, 0);
+        final Ball c = new Ball("C", 7, 7, 0, 0);
+        store.add(a);
+        store.add(b);
+        store.add(c);
+        assertSame("Expected removed ball", a, store.remove("A"));
+        assertSame("Expected removed ball", c, store.remove("C"));
+        assertNull("Expected no such ball", store.remove("D"));
+        assertEquals("Expected one ball", 1, store.size());
+        assertSame("Expected remaining ball", b, store.get("B"));
+        assertEquals("Expected remaining ball unchanged", new Vect(6, 6), b.getPosition());
+        a.setPosition(new Vect(10, 10));
+        assertEquals("Expected removed ball to still work", new Vect(10, 10), a.getPosition());
+        assertEquals("Expected other ball unchanged", new Vect(6, 6), b.getPosition());
+        c.setAbsorbed(true);
+        store.add(c);
+        assertEquals("Expected re-added ball's position", new Vect(7, 7), c.getPosition());
+        assertTrue("Expected re-added ball still absorbed", c.getAbsorbed());
+    }
+
+    //covers advance and applyForces of absorbed and free balls, same result as moving each ball alone
+    @Test
+    public void testBulkMoveSameAsBall() throws Exception {
+        final Board board = new Board("Board");
+        final BallStore store = new BallStore();
+        final Ball[] alone = {new Ball("A", 5, 5, 3, -4), new Ball("B", 10, 10, -2, 7), new Ball("C", 15, 15, 5, 5)};
+        final Ball[] stored = {new Ball("A", 5, 5, 3, -4), new Ball("B", 10, 10, -2, 7), new Ball("C", 15, 15, 5, 5)};
+        alone[1].setAbsorbed(true);
+        stored[1].setAbsorbed(true);
+        for (Ball ball : stored) store.add(ball);
+        final long absorbedVersion = stored[1].getVersion();
+        for (int step = 0; step < 100; step++) {
+            for (Ball ball : alone) ball.move(1, board);
+            store.advance(0.001);
+            store.applyForces(0.001, board.getGravity(), board.getFriction1(), board.getFriction2());
+        }
+        for (int i = 0; i < alone.length; i++) {
+            assertTrue("Expected same state as moving alone", alone[i].sameValue(stored[i]));
+        }
+        assertEquals("Expected absorbed ball not to move", new Vect(10, 10), stored[1].getPosition());
+        assertEquals("Expected absorbed ball's version unchanged", absorbedVersion, stored[1].getVersion());
+    }
+
+    //covers growing past the initial capacity
+    @Test
+    public void testGrow() {
+        final BallStore store = new BallStore(1);
+        for (int i = 0; i < 100; i++) {
+            store.add(new Ball("Ball" + i, 1 + i*0.1, 1, i, 0));
+        }
+        assertEquals("Expected all balls", 100, store.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Expected each ball's state", i, store.get("Ball" + i).getVelocityX(), 0);
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class BallSweepTest {
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // Testing strategy
+    //  - findCollisions: 
+    //      partition number of balls into 0, 1, 2, >2
+    //      partition into balls whose boxes do not overlap, boxes overlap but balls are moving apart, 
+    //          boxes overlap and balls collide within the time, balls collide after the time
+    //      partition into a ball colliding with one other ball, a ball that could collide with two other balls
+    //      partition into first sweep, later sweep with the same balls, later sweep with different balls
+    
+    private static final double WINDOW = 0.002;
+    
+    //covers 0 balls and 1 ball
+    @Test
+    public void testNoPairs() {
+        final BallSweep sweep = new BallSweep();
+        assertTrue("Expected no collisions", sweep.findCollisions(Collections.<Ball>emptyList(), WINDOW).isEmpty());
+        assertTrue("Expected no collisions", sweep.findCollisions(Arrays.asList(new Ball("A", 5, 5, 10, 0)), WINDOW).isEmpty());
+    }
+    
+    //covers 2 balls whose boxes do not overlap
+    @Test
+    public void testFarApart() {
+        final List<Ball> balls = Arrays.asList(new Ball("A", 5, 5, 10, 0), new Ball("B", 15, 5, -10, 0));
+        assertTrue("Expected no collisions", new BallSweep().findCollisions(balls, WINDOW).isEmpty());
+    }
+    
+    //covers 2 balls whose boxes overlap but who are moving apart
+    @Test
+    public void testMovingApart() {
+        final List<Ball> balls = Arrays.asList(new Ball("A", 5, 5, -10, 0), new Ball("B", 5.51, 5, 10, 0));
+        assertTrue("Expected no collisions", new BallSweep().findCollisions(balls, WINDOW).isEmpty());
+    }
+    
+    //covers 2 balls colliding within the time, and colliding after the time
+    @Test
+    public void testColliding() {
+        final Ball a = new Ball("A", 5, 5, 10, 0);
+        final Ball b = new Ball("B", 5.51, 5, -10, 0);
+        final Map<Ball, Ball> collisions = new BallSweep().findCollisions(Arrays.asList(b, a), WINDOW);
+        assertEquals("Expected one collision", 1, collisions.size());
+        assertTrue("Expected the two balls to be paired", collisions.get(a) == b || collisions.get(b) == a);
+        assertTrue("Expected no collision this soon", new BallSweep().findCollisions(Arrays.asList(a, b), 0.0001).isEmpty());
+    }
+    
+    //covers >2 balls, a ball that could collide with two other balls
+    @Test
+    public void testEachBallOnce() {
+        final Ball left = new Ball("Left", 5, 5, 10, 0);
+        final Ball middle = new Ball("Middle", 5.505, 5, 0, 0);
+        final Ball right = new Ball("Right", 6.01, 5, -10, 0);
+        final Ball far = new Ball("Far", 15, 15, 0, 0);
+        final Map<Ball, Ball> collisions = new BallSweep().findCollisions(Arrays.asList(left, middle, right, far), WINDOW);
+        assertEquals("Expected middle ball to be paired only once", 1, collisions.size());
+        final Map.Entry<Ball, Ball> pair = collisions.entrySet().iterator().next();
+        assertTrue("Expected middle ball to be paired", pair.getKey() == middle || pair.getValue() == middle);
+        final Ball partner = pair.getKey() == middle ? pair.getValue() : pair.getKey();
+        assertTrue("Expected middle ball to be paired with a neighbor", partner == left || partner == right);
+    }
+    
+    //covers later sweep with the same balls and later sweep with different balls
+    @Test
+    public void testRepeatedSweeps() {
+        final BallSweep sweep = new BallSweep();
+        final List<Ball> balls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            balls.add(new Ball("Ball" + i, 1 + 1.5*i, 5, 0, 0));
+        }
+        assertTrue("Expected no collisions", sweep.findCollisions(balls, WINDOW).isEmpty());
+        Collections.reverse(balls);
+        assertTrue("Expected no collisions", sweep.findCollisions(balls, WINDOW).isEmpty());
+        final Ball a = new Ball("A", 5, 10, 10, 0);
+        final Ball b = new Ball("B", 5.51, 10, -10, 0);
+        balls.add(a);
+        balls.add(b);
+        assertEquals("Expected new balls to collide", 1, sweep.findCollisions(balls, WINDOW).size());
+    }
+    
+}
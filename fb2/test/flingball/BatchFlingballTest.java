@@ -0,0 +1,85 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class BatchFlingballTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /*
+     * Testing strategy
+     *   stateHash: boards in the same state, boards in different states
+     *   runBoard: valid board file, missing board file
+     *   runAll: one thread, several threads, results in the same order as the files
+     */
+
+    //covers stateHash of boards in the same state
+    @Test
+    public void testStateHashSameState() throws UnableToParseException, IOException {
+        final Board first = BoardParser.parse("boards/default.fb");
+        final Board second = BoardParser.parse("boards/default.fb");
+        assertEquals("Expected same hash", BatchFlingball.stateHash(first), BatchFlingball.stateHash(second));
+    }
+
+    //covers stateHash of boards in different states
+    @Test
+    public void testStateHashDifferentState() throws UnableToParseException, IOException {
+        final Board first = BoardParser.parse("boards/default.fb");
+        final Board second = BoardParser.parse("boards/default.fb");
+        second.step(1);
+        assertNotEquals("Expected different hash", BatchFlingball.stateHash(first), BatchFlingball.stateHash(second));
+    }
+
+    //covers runBoard of a valid board file
+    @Test
+    public void testRunBoard() throws UnableToParseException, IOException {
+        final BatchFlingball.Result result = BatchFlingball.runBoard("boards/default.fb", 100, 1, false);
+        final Board board = BoardParser.parse("boards/default.fb");
+        HeadlessFlingball.run(board, 100, 1);
+        assertFalse("Expected no error", result.getError().isPresent());
+        assertEquals("Expected one step per millisecond", 100, result.getTicks());
+        assertEquals("Expected hash of the final state", BatchFlingball.stateHash(board), result.getStateHash());
+    }
+
+    //covers runBoard of a missing board file
+    @Test
+    public void testRunBoardMissingFile() {
+        final BatchFlingball.Result result = BatchFlingball.runBoard("boards/missing.fb", 100, 1, false);
+        assertTrue("Expected error", result.getError().isPresent());
+        assertEquals("Expected no steps", 0, result.getTicks());
+    }
+
+    //covers runAll on one thread and on several threads
+    @Test
+    public void testRunAllSameResults() {
+        final List<String> files = Arrays.asList("boards/default.fb", "boards/absorber.fb",
+                                                 "boards/ball_collisions.fb", "boards/flippers.fb");
+        final ForkJoinPool single = new ForkJoinPool(1);
+        final ForkJoinPool several = new ForkJoinPool(4);
+        final List<BatchFlingball.Result> sequential = BatchFlingball.runAll(files, 500, 1, false, single);
+        final List<BatchFlingball.Result> parallel = BatchFlingball.runAll(files, 500, 1, false, several);
+        single.shutdown();
+        several.shutdown();
+        assertEquals("Expected one result per file", files.size(), parallel.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals("Expected results in order of files", files.get(i), parallel.get(i).getFile());
+            assertEquals("Expected same final state", sequential.get(i).getStateHash(), parallel.get(i).getStateHash());
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.Test;
+
+public class BoardClientTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - startListening: not called, called once, called again
+    //  - messages from the server: handled at the board's next step after they arrive
+    //  - listener thread: virtual on Java 21 or later, daemon platform thread before
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    //covers startListening not called, called once and again, message handled at the next step,
+    //       listener thread of this runtime
+    @Test
+    public void testStartListening() throws IOException, InterruptedException {
+        try (ServerSocket server = new ServerSocket(0)) {
+            final Board board = new Board("Board");
+            board.addBall(new Ball("Ball", 10, 10, 0, 0));
+            final BoardClient client = new BoardClient("localhost", server.getLocalPort(), board);
+            board.addClient(client);
+            try (Socket socket = server.accept()) {
+                final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+                assertEquals("Expected board name", "Board", in.readLine());
+                assertEquals("Expected no portals", "noPortals", in.readLine());
+                assertFalse("Expected no listener before simulating", client.isListening());
+
+                client.startListening();
+                client.startListening();
+                assertTrue("Expected listener", client.isListening());
+                final Thread listener = client.getListener().get();
+                assertEquals("Expected listener named after the board", "BoardClient Board", listener.getName());
+                assertTrue("Expected daemon listener", listener.isDaemon());
+                assertEquals("Expected virtual listener exactly when the runtime has virtual threads",
+                        javaVersion() >= 21, isVirtual(listener));
+                out.println("success. remove ball name=Ball");
+
+                final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+                while (board.getBallsNames().contains("Ball") && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                    board.step(1);
+                }
+                assertFalse("Expected ball removed at a step", board.getBallsNames().contains("Ball"));
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    private static int javaVersion() {
+        final String version = System.getProperty("java.specification.version");
+        return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    }
+
+    // Thread.isVirtual() is only there on Java 21 or later
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+}
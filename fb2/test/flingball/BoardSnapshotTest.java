@@ -0,0 +1,108 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class BoardSnapshotTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - Board.publishSnapshot, getSnapshot: before any snapshot is published, after
+    //  - BoardSnapshot:
+    //      partition on balls: free balls, balls held by an absorber
+    //      partition on flippers: none, some
+    //      board changed after the snapshot was taken
+    //  - Board.render: with no published snapshot, with a published snapshot
+
+    //covers getSnapshot before and after publishing, free and absorbed balls, some flippers
+    @Test
+    public void testPublishSnapshot() throws UnableToParseException, IOException {
+        final Board board = BoardParser.parse("boards/flippers.fb");
+        assertFalse("Expected no snapshot yet", board.getSnapshot().isPresent());
+        board.getBallByName(board.getBallsNames().iterator().next()).setAbsorbed(true);
+        final BoardSnapshot snapshot = board.publishSnapshot();
+        assertSame("Expected published snapshot", snapshot, board.getSnapshot().get());
+        assertEquals("Expected only free balls", board.getBallsNames().size() - 1, snapshot.getBallCount());
+        assertTrue("Expected flippers", snapshot.getFlipperCount() > 0);
+    }
+
+    //covers no flippers
+    @Test
+    public void testSnapshotWithoutFlippers() throws IOException {
+        final Board board = new Board("Board");
+        board.addGadget(new SquareBumper("Square", 5, 5));
+        board.addBall(new Ball("Ball", 10, 10, 1, 1));
+        final BoardSnapshot snapshot = board.publishSnapshot();
+        assertEquals("Expected no flippers", 0, snapshot.getFlipperCount());
+        assertEquals("Expected one ball", 1, snapshot.getBallCount());
+    }
+
+    //covers board changed after the snapshot was taken, render with a published snapshot
+    @Test
+    public void testSnapshotUnchangedByStepping() throws UnableToParseException, IOException {
+        final Board board = BoardParser.parse("boards/default.fb");
+        final BoardSnapshot snapshot = board.publishSnapshot();
+        final int[] before = draw(snapshot);
+        for (int i = 0; i < 500; i++) {
+            board.step(1);
+        }
+        board.addBall(new Ball("Extra", 5, 5, 0, 0));
+        assertEquals("Expected same balls", 1, snapshot.getBallCount());
+        assertTrue("Expected same picture", Arrays.equals(before, draw(snapshot)));
+        assertTrue("Expected board to draw the published snapshot", Arrays.equals(before, draw(board)));
+        assertFalse("Expected new snapshot to differ", Arrays.equals(before, draw(board.publishSnapshot())));
+    }
+
+    //covers render with no published snapshot
+    @Test
+    public void testRenderWithoutSnapshot() throws UnableToParseException, IOException {
+        final Board board = BoardParser.parse("boards/default.fb");
+        final int[] drawn = draw(board);
+        assertFalse("Expected no snapshot to be published", board.getSnapshot().isPresent());
+        assertTrue("Expected only the black background", Arrays.equals(pixels(newImage()), drawn));
+    }
+
+    /*
+     * Draws a snapshot on an image and returns its pixels.
+     */
+    private static int[] draw(final BoardSnapshot snapshot) {
+        final BufferedImage image = newImage();
+        final Graphics2D g = image.createGraphics();
+        snapshot.render(g, 0);
+        g.dispose();
+        return pixels(image);
+    }
+
+    /*
+     * Draws a board on an image and returns its pixels.
+     */
+    private static int[] draw(final Board board) {
+        final BufferedImage image = newImage();
+        final Graphics2D g = image.createGraphics();
+        board.render(g);
+        g.dispose();
+        return pixels(image);
+    }
+
+    private static BufferedImage newImage() {
+        final int size = Flingball.DRAWING_AREA_SIZE_IN_PIXELS;
+        return new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static int[] pixels(final BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+}
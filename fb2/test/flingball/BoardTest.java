@@ -1,6 +1,7 @@
 package flingball;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -9,6 +10,9 @@ import java.util.HashSet;
 
 import org.junit.Test;
 
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Vect;
+
 public class BoardTest {
     
     @Test(expected=AssertionError.class)
@@ -21,6 +25,10 @@ public class BoardTest {
      * 		Partitions: 0 added objects (gadgets, balls), >0 added Objects(gadgets, balls)
      * 	render
      * 	simulate
+     * 	step: partition into stepping the same board twice, stepping with steps of different lengths
+     * 	setTimestep: check that the timestep is stored
+     * 	submit: partition into commands submitted by the stepping thread, by another thread;
+     * 		check that commands are run at the start of the next step, in order
      * 	resolve Collision
      * 	
     	addGadget: Partition into a board initially with no gadgets, a board with some gadgets on it initially
@@ -130,4 +138,65 @@ public class BoardTest {
         assertEquals("Expected default reflection coefficient of 1.0",1.0,BOARD1.getReflectionCoeff(),0.0001);
     }
     
+    //covers test of step that two boards stepped in the same way end up in the same state
+    @Test
+    public void testStepDeterministic() throws UnableToParseException, IOException {
+        final Board first = BoardParser.parse("boards/default.fb");
+        final Board second = BoardParser.parse("boards/default.fb");
+        for (int i = 0; i < 2000; i++) {
+            first.step(Board.DEFAULT_TIMESTEP);
+            second.step(Board.DEFAULT_TIMESTEP);
+        }
+        assertTrue("Expected boards stepped identically to be the same", first.sameValue(second));
+    }
+    
+    //covers test of step that stepping with a different step length gives a different state
+    @Test
+    public void testStepDifferentLength() throws UnableToParseException, IOException {
+        final Board first = BoardParser.parse("boards/default.fb");
+        final Board second = BoardParser.parse("boards/default.fb");
+        first.step(10);
+        second.step(1);
+        assertFalse("Expected boards stepped differently to differ", first.sameValue(second));
+    }
+    
+    //covers test of setTimestep and getTimestep
+    @Test
+    public void testSetTimestep() throws IOException {
+        final Board example = new Board("Board",10,1,1);
+        assertEquals("Expected default timestep", Board.DEFAULT_TIMESTEP, example.getTimestep());
+        example.setTimestep(5);
+        assertEquals("Expected timestep of 5ms", 5, example.getTimestep());
+    }
+    
+    //covers submit by the stepping thread, commands run at the start of the next step in order
+    @Test
+    public void testSubmitRunsAtNextStep() throws IOException {
+        final Board example = new Board("Board", 0, 0, 0);
+        example.submit(() -> example.addBall(new Ball("Ball", 5, 5, 0, 0)));
+        example.submit(() -> example.getBallByName("Ball").setVelocity(new Vect(1000, 0)));
+        assertTrue("Expected no change before the next step", example.getBallsNames().isEmpty());
+        example.step(1);
+        assertEquals("Expected ball added and moved in the same step", 6, example.getBallByName("Ball").getX(), 1e-9);
+    }
+    
+    //covers submit by another thread
+    @Test
+    public void testSubmitFromOtherThread() throws IOException, InterruptedException {
+        final Board example = new Board("Board", 0, 0, 0);
+        final Thread other = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                final Ball ball = new Ball("Ball" + i, 10, 10, 0, 0);
+                example.submit(() -> example.addBall(ball));
+            }
+        });
+        other.start();
+        for (int i = 0; i < 100; i++) {
+            example.step(1);
+        }
+        other.join();
+        example.step(1);
+        assertEquals("Expected every ball added", 1000, example.getBallsNames().size());
+    }
+    
 }
@@ -0,0 +1,121 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.LineSegment;
+
+public class ClearanceCacheTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - Board.setClearanceCaching, isClearanceCaching: on by default, off, on again
+    //  - Board.step with clearance caching:
+    //      partition on gadgets: bumpers only, absorbers and triggers, flippers, portals,
+    //                            a gadget added while balls are moving
+    //      partition on detection: one thread, several threads
+    //      same outcome as testing every ball every step
+    //  - StaticGeometry.distance, distanceToWalls: point near a side, near a corner, inside a circle
+
+    private static final int STEPS = 2000;
+
+    //covers on by default, off, on again
+    @Test
+    public void testClearanceCaching() throws IOException {
+        final Board board = new Board("Board");
+        assertTrue("Expected caching by default", board.isClearanceCaching());
+        board.setClearanceCaching(false);
+        assertFalse("Expected no caching", board.isClearanceCaching());
+        board.setClearanceCaching(true);
+        assertTrue("Expected caching", board.isClearanceCaching());
+    }
+
+    //covers absorbers and triggers, flippers, portals, one thread, same outcome
+    @Test
+    public void testShippedBoardsSameAsUncached() throws UnableToParseException, IOException {
+        final List<String> files = Arrays.asList("boards/default.fb", "boards/absorber.fb", "boards/flippers.fb",
+                                                 "boards/ball_collisions.fb", "boards/triggers.fb", "boards/boardA.fb",
+                                                 "boards/stuck.fb");
+        for (String file : files) {
+            final Board cached = BoardParser.parse(file);
+            final Board uncached = BoardParser.parse(file);
+            uncached.setClearanceCaching(false);
+            for (int i = 0; i < STEPS; i++) {
+                cached.step(1);
+                uncached.step(1);
+            }
+            assertEquals("Expected same outcome as testing every ball for " + file,
+                         BatchFlingball.stateHash(uncached), BatchFlingball.stateHash(cached));
+        }
+    }
+
+    //covers bumpers only, a gadget added while balls are moving, one and several threads, same outcome
+    @Test
+    public void testManyBallsSameAsUncached() throws IOException {
+        final Board cached = makeBoard();
+        final Board parallel = makeBoard();
+        final Board uncached = makeBoard();
+        parallel.setCollisionThreads(3);
+        uncached.setClearanceCaching(false);
+        for (int i = 0; i < STEPS; i++) {
+            if (i == STEPS / 2) {
+                for (Board board : Arrays.asList(cached, parallel, uncached)) {
+                    board.addGadget(new SquareBumper("Added", 9, 8));
+                }
+            }
+            cached.step(1);
+            parallel.step(1);
+            uncached.step(1);
+        }
+        assertEquals("Expected same outcome as testing every ball",
+                     BatchFlingball.stateHash(uncached), BatchFlingball.stateHash(cached));
+        assertEquals("Expected same outcome as testing every ball on one thread",
+                     BatchFlingball.stateHash(uncached), BatchFlingball.stateHash(parallel));
+    }
+
+    //covers distance near a side, near a corner, inside a circle
+    @Test
+    public void testDistance() {
+        final Gadget square = new SquareBumper("Square", 5, 5);
+        final Gadget circle = new CircleBumper("Circle", 10, 10);
+        final StaticGeometry geometry = new StaticGeometry(Arrays.asList(
+                new Wall(new LineSegment(0, 0, 0, 20), "Left"),
+                new Wall(new LineSegment(0, 0, 20, 0), "Top")), Arrays.asList(square, circle));
+        assertEquals("Expected distance to the nearest wall", 2, geometry.distanceToWalls(2, 3), 1e-12);
+        assertEquals("Expected distance to a side", 0.5, geometry.distance(geometry.owner(square), 5.5, 4.5), 1e-12);
+        assertEquals("Expected distance to a corner", 5, geometry.distance(geometry.owner(square), 9, 10), 1e-12);
+        assertEquals("Expected negative distance inside the circle",
+                     -0.25, geometry.distance(geometry.owner(circle), 10.5, 10.75), 1e-12);
+    }
+
+    /*
+     * A gravity-free board with rows of bumpers and 300 balls moving in random directions,
+     * many of them far from any gadget.
+     */
+    private static Board makeBoard() throws IOException {
+        final Random random = new Random(24);
+        final Board board = new Board("Bumpers", 0, 0, 0);
+        for (int col = 0; col < 20; col += 4) {
+            board.addGadget(new SquareBumper("Square" + col, col, 4));
+            board.addGadget(new CircleBumper("Circle" + col, col + 1, 12));
+            board.addGadget(new TriangleBumper("Triangle" + col, col + 2, 16));
+        }
+        for (int i = 0; i < 300; i++) {
+            board.addBall(new Ball("Ball" + i, 0.5 + random.nextDouble()*19, 0.5 + random.nextDouble()*19,
+                                   random.nextDouble()*40 - 20, random.nextDouble()*40 - 20));
+        }
+        return board;
+    }
+
+}
@@ -0,0 +1,173 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class EventDrivenEngineTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /*
+     * Testing strategy
+     *   step:
+     *     partition on collisions: none, with a border wall, with a gadget, with another ball, several in one step
+     *     partition on step length: short enough for the default engine, long enough for a ball to pass through a gadget
+     *     partition on gadget: bumper, absorber, ball leaving an absorber and ending the step just short of another
+     *     same board stepped twice gives the same result
+     *   Board.setEventDriven: turn on, turn off
+     */
+
+    private static final double TOLERANCE = 0.0001;
+
+    private static Board createBoard() throws IOException {
+        return new Board("Board", 0, 0, 0); // no gravity or friction, so balls move in straight lines
+    }
+
+    //covers no collisions, forces are still applied over the whole step
+    @Test
+    public void testStepNoCollisions() throws IOException {
+        final Board board = new Board("Board", 10, 0, 0);
+        final Ball ball = new Ball("Ball", 5, 5, 2, 0);
+        final EventDrivenEngine engine = new EventDrivenEngine(board, new GadgetGrid());
+        engine.step(100, Collections.singletonList(ball));
+        assertEquals("Expected ball to move in a straight line", 5.2, ball.getPosition().x(), TOLERANCE);
+        assertEquals("Expected ball to move in a straight line", 5, ball.getPosition().y(), TOLERANCE);
+        assertEquals("Expected gravity to act for the whole step", 1, ball.getVelocity().y(), TOLERANCE);
+    }
+
+    //covers collision with a border wall in a long step
+    @Test
+    public void testStepBorderWall() throws IOException {
+        final Board board = createBoard();
+        final Ball ball = new Ball("Ball", 18, 5, 20, 0);
+        board.addBall(ball);
+        board.setEventDriven(true);
+        board.step(200); // the ball reaches the right wall after 87.5 ms
+        assertEquals("Expected ball to bounce off the wall", -20, ball.getVelocity().x(), TOLERANCE);
+        assertEquals("Expected ball to travel back from the wall", 17.5, ball.getPosition().x(), TOLERANCE);
+    }
+
+    //covers collision with a bumper in a step long enough for the default engine to miss it
+    @Test
+    public void testStepBumperLongStep() throws IOException {
+        final Board eventDriven = createBoard();
+        final Ball fast = new Ball("Ball", 5, 10.5, 100, 0);
+        eventDriven.addGadget(new SquareBumper("Square", 10, 10));
+        eventDriven.addBall(fast);
+        eventDriven.setEventDriven(true);
+        eventDriven.step(50); // the ball reaches the bumper after 47.5 ms
+        assertEquals("Expected ball to bounce off the bumper", -100, fast.getVelocity().x(), TOLERANCE);
+        assertEquals("Expected ball to travel back from the bumper", 9.5, fast.getPosition().x(), TOLERANCE);
+
+        final Board fixedStep = createBoard();
+        final Ball tunnelling = new Ball("Ball", 5, 10.5, 100, 0);
+        fixedStep.addGadget(new SquareBumper("Square", 10, 10));
+        fixedStep.addBall(tunnelling);
+        fixedStep.step(50);
+        assertTrue("Expected default engine to move the ball into the bumper", tunnelling.getPosition().x() >= 10);
+    }
+
+    //covers collision with an absorber
+    @Test
+    public void testStepAbsorber() throws IOException {
+        final Board board = createBoard();
+        final Absorber absorber = new Absorber("Absorber", 0, 18, 20, 2);
+        final Ball ball = new Ball("Ball", 5, 10, 0, 100);
+        board.addGadget(absorber);
+        board.addBall(ball);
+        board.setEventDriven(true);
+        board.step(100);
+        assertTrue("Expected ball to be absorbed", ball.getAbsorbed());
+        assertEquals("Expected absorber to hold the ball",
+                     Collections.singleton("Ball"), absorber.getBallsNames());
+    }
+
+    //covers ball leaving an absorber and ending the step just short of another
+    @Test
+    public void testStepLeavingAbsorberNotCapturedEarly() throws IOException {
+        final Board board = createBoard();
+        final Absorber lower = new Absorber("Lower", 0, 15, 20, 2);
+        final Absorber upper = new Absorber("Upper", 15, 4, 5, 2);
+        final Ball ball = new Ball("Ball", 10, 10, 0, 0);
+        board.addGadget(lower);
+        board.addGadget(upper);
+        board.addBall(ball);
+        lower.capture(ball);
+        lower.respondToTrigger(); // shoots the ball up at 50 L/s from (19.75, 16.75)
+        board.setEventDriven(true);
+        board.step(209); // the ball ends 1 ms short of the upper absorber
+        assertFalse("Expected ball not to be captured before it reaches the absorber", ball.getAbsorbed());
+        assertTrue("Expected upper absorber to hold no ball", upper.getBallsNames().isEmpty());
+        assertTrue("Expected lower absorber to have released the ball", lower.getBallsNames().isEmpty());
+        board.step(5);
+        assertTrue("Expected ball to be absorbed once it reaches the absorber", ball.getAbsorbed());
+        assertEquals("Expected upper absorber to hold the ball",
+                     Collections.singleton("Ball"), upper.getBallsNames());
+    }
+
+    //covers collision with another ball
+    @Test
+    public void testStepBallBall() throws IOException {
+        final Board board = createBoard();
+        final Ball left = new Ball("Left", 5, 10, 10, 0);
+        final Ball right = new Ball("Right", 10, 10, -10, 0);
+        board.addBall(left);
+        board.addBall(right);
+        board.setEventDriven(true);
+        board.step(500); // the balls meet after 225 ms
+        assertEquals("Expected balls to exchange velocities", -10, left.getVelocity().x(), TOLERANCE);
+        assertEquals("Expected balls to exchange velocities", 10, right.getVelocity().x(), TOLERANCE);
+        assertEquals("Expected ball to travel back", 4.5, left.getPosition().x(), TOLERANCE);
+        assertEquals("Expected ball to travel back", 10.5, right.getPosition().x(), TOLERANCE);
+    }
+
+    //covers several collisions in one step
+    @Test
+    public void testStepSeveralCollisions() throws IOException {
+        final Board board = createBoard();
+        final Ball ball = new Ball("Ball", 10, 10, 100, 0);
+        final EventDrivenEngine engine = new EventDrivenEngine(board, new GadgetGrid());
+        // the ball crosses the board back and forth, bouncing off both side walls
+        engine.step(300, Arrays.asList(ball));
+        assertEquals("Expected ball to be moving right after two bounces", 100, ball.getVelocity().x(), TOLERANCE);
+        assertEquals("Expected ball to end the step at the right position", 1, ball.getPosition().x(), TOLERANCE);
+    }
+
+    //covers stepping the same board twice in a short step
+    @Test
+    public void testStepDeterministic() throws UnableToParseException, IOException {
+        final Board first = BoardParser.parse("boards/default.fb");
+        final Board second = BoardParser.parse("boards/default.fb");
+        first.setEventDriven(true);
+        second.setEventDriven(true);
+        for (int i = 0; i < 200; i++) {
+            first.step(10);
+            second.step(10);
+        }
+        assertTrue("Expected identical boards to stay identical", first.sameValue(second));
+    }
+
+    //covers turning the event-driven engine on and off
+    @Test
+    public void testSetEventDriven() throws IOException {
+        final Board board = createBoard();
+        assertFalse("Expected default engine", board.isEventDriven());
+        board.setEventDriven(true);
+        assertTrue("Expected event-driven engine", board.isEventDriven());
+        board.setEventDriven(false);
+        assertFalse("Expected default engine", board.isEventDriven());
+    }
+
+}
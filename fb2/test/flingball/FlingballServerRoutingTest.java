@@ -0,0 +1,425 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.Test;
+
+public class FlingballServerRoutingTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - ballThroughWall: destination connected, destination not connected
+    //  - portalExiting: destination has the portal
+    //  - addWall: forwarded to the named board
+    //  - many boards sending to one board at once: every line arrives whole
+    //  - board disconnects: requests to it are no longer forwarded
+    //  - serve(ThreadFactory) with platform threads: same routing as the selector
+    //  - threadFactory: platform, virtual, unknown mode
+    //  - encodings: text board to binary board, binary board to text board, BoardClient asking for binary;
+    //      on the selector and on platform threads
+    //  - batches: requests to several boards in one batch, replies to the sender together
+    //  - metrics: messages counted by type inside and outside batches, bytes, latency of forwarded messages;
+    //      on the selector and on platform threads
+    //  - latency: measured from when the request was received, not from when it was handled
+
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    //covers ballThroughWall with the destination connected, addWall
+    @Test
+    public void testBallThroughWall() throws IOException, InterruptedException {
+        try (Network network = new Network()) {
+            final FakeBoard left = network.connect("Left", "noPortals");
+            final FakeBoard right = network.connect("Right", "noPortals");
+            left.out.println("ballThroughWall newBoardName=Right wallOrientation=Right name=Ball x=19.9 y=3.0 xVelocity=2.0 yVelocity=-1.0");
+            assertEquals("Expected ball removed from sender", "success. remove ball name=Ball", left.in.readLine());
+            assertEquals("Expected ball entering the left side",
+                         "ballEntering name=Ball x=0.25 y=3.0 xVelocity=2.0 yVelocity=-1.0", right.in.readLine());
+            right.out.println("addWall board=Left side=Right");
+            assertEquals("Expected wall forwarded", "addWall side=Right", left.in.readLine());
+        }
+    }
+
+    //covers ballThroughWall with the destination not connected, board disconnects
+    @Test
+    public void testDestinationGone() throws IOException, InterruptedException {
+        try (Network network = new Network()) {
+            final FakeBoard left = network.connect("Left", "noPortals");
+            final FakeBoard right = network.connect("Right", "noPortals");
+            right.socket.close();
+            final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            String reply;
+            do {
+                Thread.sleep(10);
+                left.out.println("ballThroughWall newBoardName=Right wallOrientation=Right name=Ball x=19.9 y=3.0 xVelocity=2.0 yVelocity=-1.0");
+                reply = left.in.readLine();
+            } while (!reply.startsWith("addWall") && System.currentTimeMillis() < deadline);
+            assertEquals("Expected wall put back", "addWall side=Right", reply);
+        }
+    }
+
+    //covers portalExiting with the destination having the portal
+    @Test
+    public void testPortalExiting() throws IOException, InterruptedException {
+        try (Network network = new Network()) {
+            final FakeBoard from = network.connect("From", "noPortals");
+            final FakeBoard to = network.connect("To", "sendingPortals Alpha Beta");
+            from.out.println("portalExiting newBoardName=To newPortalName=Beta ball=Ball xVelocity=1.5 yVelocity=2.5");
+            assertEquals("Expected ball entering the portal",
+                         "enteringPortal portalName=Beta ballName=Ball xVelocity=1.5 yVelocity=2.5", to.in.readLine());
+            assertEquals("Expected ball removed from sender", "success. remove ball name=Ball", from.in.readLine());
+        }
+    }
+
+    //covers serve(ThreadFactory) with platform threads, threadFactory platform
+    @Test
+    public void testPlatformThreads() throws IOException, InterruptedException {
+        try (Network network = new Network(FlingballServer.threadFactory("platform"))) {
+            final FakeBoard left = network.connect("Left", "noPortals");
+            final FakeBoard right = network.connect("Right", "sendingPortals Alpha");
+            for (int i = 0; i < 100; i++) {
+                left.out.println("portalExiting newBoardName=Right newPortalName=Alpha ball=Ball" + i + " xVelocity=1.0 yVelocity=2.0");
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals("Expected ball entering the portal",
+                             "enteringPortal portalName=Alpha ballName=Ball" + i + " xVelocity=1.0 yVelocity=2.0", right.in.readLine());
+                assertEquals("Expected ball removed from sender", "success. remove ball name=Ball" + i, left.in.readLine());
+            }
+        }
+    }
+
+    //covers threadFactory virtual
+    @Test
+    public void testVirtualThreadFactory() {
+        final String version = System.getProperty("java.specification.version");
+        final int feature = version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+        if (feature >= 21) {
+            final Thread thread = FlingballServer.threadFactory("virtual").newThread(() -> {});
+            assertNotNull("Expected a thread", thread);
+        } else {
+            try {
+                FlingballServer.threadFactory("virtual");
+                fail("Expected a runtime without virtual threads to refuse");
+            } catch (IllegalArgumentException e) {
+                assertTrue("Expected the reason", e.getMessage().contains("Java 21"));
+            }
+        }
+    }
+
+    //covers threadFactory unknown mode
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownThreadFactory() {
+        FlingballServer.threadFactory("green");
+    }
+
+    //covers many boards sending to one board at once
+    @Test
+    public void testManySendersLinesWhole() throws IOException, InterruptedException {
+        final int senders = 4;
+        final int balls = 200;
+        try (Network network = new Network()) {
+            final FakeBoard target = network.connect("Target", "noPortals");
+            final List<Thread> threads = new ArrayList<>();
+            for (int s = 0; s < senders; s++) {
+                final FakeBoard sender = network.connect("Sender" + s, "noPortals");
+                final Thread thread = new Thread(() -> {
+                    for (int i = 0; i < balls; i++) {
+                        sender.out.println("ballThroughWall newBoardName=Target wallOrientation=Top name=Ball" + i
+                                           + " x=5.0 y=0.1 xVelocity=1.0 yVelocity=-3.0");
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) thread.join();
+            for (int i = 0; i < senders*balls; i++) {
+                final String line = target.in.readLine();
+                assertTrue("Expected a whole line: " + line,
+                           line.matches("ballEntering name=Ball[0-9]+ x=5\\.0 y=19\\.75 xVelocity=1\\.0 yVelocity=-3\\.0"));
+            }
+        }
+    }
+
+    //covers text board to binary board and back, on the selector and on platform threads
+    @Test
+    public void testBinaryAndTextBoards() throws IOException, InterruptedException {
+        for (Optional<ThreadFactory> handlers : Arrays.asList(Optional.<ThreadFactory>empty(),
+                                                              Optional.of(FlingballServer.threadFactory("platform")))) {
+            try (Network network = new Network(handlers)) {
+                final FakeBoard text = network.connect("Text", "noPortals");
+                final BinaryBoard binary = network.connectBinary("Binary", "Gate");
+                text.out.println("portalExiting newBoardName=Binary newPortalName=Gate ball=Ball xVelocity=1.5 yVelocity=2.5");
+                assertEquals("Expected ball entering the portal", WireMessage.enteringPortal("Gate", "Ball", 1.5, 2.5), binary.read());
+                assertEquals("Expected ball removed from sender", "success. remove ball name=Ball", text.in.readLine());
+                binary.write(WireMessage.ballThroughWall("Text", "Bottom", "Ball", 4.0, 19.9, 0.5, 6.0));
+                assertEquals("Expected ball removed from sender", WireMessage.removeBall("Ball"), binary.read());
+                assertEquals("Expected ball entering the top",
+                             "ballEntering name=Ball x=4.0 y=0.25 xVelocity=0.5 yVelocity=6.0", text.in.readLine());
+            }
+        }
+    }
+
+    //covers requests to several boards in one batch, replies to the sender together
+    @Test
+    public void testBatchedRequests() throws IOException, InterruptedException {
+        try (Network network = new Network()) {
+            final FakeBoard east = network.connect("East", "noPortals");
+            final FakeBoard west = network.connect("West", "noPortals");
+            final BinaryBoard sender = network.connectBinary("Sender");
+            sender.write(WireMessage.batch(Arrays.asList(
+                    WireMessage.ballThroughWall("East", "Right", "A", 19.9, 3.0, 1.0, 0.0),
+                    WireMessage.ballThroughWall("West", "Left", "B", 0.1, 4.0, -1.0, 0.0),
+                    WireMessage.ballThroughWall("East", "Right", "C", 19.9, 5.0, 2.0, 0.0),
+                    WireMessage.ballThroughWall("Gone", "Top", "D", 3.0, 0.1, 0.0, -1.0))));
+            assertEquals("Expected all replies to the sender in one batch", WireMessage.batch(Arrays.asList(
+                    WireMessage.removeBall("A"), WireMessage.removeBall("B"), WireMessage.removeBall("C"),
+                    WireMessage.addWall("Top"))), sender.read());
+            assertEquals("Expected first ball", "ballEntering name=A x=0.25 y=3.0 xVelocity=1.0 yVelocity=0.0", east.in.readLine());
+            assertEquals("Expected third ball", "ballEntering name=C x=0.25 y=5.0 xVelocity=2.0 yVelocity=0.0", east.in.readLine());
+            assertEquals("Expected second ball", "ballEntering name=B x=19.75 y=4.0 xVelocity=-1.0 yVelocity=0.0", west.in.readLine());
+        }
+    }
+
+    //covers metrics of messages by type, bytes and latency, on the selector and on platform threads
+    @Test
+    public void testMetrics() throws IOException, InterruptedException {
+        for (Optional<ThreadFactory> handlers : Arrays.asList(Optional.<ThreadFactory>empty(),
+                                                              Optional.of(FlingballServer.threadFactory("platform")))) {
+            try (Network network = new Network(handlers)) {
+                final FakeBoard text = network.connect("Text", "noPortals");
+                final BinaryBoard binary = network.connectBinary("Binary");
+                binary.write(WireMessage.batch(Arrays.asList(
+                        WireMessage.ballThroughWall("Text", "Right", "A", 19.9, 3.0, 1.0, 0.0),
+                        WireMessage.ballThroughWall("Text", "Right", "B", 19.9, 4.0, 1.0, 0.0))));
+                binary.read();
+                text.in.readLine();
+                text.in.readLine();
+                final ServerMetrics metrics = network.server.metrics();
+                final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+                while (metrics.forwardedCount() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+                // the probes sent while connecting are counted too
+                assertEquals("Expected registrations", 2, metrics.received(WireMessage.Type.REGISTER));
+                assertEquals("Expected one batch", 1, metrics.received(WireMessage.Type.BATCH));
+                assertEquals("Expected balls and probes", 4, metrics.received(WireMessage.Type.BALL_THROUGH_WALL));
+                assertEquals("Expected balls removed", 2, metrics.sent(WireMessage.Type.REMOVE_BALL));
+                assertEquals("Expected balls entering", 2, metrics.sent(WireMessage.Type.BALL_ENTERING));
+                assertTrue("Expected bytes read", metrics.bytesIn() > 0);
+                assertTrue("Expected bytes written", metrics.bytesOut() > 0);
+                assertTrue("Expected latencies of the replies", metrics.forwardedCount() >= 2);
+                assertTrue("Expected JSON", metrics.toJson().contains("\"BALL_THROUGH_WALL\":4"));
+            }
+        }
+    }
+
+    //covers latency measured from when the request was received
+    @Test
+    public void testLatencyFromReceived() throws IOException {
+        try (Network network = new Network()) {
+            final RecordingConnection left = new RecordingConnection();
+            final RecordingConnection right = new RecordingConnection();
+            network.server.register(WireMessage.register("Left", Arrays.asList()), left);
+            network.server.register(WireMessage.register("Right", Arrays.asList()), right);
+            final long receivedNanos = System.nanoTime() - 1_000_000_000L; // as if it waited a second for a worker
+            network.server.handleRequest(left, WireMessage.ballThroughWall("Right", "Right", "Ball", 19.9, 3.0, 1.0, 0.0),
+                                         receivedNanos);
+            assertEquals("Expected reply timed from when the request was received",
+                         Arrays.asList(receivedNanos), left.forwardedNanos);
+            assertEquals("Expected forwarded ball timed from when the request was received",
+                         Arrays.asList(receivedNanos), right.forwardedNanos);
+        }
+    }
+
+    //covers BoardClient asking for binary
+    @Test
+    public void testBoardClientBinary() throws IOException, InterruptedException {
+        try (Network network = new Network()) {
+            final FakeBoard text = network.connect("Text", "noPortals");
+            final Board board = new Board("Client");
+            final BoardClient client = new BoardClient("localhost", network.server.getPort(), board, true);
+            try {
+                assertTrue("Expected binary accepted", client.isBinary());
+                client.startListening();
+                // the request bounces with addWall until the client's board is registered
+                String reply;
+                do {
+                    text.out.println("ballThroughWall newBoardName=Client wallOrientation=Left name=Ball x=0.1 y=5.0 xVelocity=-1.0 yVelocity=0.0");
+                    reply = text.in.readLine();
+                } while (reply.startsWith("addWall"));
+                assertEquals("Expected ball removed from sender", "success. remove ball name=Ball", reply);
+                final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+                while (!board.getBallsNames().contains("Ball") && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                    board.step(1);
+                }
+                assertTrue("Expected ball to arrive", board.getBallsNames().contains("Ball"));
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    /*
+     * A connection that remembers when the requests it was forwarded replies to were received.
+     */
+    private static class RecordingConnection implements ServerConnection {
+        private final List<Long> forwardedNanos = new ArrayList<>();
+
+        @Override
+        public void send(final WireMessage message) {
+            // dropped
+        }
+
+        @Override
+        public void forward(final WireMessage message, final long receivedNanos) {
+            forwardedNanos.add(receivedNanos);
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+
+    /*
+     * A server running on its own thread, and the boards connected to it.
+     * Closing it disconnects the boards and stops the server.
+     */
+    private static class Network implements AutoCloseable {
+        private final FlingballServer server = new FlingballServer(0, 2);
+        private final Thread serveThread;
+        private final List<Socket> sockets = new ArrayList<>();
+
+        /*
+         * Starts a server that serves boards from a selector thread.
+         */
+        private Network() throws IOException {
+            this(Optional.empty());
+        }
+
+        /*
+         * Starts a server that serves each board on a thread of its own.
+         */
+        private Network(final ThreadFactory handlers) throws IOException {
+            this(Optional.of(handlers));
+        }
+
+        /*
+         * Starts a server that serves boards from a selector thread, or on threads of their own if handlers is present.
+         */
+        private Network(final Optional<ThreadFactory> handlers) throws IOException {
+            serveThread = new Thread(() -> {
+                try {
+                    if (handlers.isPresent()) {
+                        server.serve(handlers.get());
+                    } else {
+                        server.serve();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            serveThread.start();
+        }
+
+        /*
+         * Connects a board to the server and waits until the server has registered it.
+         */
+        private FakeBoard connect(final String name, final String portals) throws IOException {
+            final Socket socket = new Socket("localhost", server.getPort());
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            sockets.add(socket);
+            final FakeBoard board = new FakeBoard(socket);
+            board.out.println(name);
+            board.out.println(portals);
+            // a request to a board that does not exist is answered once the board is registered
+            board.out.println("ballThroughWall newBoardName=Nowhere wallOrientation=Left name=Probe x=0 y=0 xVelocity=0 yVelocity=0");
+            assertEquals("Expected board registered", "addWall side=Left", board.in.readLine());
+            return board;
+        }
+
+        /*
+         * Connects a board that speaks the binary encoding and waits until the server has registered it.
+         */
+        private BinaryBoard connectBinary(final String name, final String... portals) throws IOException {
+            final Socket socket = new Socket("localhost", server.getPort());
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            sockets.add(socket);
+            final BinaryBoard board = new BinaryBoard(socket);
+            board.out.write(new byte[] {BinaryCodec.MAGIC, BinaryCodec.VERSION});
+            board.out.flush();
+            assertEquals("Expected handshake accepted", BinaryCodec.MAGIC, board.in.readByte());
+            assertEquals("Expected handshake accepted", BinaryCodec.VERSION, board.in.readByte());
+            board.write(WireMessage.register(name, Arrays.asList(portals)));
+            board.write(WireMessage.ballThroughWall("Nowhere", "Left", "Probe", 0, 0, 0, 0));
+            assertEquals("Expected board registered", WireMessage.addWall("Left"), board.read());
+            return board;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Socket socket : sockets) socket.close();
+            server.close();
+            try {
+                serveThread.join(TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*
+     * A board connected to the server through a plain socket.
+     */
+    private static class FakeBoard {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        private FakeBoard(final Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+        }
+    }
+
+    /*
+     * A board connected to the server through a plain socket, speaking the binary encoding.
+     */
+    private static class BinaryBoard {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final BinaryCodec codec = new BinaryCodec();
+
+        private BinaryBoard(final Socket socket) throws IOException {
+            this.in = new DataInputStream(socket.getInputStream());
+            this.out = new DataOutputStream(socket.getOutputStream());
+        }
+
+        private void write(final WireMessage message) throws IOException {
+            out.write(codec.encode(message));
+            out.flush();
+        }
+
+        private WireMessage read() throws IOException {
+            return codec.read(in);
+        }
+    }
+
+}
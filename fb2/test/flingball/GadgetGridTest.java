@@ -0,0 +1,95 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class GadgetGridTest {
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // Testing strategy
+    //  - add: partition into gadget covering one cell, gadget covering many cells, gadget on the edge of the board
+    //  - remove: partition into gadget in the grid, gadget not in the grid
+    //  - getCandidates: partition into box touching no gadget, box touching one cell of a gadget,
+    //                   box touching many cells of the same gadget, ball moving towards a gadget,
+    //                   ball at rest next to a gadget
+    
+    private static final Gadget SQUARE = new SquareBumper("Square", 2, 2);
+    private static final Gadget ABSORBER = new Absorber("Absorber", 0, 18, 20, 2);
+    private static final Gadget CIRCLE = new CircleBumper("Circle", 19, 0);
+    
+    private static GadgetGrid makeGrid() {
+        final GadgetGrid grid = new GadgetGrid();
+        grid.add(SQUARE);
+        grid.add(ABSORBER);
+        grid.add(CIRCLE);
+        return grid;
+    }
+    
+    //covers getCandidates with a box touching no gadget, add with gadget on the edge of the board
+    @Test
+    public void testCandidatesEmpty() {
+        final List<Gadget> result = new ArrayList<>(Arrays.asList(SQUARE));
+        makeGrid().getCandidates(10.2, 10.2, 10.8, 10.8, result);
+        assertTrue("Expected no candidates", result.isEmpty());
+    }
+    
+    //covers getCandidates with a box touching one cell of a gadget, add with gadget covering one cell
+    @Test
+    public void testCandidatesOneCell() {
+        final List<Gadget> result = new ArrayList<>();
+        makeGrid().getCandidates(2.5, 2.5, 2.6, 2.6, result);
+        assertEquals("Expected square bumper", Arrays.asList(SQUARE), result);
+    }
+    
+    //covers getCandidates with a box touching many cells of the same gadget, add with gadget covering many cells
+    @Test
+    public void testCandidatesManyCells() {
+        final List<Gadget> result = new ArrayList<>();
+        makeGrid().getCandidates(0, 17.5, 20, 20, result);
+        assertEquals("Expected absorber exactly once", Arrays.asList(ABSORBER), result);
+    }
+    
+    //covers getCandidates with a ball moving towards a gadget
+    @Test
+    public void testCandidatesMovingBall() {
+        final List<Gadget> result = new ArrayList<>();
+        final Ball ball = new Ball("Ball", 5.5, 2.5, -1000, 0);
+        makeGrid().getCandidates(ball, 0.002, result);
+        assertEquals("Expected square bumper", Arrays.asList(SQUARE), result);
+        makeGrid().getCandidates(ball, 0, result);
+        assertTrue("Expected nothing within reach of a stopped sweep", result.isEmpty());
+    }
+    
+    //covers getCandidates with a ball at rest touching a gadget
+    @Test
+    public void testCandidatesTouchingBall() {
+        final List<Gadget> result = new ArrayList<>();
+        final Ball ball = new Ball("Ball", 3.25, 2.5, 0, 0);
+        makeGrid().getCandidates(ball, 0.002, result);
+        assertEquals("Expected square bumper", Arrays.asList(SQUARE), result);
+    }
+    
+    //covers remove with a gadget in the grid and a gadget not in the grid
+    @Test
+    public void testRemove() {
+        final GadgetGrid grid = makeGrid();
+        grid.remove(SQUARE);
+        grid.remove(new SquareBumper("Other", 5, 5));
+        assertEquals("Expected two gadgets", 2, grid.size());
+        final List<Gadget> result = new ArrayList<>();
+        grid.getCandidates(0, 0, 20, 20, result);
+        assertEquals("Expected remaining gadgets", new HashSet<>(Arrays.asList(ABSORBER, CIRCLE)), new HashSet<>(result));
+        assertEquals("Expected no duplicates", 2, result.size());
+    }
+    
+}
@@ -2,10 +2,12 @@ package flingball;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -68,6 +70,11 @@ public class GadgetTest {
     //  Absorber - Partition into two absorbers that have same name, position, width, height; two absorbers with same name, position, different
     //  width and height; two absorbers with same name, width and height, different position; two absorbers with same position, width and 
     //  height, different names
+    //
+    //mayCollide:
+    //  Partition into ball far from the gadget, touching its bounding box, reaching the box only by moving fast;
+    //  every kind of gadget; never false for a ball that collides within the time
+    //  resolveCollision: ball for which mayCollide is false is left unchanged
     
     private static final Vect SHOOTOUT_VELOCITY = new Vect(0, -50);
 
@@ -496,4 +503,48 @@ public class GadgetTest {
         assertFalse("Expected to not have the same value",ABSORBER_1.sameValue(ABSORBER_2));
     }
        
+    //covers mayCollide of a ball far from the gadget, touching its box, reaching it only by moving fast;
+    //resolveCollision of a ball for which mayCollide is false
+    @Test
+    public void testMayCollide() {
+        final Gadget square = new SquareBumper("Square", 5, 5);
+        final Ball far = new Ball("Far", 3, 5.5, -10, 0);
+        assertFalse("Expected a far ball to miss", square.mayCollide(far, Gadget.COLLISION_WINDOW));
+        assertFalse("Expected no collision", square.resolveCollision(far));
+        assertEquals("Expected same velocity", new Vect(-10, 0), far.getVelocity());
+        final Ball touching = new Ball("Touching", 4.76, 5.5, 0, 0);
+        assertTrue("Expected a ball touching the box to maybe collide",
+                   square.mayCollide(touching, Gadget.COLLISION_WINDOW));
+        final Ball fast = new Ball("Fast", 3, 5.5, 1000, 0);
+        assertTrue("Expected a fast ball to maybe collide", square.mayCollide(fast, Gadget.COLLISION_WINDOW));
+        assertFalse("Expected a fast ball to miss in no time", square.mayCollide(fast, 0));
+    }
+
+    //covers mayCollide of every kind of gadget, never false for a ball that collides
+    @Test
+    public void testMayCollideNeverMissesCollision() throws IOException {
+        final Board board = new Board("Board");
+        final List<Gadget> gadgets = Arrays.asList(new SquareBumper("Square", 4, 4),
+                                                   new CircleBumper("Circle", 8, 4),
+                                                   new TriangleBumper("Triangle", 12, 4, 90, 1.0),
+                                                   new Absorber("Absorber", 4, 10, 3, 2),
+                                                   new Flipper("Flipper", 10, 10, 0, "left"),
+                                                   new Portal("Portal", 15, 10, board, "Other"));
+        final Random random = new Random(25);
+        for (Gadget gadget : gadgets) {
+            int colliding = 0;
+            for (int i = 0; i < 5000; i++) {
+                final double x = gadget.getPosition().x() - 2 + random.nextDouble()*(gadget.getWidth() + 4);
+                final double y = gadget.getPosition().y() - 2 + random.nextDouble()*(gadget.getHeight() + 4);
+                final Ball ball = new Ball("Ball", x, y, random.nextDouble()*800 - 400, random.nextDouble()*800 - 400);
+                if (gadget.timeUntilCollision(ball) < Gadget.COLLISION_WINDOW) {
+                    colliding++;
+                    assertTrue("Expected a colliding ball to maybe collide with " + gadget.getName() + ": " + ball,
+                               gadget.mayCollide(ball, Gadget.COLLISION_WINDOW));
+                }
+            }
+            assertTrue("Expected some colliding balls for " + gadget.getName(), colliding > 0);
+        }
+    }
+
 }
@@ -0,0 +1,63 @@
+package flingball;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class HeadlessFlingballTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /*
+     * Testing strategy
+     *   run:
+     *     partition on duration: 0, a multiple of step, not a multiple of step
+     *     partition on board: board read from a file, board with a portal to another board and no server
+     */
+
+    //covers duration 0
+    @Test
+    public void testRunZeroDuration() throws UnableToParseException, IOException {
+        final Board board = BoardParser.parse("boards/default.fb");
+        assertEquals("Expected no steps", 0, HeadlessFlingball.run(board, 0, 1));
+    }
+
+    //covers duration a multiple of step, board read from a file
+    @Test
+    public void testRunSameAsStepping() throws UnableToParseException, IOException {
+        final Board headless = BoardParser.parse("boards/default.fb");
+        final Board stepped = BoardParser.parse("boards/default.fb");
+        assertEquals("Expected one step per millisecond", 1000, HeadlessFlingball.run(headless, 1000, 1));
+        for (int i = 0; i < 1000; i++) {
+            stepped.step(1);
+        }
+        assertTrue("Expected same result as stepping the board", headless.sameValue(stepped));
+    }
+
+    //covers duration not a multiple of step
+    @Test
+    public void testRunPartialStep() throws UnableToParseException, IOException {
+        final Board board = BoardParser.parse("boards/default.fb");
+        assertEquals("Expected only whole steps", 33, HeadlessFlingball.run(board, 100, 3));
+    }
+
+    //covers board with a portal to another board and no server
+    @Test
+    public void testRunPortalWithoutServer() throws IOException {
+        final Board board = new Board("Board", 0, 0, 0);
+        board.addGadget(new Portal("Portal", 5, 10, board, "Other", "OtherBoard"));
+        final Ball ball = new Ball("Ball", 2, 10.5, 10, 0);
+        board.addBall(ball);
+        assertEquals("Expected all steps to run", 500, HeadlessFlingball.run(board, 500, 1));
+        assertTrue("Expected ball to stay on the board", board.getBallsNames().contains("Ball"));
+    }
+
+}
@@ -0,0 +1,71 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - bucket, lowest, highest: latencies below the exact range's end, at powers of two, huge latencies;
+    //      every latency within its bucket, buckets in order, relative width at most 1/16
+    //  - record: negative, zero, positive latencies
+    //  - percentile, count, max: nothing recorded, one latency, many latencies; median, tail, 100th percentile
+
+    //covers bucket, lowest, highest
+    @Test
+    public void testBuckets() {
+        int previous = -1;
+        for (long nanos : new long[] {0, 1, 15, 16, 17, 31, 32, 33, 1000, 1023, 1024, 123456789L,
+                                      1L << 40, (1L << 40) + 1, Long.MAX_VALUE}) {
+            final int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue("Expected buckets in order", bucket >= previous);
+            assertTrue("Expected " + nanos + " in its bucket",
+                       LatencyHistogram.lowest(bucket) <= nanos && nanos <= LatencyHistogram.highest(bucket));
+            final long width = LatencyHistogram.highest(bucket) - LatencyHistogram.lowest(bucket) + 1;
+            assertTrue("Expected narrow bucket for " + nanos, width == 1 || width <= LatencyHistogram.lowest(bucket) / 16);
+            previous = bucket;
+        }
+        assertEquals("Expected exact small latencies", LatencyHistogram.lowest(LatencyHistogram.bucket(7)),
+                     LatencyHistogram.highest(LatencyHistogram.bucket(7)));
+    }
+
+    //covers nothing recorded
+    @Test
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals("Expected no latencies", 0, histogram.count());
+        assertEquals("Expected no max", 0, histogram.max());
+        assertEquals("Expected no percentile", 0, histogram.percentile(0.5));
+    }
+
+    //covers record negative, zero, one latency
+    @Test
+    public void testOne() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals("Expected negative as zero", 0, histogram.max());
+        histogram.record(5000);
+        assertEquals("Expected two latencies", 2, histogram.count());
+        assertEquals("Expected max", 5000, histogram.max());
+        assertEquals("Expected 100th percentile at the max", 5000, histogram.percentile(1));
+        assertEquals("Expected median at zero", 0, histogram.percentile(0.5));
+    }
+
+    //covers many latencies, median, tail
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100000; nanos++) histogram.record(nanos * 1000);
+        assertEquals("Expected every latency", 100000, histogram.count());
+        assertEquals("Expected median", 50e6, histogram.percentile(0.5), 50e6 / 16);
+        assertEquals("Expected 99th percentile", 99e6, histogram.percentile(0.99), 99e6 / 16);
+        assertEquals("Expected max", 100000000L, histogram.percentile(1));
+    }
+
+}
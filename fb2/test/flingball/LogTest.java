@@ -0,0 +1,142 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class LogTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - level: below the threshold, at it, above it; OFF
+    //  - fields: none, one, two
+    //  - threads: one, several logging at once
+    //  - ring: has room, full while the output is blocked
+
+    //covers below, at and above the threshold, OFF, no fields, one field, two fields
+    @Test
+    public void testLevels() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Log.Level saved = Log.getLevel();
+        try {
+            Log.setOutput(new PrintStream(bytes, true));
+            Log.setLevel(Log.Level.INFO);
+            assertFalse("Expected DEBUG disabled", Log.enabled(Log.Level.DEBUG));
+            Log.debug("hidden", "key", "value");
+            Log.info("shown");
+            Log.info("shown", "key", "value");
+            Log.warn("shown", "key", 1, "other", 2.5);
+            Log.setLevel(Log.Level.OFF);
+            Log.error("hidden", "key", "value");
+            assertTrue("Expected entries written", Log.flush(TIMEOUT_MILLIS));
+        } finally {
+            Log.setLevel(saved);
+            Log.setOutput(System.err);
+        }
+        final String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals("Expected three lines", 3, lines.length);
+        assertTrue("Expected event " + lines[0], lines[0].endsWith(" INFO [" + Thread.currentThread().getName() + "] shown"));
+        assertTrue("Expected one field " + lines[1], lines[1].endsWith("] shown key=value"));
+        assertTrue("Expected two fields " + lines[2], lines[2].contains(" WARN ") && lines[2].endsWith("] shown key=1 other=2.5"));
+        assertTrue("Expected time of day " + lines[0], lines[0].matches("\\d\\d:\\d\\d:\\d\\d\\.\\d\\d\\d .*"));
+    }
+
+    //covers several threads logging at once
+    @Test
+    public void testThreads() throws InterruptedException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Log.Level saved = Log.getLevel();
+        final int threads = 4;
+        final int entries = 500;
+        try {
+            Log.setOutput(new PrintStream(bytes, true));
+            Log.setLevel(Log.Level.DEBUG);
+            final List<Thread> loggers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final String name = "logger" + t;
+                loggers.add(new Thread(() -> {
+                    for (int i = 0; i < entries; i++) Log.debug("entry", "thread", name, "i", i);
+                }, name));
+            }
+            for (Thread logger : loggers) logger.start();
+            for (Thread logger : loggers) logger.join();
+            assertTrue("Expected entries written", Log.flush(TIMEOUT_MILLIS));
+        } finally {
+            Log.setLevel(saved);
+            Log.setOutput(System.err);
+        }
+        final String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals("Expected every entry", threads * entries, lines.length);
+        for (int t = 0; t < threads; t++) {
+            // each thread's entries are written in the order it logged them
+            int next = 0;
+            for (String line : lines) {
+                if (line.contains(" thread=logger" + t + " ")) {
+                    assertTrue("Expected entry " + next + " of thread " + t + ": " + line, line.endsWith(" i=" + next));
+                    next++;
+                }
+            }
+            assertEquals("Expected all entries of thread " + t, entries, next);
+        }
+    }
+
+    //covers ring full while the output is blocked
+    @Test
+    public void testFull() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final OutputStream blocked = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                bytes.write(b);
+            }
+        };
+        final Log.Level saved = Log.getLevel();
+        try {
+            Log.setOutput(new PrintStream(blocked, true));
+            Log.setLevel(Log.Level.INFO);
+            for (int i = 0; i < 10000; i++) Log.info("flood", "i", i);
+            release.countDown();
+            // wait for the flood to drain, so the ring has room again
+            assertTrue("Expected flood written", Log.flush(TIMEOUT_MILLIS));
+            Log.info("after");
+            assertTrue("Expected entries written", Log.flush(TIMEOUT_MILLIS));
+            // the writer reports drops once it has caught up
+            final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (!written(bytes).contains("Log dropped ") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            Log.setLevel(saved);
+            Log.setOutput(System.err);
+        }
+        final String text = written(bytes);
+        assertTrue("Expected drops reported", text.contains("Log dropped "));
+        assertTrue("Expected later entry written", text.contains("] after"));
+    }
+
+    private static String written(final ByteArrayOutputStream bytes) {
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
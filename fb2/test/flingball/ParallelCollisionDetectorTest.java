@@ -0,0 +1,101 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class ParallelCollisionDetectorTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - Board.setCollisionThreads, getCollisionThreads: 1 thread, several threads
+    //  - ParallelCollisionDetector.shutdown: workers shut down
+    //  - Board.step with several collision threads:
+    //      partition on gadgets: bumpers only, absorbers and triggers, flippers, portals
+    //      partition on balls: few balls, more balls than one detection task covers
+    //      same outcome as stepping on one thread
+
+    private static final int STEPS = 2000;
+
+    //covers 1 thread and several threads
+    @Test
+    public void testCollisionThreads() throws IOException {
+        final Board board = new Board("Board");
+        assertEquals("Expected one thread by default", 1, board.getCollisionThreads());
+        board.setCollisionThreads(4);
+        assertEquals("Expected four threads", 4, board.getCollisionThreads());
+        board.setCollisionThreads(1);
+        assertEquals("Expected one thread", 1, board.getCollisionThreads());
+    }
+
+    //covers workers shut down
+    @Test
+    public void testShutdown() throws IOException {
+        final ParallelCollisionDetector detector = new ParallelCollisionDetector(new Board("Board"), new GadgetGrid(), 2);
+        assertFalse("Expected workers running", detector.isShutdown());
+        detector.shutdown();
+        assertTrue("Expected workers shut down", detector.isShutdown());
+    }
+
+    //covers absorbers and triggers, flippers, portals, few balls, same outcome as one thread
+    @Test
+    public void testShippedBoardsSameAsSerial() throws UnableToParseException, IOException {
+        final List<String> files = Arrays.asList("boards/default.fb", "boards/absorber.fb", "boards/flippers.fb",
+                                                 "boards/ball_collisions.fb", "boards/triggers.fb", "boards/boardA.fb");
+        for (String file : files) {
+            final Board serial = BoardParser.parse(file);
+            final Board parallel = BoardParser.parse(file);
+            parallel.setCollisionThreads(4);
+            for (int i = 0; i < STEPS; i++) {
+                serial.step(1);
+                parallel.step(1);
+            }
+            assertEquals("Expected same outcome as one thread for " + file,
+                         BatchFlingball.stateHash(serial), BatchFlingball.stateHash(parallel));
+        }
+    }
+
+    //covers bumpers only, more balls than one detection task covers, same outcome as one thread
+    @Test
+    public void testManyBallsSameAsSerial() throws IOException {
+        final Board serial = makeBoard();
+        final Board parallel = makeBoard();
+        parallel.setCollisionThreads(3);
+        for (int i = 0; i < STEPS; i++) {
+            serial.step(1);
+            parallel.step(1);
+        }
+        assertEquals("Expected same outcome as one thread",
+                     BatchFlingball.stateHash(serial), BatchFlingball.stateHash(parallel));
+    }
+
+    /*
+     * A board with a row of each kind of bumper and 500 balls moving in random directions.
+     */
+    private static Board makeBoard() throws IOException {
+        final Random random = new Random(6031);
+        final Board board = new Board("Bumpers");
+        for (int col = 0; col < 20; col += 2) {
+            board.addGadget(new SquareBumper("Square" + col, col, 5));
+            board.addGadget(new CircleBumper("Circle" + col, col, 10));
+            board.addGadget(new TriangleBumper("Triangle" + col, col, 15));
+        }
+        for (int i = 0; i < 500; i++) {
+            board.addBall(new Ball("Ball" + i, 0.5 + random.nextDouble()*19, 0.5 + random.nextDouble()*19,
+                                   random.nextDouble()*20 - 10, random.nextDouble()*20 - 10));
+        }
+        return board;
+    }
+
+}
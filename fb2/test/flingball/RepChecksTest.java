@@ -0,0 +1,78 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class RepChecksTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - mode: OFF, SAMPLED, FULL
+    //  - step: sampled step, other steps; boards stepping
+    //  - checked classes still work in every mode
+
+    //covers OFF, FULL
+    @Test
+    public void testOffAndFull() {
+        final RepChecks.Mode saved = RepChecks.getMode();
+        try {
+            RepChecks.setMode(RepChecks.Mode.OFF);
+            assertFalse("Expected no checks", RepChecks.enabled());
+            RepChecks.step();
+            assertFalse("Expected no checks after a step", RepChecks.enabled());
+            RepChecks.setMode(RepChecks.Mode.FULL);
+            assertTrue("Expected checks with assertions enabled", RepChecks.enabled());
+            RepChecks.step();
+            assertTrue("Expected checks after a step", RepChecks.enabled());
+        } finally {
+            RepChecks.setMode(saved);
+        }
+    }
+
+    //covers SAMPLED, sampled step, other steps
+    @Test
+    public void testSampled() {
+        final RepChecks.Mode saved = RepChecks.getMode();
+        final int savedPeriod = RepChecks.getSamplePeriod();
+        try {
+            RepChecks.setSamplePeriod(4);
+            RepChecks.setMode(RepChecks.Mode.SAMPLED);
+            int active = 0;
+            for (int i = 0; i < 40; i++) {
+                RepChecks.step();
+                if (RepChecks.enabled()) active++;
+            }
+            assertEquals("Expected one step in four checked", 10, active);
+        } finally {
+            RepChecks.setMode(saved);
+            RepChecks.setSamplePeriod(savedPeriod);
+        }
+    }
+
+    //covers boards stepping, checked classes in every mode
+    @Test
+    public void testBoardInEveryMode() throws IOException {
+        final RepChecks.Mode saved = RepChecks.getMode();
+        try {
+            for (RepChecks.Mode mode : RepChecks.Mode.values()) {
+                RepChecks.setMode(mode);
+                final Board board = new Board("Checked");
+                board.addGadget(new Absorber("Abs", 15, 0, 5, 2));
+                board.addGadget(new Flipper("Flip", 5, 5, 0, "left"));
+                board.addBall(new Ball("Ball", 1.5, 1.5, 2.0, 3.0));
+                for (int i = 0; i < 100; i++) board.step(Board.DEFAULT_TIMESTEP);
+                assertTrue("Expected ball on the board in mode " + mode, board.getBallsNames().contains("Ball"));
+            }
+        } finally {
+            RepChecks.setMode(saved);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RoutingTableTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - register: new board, board with the same name as a connected one; no portals, many portals;
+    //      more boards than the initial capacity
+    //  - unregister: connected board, board replaced by a newer connection, unknown board
+    //  - connection: connected, disconnected, never seen
+    //  - hasPortal: published, published by another board, unknown portal, disconnected board
+    //  - names, connections: none, some connected
+
+    //covers register new board with no portals, connection connected and never seen, names, connections
+    @Test
+    public void testRegister() {
+        final RoutingTable table = new RoutingTable();
+        assertEquals("Expected no boards", Collections.emptyList(), table.names());
+        final ServerConnection connection = new NullConnection();
+        table.register("Board", Collections.emptyList(), connection);
+        assertSame("Expected connection", connection, table.connection("Board").get());
+        assertFalse("Expected unknown board", table.connection("Other").isPresent());
+        assertEquals("Expected one board", Arrays.asList("Board"), table.names());
+        assertEquals("Expected one connection", Arrays.asList(connection), table.connections());
+    }
+
+    //covers hasPortal published, published by another board, unknown portal, many portals
+    @Test
+    public void testPortals() {
+        final RoutingTable table = new RoutingTable();
+        final List<String> portals = new ArrayList<>();
+        for (int i = 0; i < 500; i++) portals.add("Portal" + i);
+        table.register("Many", portals, new NullConnection());
+        table.register("One", Arrays.asList("Portal7"), new NullConnection());
+        assertTrue("Expected published portal", table.hasPortal("Many", "Portal499"));
+        assertTrue("Expected published portal", table.hasPortal("One", "Portal7"));
+        assertFalse("Expected portal of another board", table.hasPortal("One", "Portal8"));
+        assertFalse("Expected unknown portal", table.hasPortal("Many", "Elsewhere"));
+        assertFalse("Expected unknown board", table.hasPortal("Nowhere", "Portal7"));
+    }
+
+    //covers register same name, unregister connected and replaced and unknown, disconnected board
+    @Test
+    public void testUnregister() {
+        final RoutingTable table = new RoutingTable();
+        final ServerConnection first = new NullConnection();
+        final ServerConnection second = new NullConnection();
+        table.register("Board", Arrays.asList("Gate"), first);
+        table.register("Board", Arrays.asList("Gate"), second);
+        assertFalse("Expected replaced connection ignored", table.unregister("Board", first));
+        assertSame("Expected newer connection", second, table.connection("Board").get());
+        assertTrue("Expected board disconnected", table.unregister("Board", second));
+        assertFalse("Expected no connection", table.connection("Board").isPresent());
+        assertFalse("Expected no portals", table.hasPortal("Board", "Gate"));
+        assertFalse("Expected unknown board ignored", table.unregister("Other", second));
+        assertEquals("Expected no boards", Collections.emptyList(), table.names());
+    }
+
+    //covers more boards than the initial capacity
+    @Test
+    public void testGrow() {
+        final RoutingTable table = new RoutingTable();
+        final List<ServerConnection> connections = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final ServerConnection connection = new NullConnection();
+            connections.add(connection);
+            table.register("Board" + i, Arrays.asList("Gate" + i), connection);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertSame("Expected connection of board " + i, connections.get(i), table.connection("Board" + i).get());
+            assertTrue("Expected portal of board " + i, table.hasPortal("Board" + i, "Gate" + i));
+        }
+        assertEquals("Expected every connection", connections, table.connections());
+    }
+
+    /*
+     * A connection that drops everything sent to it.
+     */
+    private static class NullConnection implements ServerConnection {
+        @Override
+        public void send(final WireMessage message) {
+            // dropped
+        }
+
+        @Override
+        public void forward(final WireMessage message, final long receivedNanos) {
+            // dropped
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SimulationClockTest {
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+    
+    // Testing strategy
+    //  - advance: partition time passed into 0, less than one step, exactly one step, 
+    //             several steps with a remainder, more than MAX_STEPS_PER_ADVANCE steps
+    //  - getAlpha: partition into no leftover time, some leftover time
+    //  - nanosUntilNextStep: partition into no leftover time, some leftover time
+    
+    private static final long STEP = 1000;
+    
+    //covers advance with no time passed, getAlpha and nanosUntilNextStep with no leftover time
+    @Test
+    public void testAdvanceNoTime() {
+        final SimulationClock clock = new SimulationClock(STEP, 0);
+        assertEquals("Expected no steps", 0, clock.advance(0));
+        assertEquals("Expected alpha of 0", 0, clock.getAlpha(), 0.0001);
+        assertEquals("Expected a full step to wait", STEP, clock.nanosUntilNextStep());
+    }
+    
+    //covers advance with less than one step, getAlpha and nanosUntilNextStep with leftover time
+    @Test
+    public void testAdvancePartialStep() {
+        final SimulationClock clock = new SimulationClock(STEP, 0);
+        assertEquals("Expected no steps", 0, clock.advance(250));
+        assertEquals("Expected alpha of 0.25", 0.25, clock.getAlpha(), 0.0001);
+        assertEquals("Expected three quarters of a step to wait", 750, clock.nanosUntilNextStep());
+        assertEquals("Expected leftover time to accumulate into a step", 1, clock.advance(1000));
+        assertEquals("Expected alpha of 0", 0, clock.getAlpha(), 0.0001);
+    }
+    
+    //covers advance with exactly one step
+    @Test
+    public void testAdvanceOneStep() {
+        final SimulationClock clock = new SimulationClock(STEP, 500);
+        assertEquals("Expected one step", 1, clock.advance(1500));
+    }
+    
+    //covers advance with several steps and a remainder
+    @Test
+    public void testAdvanceSeveralSteps() {
+        final SimulationClock clock = new SimulationClock(STEP, 0);
+        assertEquals("Expected three steps", 3, clock.advance(3500));
+        assertEquals("Expected alpha of 0.5", 0.5, clock.getAlpha(), 0.0001);
+    }
+    
+    //covers advance with more than MAX_STEPS_PER_ADVANCE steps
+    @Test
+    public void testAdvanceTooManySteps() {
+        final SimulationClock clock = new SimulationClock(STEP, 0);
+        assertEquals("Expected steps to be capped", SimulationClock.MAX_STEPS_PER_ADVANCE, 
+                     clock.advance(STEP * (SimulationClock.MAX_STEPS_PER_ADVANCE + 10)));
+        assertEquals("Expected dropped steps not to be handed out later", 0, clock.advance(STEP * (SimulationClock.MAX_STEPS_PER_ADVANCE + 10)));
+    }
+    
+}
@@ -0,0 +1,213 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import physics.Circle;
+import physics.LineSegment;
+import physics.Physics;
+import physics.Vect;
+
+public class StaticGeometryTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - constructor: partition into no gadgets, static gadgets of every kind, gadgets that move
+    //  - owner: partition into compiled gadget, gadget that is not compiled
+    //  - timeUntilCollision, timeUntilWallCollision: partition into ball moving toward the geometry, moving away,
+    //                                                touching it, at rest, so slowly that its speed squared is 0;
+    //                                                ball held by an absorber; equal to the bit to Physics
+    //                                                and to the gadget's own timeUntilCollision()
+    //  - resolveCollision: partition into square, circle and triangle bumper, absorber; side, corner, miss;
+    //                      same result as the gadget's own resolveCollision()
+    //  - collidingWall: partition into no wall within 1 ms, a wall within 1 ms
+
+    private static final int SAMPLES = 2000;
+
+    private static final Wall LEFT = new Wall(new LineSegment(0, 0, 0, 20), "Left");
+    private static final Wall TOP = new Wall(new LineSegment(0, 0, 20, 0), "Top");
+    private static final Wall BOTTOM = new Wall(new LineSegment(0, 20, 20, 20), "Bottom");
+    private static final Wall RIGHT = new Wall(new LineSegment(20, 0, 20, 20), "Right");
+    private static final List<Wall> WALLS = Arrays.asList(LEFT, TOP, BOTTOM, RIGHT);
+
+    /*
+     * Makes one static gadget of every kind, with a coefficient other than 1 where there is one.
+     */
+    private static List<Gadget> makeGadgets() {
+        return Arrays.asList(new SquareBumper("Square", 2, 2, 0.9),
+                             new CircleBumper("Circle", 5, 2, 1.2),
+                             new TriangleBumper("Triangle0", 8, 2, 0, 1.0),
+                             new TriangleBumper("Triangle90", 11, 2, 90, 0.8),
+                             new TriangleBumper("Triangle180", 14, 2, 180, 1.0),
+                             new TriangleBumper("Triangle270", 17, 2, 270, 1.0),
+                             new Absorber("Absorber", 2, 6, 5, 2));
+    }
+
+    /*
+     * Makes a ball near a gadget, moving in a random direction, sometimes so close that it touches it.
+     */
+    private static Ball randomBall(final Random random, final Gadget gadget) {
+        final double x = gadget.getPosition().x() - 0.5 + random.nextDouble()*(gadget.getWidth() + 1);
+        final double y = gadget.getPosition().y() - 0.5 + random.nextDouble()*(gadget.getHeight() + 1);
+        final double speed = random.nextInt(10) == 0 ? 0 : random.nextDouble()*400;
+        final double angle = random.nextDouble()*2*Math.PI;
+        return new Ball("Ball", x, y, speed*Math.cos(angle), speed*Math.sin(angle));
+    }
+
+    private static double physicsTime(final Gadget gadget, final Ball ball) {
+        double mintime = Double.POSITIVE_INFINITY;
+        for (LineSegment line : gadget.getLineSegments()) {
+            mintime = Math.min(mintime, Physics.timeUntilWallCollision(line, ball.getCircle(), ball.getVelocity()));
+        }
+        for (Circle corner : gadget.getCircles()) {
+            mintime = Math.min(mintime, Physics.timeUntilCircleCollision(corner, ball.getCircle(), ball.getVelocity()));
+        }
+        return mintime;
+    }
+
+    //covers constructor with no gadgets, owner of a gadget that is not compiled
+    @Test
+    public void testWallsOnly() {
+        final StaticGeometry geometry = new StaticGeometry(WALLS, Collections.emptyList());
+        assertEquals("expected one segment per wall", 4, geometry.segmentCount());
+        assertEquals("expected no circles", 0, geometry.circleCount());
+        assertEquals("expected square not compiled", -1, geometry.owner(new SquareBumper("Square", 2, 2)));
+    }
+
+    //covers constructor with static gadgets and gadgets that move, owner of compiled gadgets
+    @Test
+    public void testOwners() throws IOException {
+        final List<Gadget> gadgets = new ArrayList<>(makeGadgets());
+        final Board board = new Board("Board");
+        gadgets.add(new Flipper("Flipper", 2, 12, 0, "left"));
+        gadgets.add(new Portal("Portal", 10, 12, board, "Other"));
+        final StaticGeometry geometry = new StaticGeometry(WALLS, gadgets);
+        for (Gadget gadget : gadgets) {
+            final int owner = geometry.owner(gadget);
+            assertEquals("expected owner only for static gadgets " + gadget.getName(),
+                         StaticGeometry.compiles(gadget), owner >= 0);
+            if (owner >= 0) assertSame("expected back-reference to the gadget", gadget, geometry.gadget(owner));
+        }
+        int segments = WALLS.size();
+        int circles = 0;
+        for (Gadget gadget : makeGadgets()) {
+            segments += gadget.getLineSegments().size();
+            circles += gadget.getCircles().size();
+        }
+        assertEquals("expected every segment", segments, geometry.segmentCount());
+        assertEquals("expected every circle", circles, geometry.circleCount());
+    }
+
+    //covers timeUntilCollision moving toward, away, touching, at rest; equal to Physics
+    @Test
+    public void testTimeUntilCollisionMatchesPhysics() {
+        final List<Gadget> gadgets = makeGadgets();
+        final StaticGeometry geometry = new StaticGeometry(WALLS, gadgets);
+        final Random random = new Random(22);
+        for (Gadget gadget : gadgets) {
+            final int owner = geometry.owner(gadget);
+            for (int i = 0; i < SAMPLES; i++) {
+                final Ball ball = randomBall(random, gadget);
+                assertEquals("expected same time as Physics for " + gadget.getName() + " and " + ball,
+                             Double.doubleToLongBits(physicsTime(gadget, ball)),
+                             Double.doubleToLongBits(geometry.timeUntilCollision(owner, ball)));
+            }
+        }
+    }
+
+    //covers timeUntilCollision with a ball so slow its speed squared is 0, and a ball held by an absorber
+    @Test
+    public void testTimeUntilCollisionMatchesGadgets() {
+        final List<Gadget> gadgets = makeGadgets();
+        final StaticGeometry geometry = new StaticGeometry(WALLS, gadgets);
+        final Random random = new Random(23);
+        for (Gadget gadget : gadgets) {
+            final int owner = geometry.owner(gadget);
+            for (int i = 0; i < SAMPLES; i++) {
+                final Ball ball = randomBall(random, gadget);
+                if (i % 2 == 0) {
+                    ball.setVelocity(new Vect(ball.getVelocityX()*1e-160, ball.getVelocityY()*1e-160));
+                }
+                assertEquals("expected same time as " + gadget.getName() + " for " + ball,
+                             Double.doubleToLongBits(gadget.timeUntilCollision(ball)),
+                             Double.doubleToLongBits(geometry.timeUntilCollision(owner, ball)));
+            }
+        }
+        final Gadget absorber = gadgets.get(gadgets.size() - 1);
+        final Ball held = new Ball("Held", 6.75, 7.75, 0, 0);
+        held.setAbsorbed(true);
+        assertEquals("expected no collision for a held ball", Double.POSITIVE_INFINITY,
+                     geometry.timeUntilCollision(geometry.owner(absorber), held), 0);
+    }
+
+    //covers timeUntilWallCollision and collidingWall, with and without a wall within 1 ms
+    @Test
+    public void testWallsMatchPhysics() {
+        final StaticGeometry geometry = new StaticGeometry(WALLS, Collections.emptyList());
+        final Random random = new Random(2);
+        int colliding = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            final double angle = random.nextDouble()*2*Math.PI;
+            final double speed = random.nextDouble()*400;
+            final Ball ball = new Ball("Ball", 0.25 + random.nextDouble()*19.5, 0.25 + random.nextDouble()*19.5,
+                                       speed*Math.cos(angle), speed*Math.sin(angle));
+            long mintime = Long.MAX_VALUE;
+            Wall expected = null;
+            double time = Double.POSITIVE_INFINITY;
+            for (Wall wall : WALLS) {
+                final double seconds = Physics.timeUntilWallCollision(wall.getLineSegment(), ball.getCircle(), ball.getVelocity());
+                time = Math.min(time, seconds);
+                if ((long) (seconds*1000) < mintime) {
+                    mintime = (long) (seconds*1000);
+                    expected = wall;
+                }
+            }
+            if (mintime > 1) expected = null;
+            if (expected != null) colliding++;
+            assertEquals("expected same time as Physics",
+                         Double.doubleToLongBits(time), Double.doubleToLongBits(geometry.timeUntilWallCollision(ball)));
+            assertSame("expected same wall", expected, geometry.collidingWall(ball));
+        }
+        assertTrue("expected some balls within 1 ms of a wall", colliding > 0);
+    }
+
+    //covers resolveCollision of every kind of gadget, on sides, corners and misses
+    @Test
+    public void testResolveCollisionMatchesGadgets() {
+        final List<Gadget> gadgets = makeGadgets();
+        final List<Gadget> twins = makeGadgets();
+        final StaticGeometry geometry = new StaticGeometry(WALLS, twins);
+        final Random random = new Random(31);
+        for (int g = 0; g < gadgets.size(); g++) {
+            int collisions = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                final Ball ball = randomBall(random, gadgets.get(g));
+                final Ball twin = new Ball("Ball", ball.getX(), ball.getY(), ball.getVelocityX(), ball.getVelocityY());
+                final boolean collided = gadgets.get(g).resolveCollision(ball);
+                assertEquals("expected same collision with " + gadgets.get(g).getName(),
+                             collided, geometry.resolveCollision(geometry.owner(twins.get(g)), twin));
+                assertEquals("expected same x velocity", Double.doubleToLongBits(ball.getVelocityX()),
+                             Double.doubleToLongBits(twin.getVelocityX()));
+                assertEquals("expected same y velocity", Double.doubleToLongBits(ball.getVelocityY()),
+                             Double.doubleToLongBits(twin.getVelocityY()));
+                assertEquals("expected same position", ball.getPosition(), twin.getPosition());
+                assertEquals("expected same absorbed state", ball.getAbsorbed(), twin.getAbsorbed());
+                if (collided) collisions++;
+            }
+            assertTrue("expected some collisions with " + gadgets.get(g).getName(), collisions > 0);
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WireCodecTest {
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // Testing strategy
+    //  - TextCodec.encode, decode: every message type; same text as the original protocol;
+    //      malformed lines: unknown message, missing field, bad number, bad side
+    //  - TextCodec.decodeRegister: no portals, some portals
+    //  - BinaryCodec.encode, read: every message type; name sent once, sent again;
+    //      smaller than the text; malformed frames: undefined ID, truncated frame
+    //  - BATCH: one message, several messages; text is the lines of its messages; binary round trip,
+    //      one frame after the names are defined; malformed: REGISTER inside a batch
+
+    private static final List<WireMessage> MESSAGES = Arrays.asList(
+            WireMessage.register("Board", Arrays.asList("Alpha", "Beta")),
+            WireMessage.register("Lonely", Collections.emptyList()),
+            WireMessage.ballThroughWall("Right", "Left", "Ball", 0.1, 19.5, -3.25, 1e-9),
+            WireMessage.portalExiting("Other", "Alpha", "Ball", 2.5, -0.5),
+            WireMessage.addWallRequest("Other", "Top"),
+            WireMessage.ballEntering("Ball", 19.75, 3.0, 2.0, -1.0),
+            WireMessage.enteringPortal("Beta", "Ball", 1.5, 2.5),
+            WireMessage.removeWall("Other", "Bottom"),
+            WireMessage.addWall("Right"),
+            WireMessage.removeBall("Ball"),
+            WireMessage.error());
+
+    //covers TextCodec every message type, same text as the original protocol, decodeRegister
+    @Test
+    public void testTextRoundTrip() {
+        for (WireMessage message : MESSAGES) {
+            final String text = TextCodec.encode(message);
+            final WireMessage decoded;
+            if (message.getType() == WireMessage.Type.REGISTER) {
+                final String[] lines = text.split("\n");
+                assertEquals("Expected two lines", 2, lines.length);
+                decoded = TextCodec.decodeRegister(lines[0], lines[1]);
+            } else {
+                decoded = TextCodec.decode(text);
+            }
+            assertEquals("Expected same message from " + text, message, decoded);
+        }
+        assertEquals("ballEntering name=Ball x=19.75 y=3.0 xVelocity=2.0 yVelocity=-1.0",
+                     TextCodec.encode(WireMessage.ballEntering("Ball", 19.75, 3.0, 2.0, -1.0)));
+        assertEquals("success. remove ball name=Ball", TextCodec.encode(WireMessage.removeBall("Ball")));
+        assertEquals("Board\nsendingPortals Alpha Beta", TextCodec.encode(MESSAGES.get(0)));
+        assertEquals("Lonely\nnoPortals", TextCodec.encode(MESSAGES.get(1)));
+    }
+
+    //covers TextCodec malformed lines
+    @Test
+    public void testTextMalformed() {
+        for (String line : Arrays.asList("hello", "removeWall Add=Other", "ballEntering name=Ball x=a y=1 xVelocity=0 yVelocity=0",
+                                         "addWall side=Middle", "removeWall Board=Other toWall=Top")) {
+            try {
+                TextCodec.decode(line);
+                fail("Expected malformed: " + line);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    //covers BinaryCodec every message type, name sent once and again
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        final BinaryCodec sender = new BinaryCodec();
+        final BinaryCodec receiver = new BinaryCodec();
+        final byte[] first = sender.encode(WireMessage.removeBall("Ball"));
+        final byte[] second = sender.encode(WireMessage.removeBall("Ball"));
+        assertTrue("Expected name defined only the first time", second.length < first.length);
+        assertEquals("Expected first message", WireMessage.removeBall("Ball"), receiver.read(stream(first)));
+        assertEquals("Expected second message", WireMessage.removeBall("Ball"), receiver.read(stream(second)));
+        for (WireMessage message : MESSAGES) {
+            assertEquals("Expected same message", message, receiver.read(stream(sender.encode(message))));
+        }
+    }
+
+    //covers BinaryCodec smaller than the text
+    @Test
+    public void testBinarySmaller() {
+        final BinaryCodec codec = new BinaryCodec();
+        final WireMessage message = WireMessage.ballThroughWall("Right", "Left", "Ball", 0.123456789, 19.5, -3.25, 7.75);
+        codec.encode(message);
+        assertTrue("Expected fewer bytes than text once names are defined",
+                   codec.encode(message).length < TextCodec.encode(message).length());
+    }
+
+    //covers BinaryCodec undefined ID, truncated frame
+    @Test
+    public void testBinaryMalformed() {
+        final byte[] frames = new BinaryCodec().encode(WireMessage.removeBall("Ball"));
+        final int defineLength = ByteBuffer.wrap(frames).getInt() + BinaryCodec.LENGTH_BYTES;
+        final byte[] withoutDefine = Arrays.copyOfRange(frames, defineLength, frames.length);
+        try {
+            new BinaryCodec().read(stream(withoutDefine));
+            fail("Expected undefined ID");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            new BinaryCodec().decode(ByteBuffer.wrap(withoutDefine, BinaryCodec.LENGTH_BYTES, 2));
+            fail("Expected truncated frame");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    //covers BATCH text is the lines of its messages, binary round trip, one frame
+    @Test
+    public void testBatch() throws IOException {
+        final List<WireMessage> messages = MESSAGES.subList(2, MESSAGES.size());
+        final WireMessage batch = WireMessage.batch(messages);
+        final StringBuilder lines = new StringBuilder();
+        for (WireMessage message : messages) {
+            if (lines.length() > 0) lines.append("\n");
+            lines.append(TextCodec.encode(message));
+        }
+        assertEquals("Expected lines of the messages", lines.toString(), TextCodec.encode(batch));
+        final BinaryCodec sender = new BinaryCodec();
+        final BinaryCodec receiver = new BinaryCodec();
+        assertEquals("Expected same batch", batch, receiver.read(stream(sender.encode(batch))));
+        final byte[] frame = sender.encode(batch);
+        assertEquals("Expected one frame once names are defined",
+                     frame.length - BinaryCodec.LENGTH_BYTES, ByteBuffer.wrap(frame).getInt());
+        assertEquals("Expected same batch", batch, receiver.read(stream(frame)));
+    }
+
+    //covers BATCH one message, several messages
+    @Test
+    public void testTogether() {
+        final WireMessage removeBall = WireMessage.removeBall("Ball");
+        assertEquals("Expected the message itself", removeBall, WireMessage.together(Arrays.asList(removeBall)));
+        final WireMessage together = WireMessage.together(Arrays.asList(removeBall, WireMessage.addWall("Top")));
+        assertEquals("Expected a batch", WireMessage.Type.BATCH, together.getType());
+        assertEquals("Expected both messages in order", Arrays.asList(removeBall, WireMessage.addWall("Top")),
+                     together.getMessages());
+    }
+
+    //covers BATCH malformed: REGISTER inside a batch
+    @Test
+    public void testBatchMalformed() {
+        final byte[] frames = new BinaryCodec().encode(WireMessage.register("Board", Collections.emptyList()));
+        final ByteBuffer register = ByteBuffer.wrap(frames);
+        final int defineLength = register.getInt();
+        register.position(register.position() + defineLength + BinaryCodec.LENGTH_BYTES);
+        final ByteBuffer batch = ByteBuffer.allocate(defineLength + 5 + register.remaining());
+        batch.put(frames, BinaryCodec.LENGTH_BYTES, defineLength);
+        batch.put((byte) (WireMessage.Type.BATCH.ordinal() + 1)).putInt(1).put(register);
+        final BinaryCodec codec = new BinaryCodec();
+        try {
+            codec.decode(ByteBuffer.wrap(batch.array(), 0, defineLength));
+            codec.decode(ByteBuffer.wrap(batch.array(), defineLength, batch.capacity() - defineLength));
+            fail("Expected REGISTER rejected inside a batch");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static DataInputStream stream(final byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+}